@@ -0,0 +1,98 @@
+package com.proxeus.benchmark;
+
+import com.proxeus.util.Json;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Fixtures loads the content.xml and the data of the test templates in src/test/resources
+ * and generates synthetic documents with a table of any size.
+ */
+public class Fixtures {
+    private final static String TABLE = "table_";
+
+    /**
+     * @param name name of a test template like hr0101 or table_1000 for a generated table with 1000 rows
+     * @return content.xml of the template
+     */
+    public static byte[] content(String name) throws IOException {
+        if (name.startsWith(TABLE)) {
+            return table(Integer.parseInt(name.substring(TABLE.length())));
+        }
+        try (ZipInputStream zip = new ZipInputStream(resource(name + ".odt"))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.getName().equals("content.xml")) {
+                    return IOUtils.toByteArray(zip);
+                }
+            }
+        }
+        throw new IOException("no content.xml in " + name + ".odt");
+    }
+
+    /**
+     * @return the data the template is compiled with
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> data(String name) throws IOException {
+        if (name.startsWith(TABLE)) {
+            return tableData(Integer.parseInt(name.substring(TABLE.length())));
+        }
+        //hr0101 to hr0401 share the data of their group, hr01.json to hr04.json
+        String dataName = name.matches("hr\\d{4}") ? name.substring(0, 4) : name;
+        try (InputStream inputStream = resource(dataName + ".json")) {
+            return Json.mapper.readValue(inputStream, Map.class);
+        }
+    }
+
+    /**
+     * content.xml with a table of the given count of rows, every row has a cell with text and one with a variable.
+     */
+    public static byte[] table(int rows) {
+        StringBuilder sb = new StringBuilder(256 + rows * 400);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<office:document-content xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\"");
+        sb.append(" xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\"");
+        sb.append(" xmlns:table=\"urn:oasis:names:tc:opendocument:xmlns:table:1.0\" office:version=\"1.2\">");
+        sb.append("<office:body><office:text>");
+        sb.append("<text:p text:style-name=\"P1\">{{ input.title }}</text:p>");
+        sb.append("<table:table table:name=\"Table1\"><table:table-column table:number-columns-repeated=\"2\"/>");
+        for (int i = 0; i < rows; i++) {
+            sb.append("<table:table-row>");
+            sb.append("<table:table-cell office:value-type=\"string\"><text:p>Row ").append(i).append("</text:p></table:table-cell>");
+            sb.append("<table:table-cell office:value-type=\"string\"><text:p><text:span text:style-name=\"T1\">{{ input.row")
+                    .append(i).append(".name }}</text:span><text:span text:style-name=\"T2\"></text:span></text:p></table:table-cell>");
+            sb.append("</table:table-row>");
+        }
+        sb.append("</table:table></office:text></office:body></office:document-content>");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static Map<String, Object> tableData(int rows) {
+        Map<String, Object> input = new HashMap<>();
+        input.put("title", "Generated table with " + rows + " rows");
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("name", "Name " + i);
+            input.put("row" + i, row);
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("input", input);
+        return data;
+    }
+
+    private static InputStream resource(String name) throws IOException {
+        InputStream inputStream = Fixtures.class.getClassLoader().getResourceAsStream(name);
+        if (inputStream == null) {
+            throw new IOException("fixture " + name + " not found");
+        }
+        return inputStream;
+    }
+}
@@ -0,0 +1,124 @@
+package com.proxeus.benchmark;
+
+import com.proxeus.compiler.jtwig.MyJTwigCompiler;
+import com.proxeus.xml.XMLFactories;
+import com.proxeus.xml.processor.NoOpEventProcessor;
+import com.proxeus.xml.processor.XMLEventSink;
+import com.proxeus.xml.template.CleanEmptyElementProcessor;
+import com.proxeus.xml.template.DefaultTemplateHandler;
+import com.proxeus.xml.template.NoOpTemplateRenderer;
+import com.proxeus.xml.template.PreparedTemplate;
+import com.proxeus.xml.template.TemplateExtractor;
+import com.proxeus.xml.template.TemplateHandler;
+import com.proxeus.xml.template.TemplateVarProcessor;
+import com.proxeus.xml.template.jtwig.JTwigParser;
+import com.proxeus.xml.template.jtwig.JTwigTemplateHandlerFactory;
+import com.proxeus.xml.template.jtwig.JTwigVarParser;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * TemplatePipelineBenchmark measures every stage of the compilation of an XML entry, without LibreOffice.
+ *
+ * extract            parsing and TemplateExtractor with the JTwigParser, what is cached per template
+ * cleanEmptyElements CleanEmptyElementProcessor on the extracted XML
+ * vars               JTwigVarParser through the TemplateVarProcessor on the prepared template
+ * jtwigCompile       MyJTwigCompiler parsing and rendering the extracted XML
+ * jtwigRender        MyJTwigCompiler rendering with the parsed template cached
+ * render             DefaultTemplateHandler.render of a prepared template, as done for every request
+ *
+ * Run with ./gradlew jmh, the throughput, the latency percentiles and the allocation rate are reported.
+ * The extraction grows faster than linear with the table rows, use -p template=table_100 for a short run.
+ * table_10000 takes far too long for the default run, it is measured on its own with -Pjmh="-p template=table_10000".
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplatePipelineBenchmark {
+    private final static String TEXT = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+    private final static List<QName> EMPTY_XML_ELEMENT_TO_REMOVE = Arrays.asList(new QName(TEXT, "span"));
+    private final static List<QName> EMPTY_XML_ELEMENT_TO_REMOVE_IF_ONLY_WHITESPACE = Arrays.asList(new QName(TEXT, "p"));
+
+    @Param({"hr0101", "hr0201", "hr0301", "hr0401", "crypto_asset_report", "proof_of_existence", "simple",
+            "table_100", "table_1000"})
+    public String template;
+
+    private byte[] content;
+    private byte[] extracted;
+    private Map<String, Object> data;
+    private PreparedTemplate prepared;
+    private JTwigTemplateHandlerFactory handlerFactory;
+    private MyJTwigCompiler compiler;
+    private MyJTwigCompiler cachingCompiler;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        content = Fixtures.content(template);
+        data = Fixtures.data(template);
+        compiler = new MyJTwigCompiler();
+        cachingCompiler = new MyJTwigCompiler(16, 256);
+        handlerFactory = new JTwigTemplateHandlerFactory(cachingCompiler);
+        prepared = handlerFactory.newInstance(new NoOpEventProcessor(), new NoOpEventProcessor()).prepare(new ByteArrayInputStream(content));
+
+        //the XML as it is handed to JTwig
+        TemplateHandler handler = new DefaultTemplateHandler(new TemplateExtractor(new JTwigParser()), new NoOpEventProcessor(), new NoOpTemplateRenderer(), new NoOpEventProcessor());
+        handler.process(new ByteArrayInputStream(content));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.render(output, null);
+        extracted = output.toByteArray();
+        //parse it once to have it cached
+        cachingCompiler.Compile(new ByteArrayInputStream(extracted), data, NullOutputStream.NULL_OUTPUT_STREAM, UTF_8);
+    }
+
+    @Benchmark
+    public PreparedTemplate extract() throws Exception {
+        return handlerFactory.newInstance(new NoOpEventProcessor(), new NoOpEventProcessor()).prepare(new ByteArrayInputStream(content));
+    }
+
+    @Benchmark
+    public void cleanEmptyElements() throws Exception {
+        CleanEmptyElementProcessor cleaner = new CleanEmptyElementProcessor(EMPTY_XML_ELEMENT_TO_REMOVE, EMPTY_XML_ELEMENT_TO_REMOVE_IF_ONLY_WHITESPACE);
+        cleaner.process(XMLFactories.input().createXMLEventReader(new ByteArrayInputStream(extracted)), new XMLEventSink());
+    }
+
+    @Benchmark
+    public void vars(Blackhole blackhole) throws Exception {
+        JTwigVarParser varParser = new JTwigVarParser(null);
+        new TemplateVarProcessor(varParser).process(prepared.reader(), new XMLEventSink());
+        blackhole.consume(varParser.getVars());
+    }
+
+    @Benchmark
+    public void jtwigCompile() throws Exception {
+        compiler.Compile(new ByteArrayInputStream(extracted), data, NullOutputStream.NULL_OUTPUT_STREAM, UTF_8);
+    }
+
+    @Benchmark
+    public void jtwigRender() throws Exception {
+        cachingCompiler.Compile(new ByteArrayInputStream(extracted), data, NullOutputStream.NULL_OUTPUT_STREAM, UTF_8);
+    }
+
+    @Benchmark
+    public void render() throws Exception {
+        TemplateHandler handler = handlerFactory.newInstance(
+                new NoOpEventProcessor(),
+                new CleanEmptyElementProcessor(EMPTY_XML_ELEMENT_TO_REMOVE, EMPTY_XML_ELEMENT_TO_REMOVE_IF_ONLY_WHITESPACE)
+        );
+        handler.process(prepared);
+        handler.render(NullOutputStream.NULL_OUTPUT_STREAM, data);
+    }
+}
@@ -1,24 +1,48 @@
 package com.proxeus;
 
+import com.proxeus.admission.AdmissionConfig;
+import com.proxeus.admission.AdmissionController;
+import com.proxeus.compiler.jtwig.MyJTwigCompiler;
+import com.proxeus.document.AssetConfig;
+import com.proxeus.document.Batch;
+import com.proxeus.document.BatchCompiler;
+import com.proxeus.document.CacheConfig;
 import com.proxeus.document.FileResult;
+import com.proxeus.document.RemoteAssetCache;
 import com.proxeus.document.Template;
 import com.proxeus.document.TemplateCompiler;
+import com.proxeus.document.TemplateDataReader;
 import com.proxeus.document.TemplateFormatter;
 import com.proxeus.error.BadRequestException;
 import com.proxeus.error.CompilationException;
 import com.proxeus.error.NotImplementedException;
 import com.proxeus.error.UnavailableException;
+import com.proxeus.job.Job;
+import com.proxeus.job.JobConfig;
+import com.proxeus.job.JobQueue;
+import com.proxeus.metrics.Metrics;
+import com.proxeus.metrics.Stage;
 import com.proxeus.office.libre.LibreConfig;
 import com.proxeus.office.libre.LibreOfficeAssistant;
 import com.proxeus.office.libre.exe.Extension;
 import com.proxeus.office.libre.exe.LibreOfficeFormat;
+import com.proxeus.trace.Span;
+import com.proxeus.trace.TraceConfig;
+import com.proxeus.trace.Tracing;
 import com.proxeus.util.Json;
+import com.proxeus.util.concurrent.ExecutorConfig;
+import com.proxeus.util.concurrent.SharedExecutors;
+import com.proxeus.util.concurrent.VirtualThreadPool;
 import com.proxeus.util.zip.Zip;
+import com.proxeus.xml.XMLConfig;
+import com.proxeus.xml.XMLFactories;
 import com.proxeus.xml.template.TemplateHandlerFactory;
 import com.proxeus.xml.template.TemplateVarParserFactory;
 import com.proxeus.xml.template.jtwig.JTwigTemplateHandlerFactory;
 import com.proxeus.xml.template.jtwig.JTwigTemplateVarParserFactory;
+import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.MultipartStream;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.time.StopWatch;
@@ -26,9 +50,12 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import org.eclipse.jetty.io.EofException;
+import spark.Request;
 import spark.Response;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
-import javax.servlet.MultipartConfigElement;
+import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.nio.charset.Charset;
@@ -51,6 +78,10 @@ public class SparkServer {
     private TemplateHandlerFactory templateHandlerFactory;
     private TemplateVarParserFactory templateVarParserFactory;
     private TemplateCompiler templateCompiler;
+    private JobQueue jobQueue;
+    private BatchCompiler batchCompiler;
+    private AdmissionController admissionController;
+    private boolean streamOutput;
 
     private final Charset defaultCharset = StandardCharsets.UTF_8;
     private final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
@@ -59,14 +90,35 @@ public class SparkServer {
     SparkServer(Config config) {
         removeTheDiskCacheOfDocs();
         Logger log = LogManager.getLogger(this.getClass());
-        threadPool(config.getMax(), config.getMin(), config.getTimeoutMillis());
+        XMLFactories.configure(Config.by(XMLConfig.class));
+        SharedExecutors.configure(Config.by(ExecutorConfig.class));
+        AssetConfig assetConfig = Config.by(AssetConfig.class);
+        RemoteAssetCache.configure(assetConfig, new File(config.getTmpFolder(), "assets"));
+        TemplateDataReader.configure(assetConfig);
+        Tracing.configure(Config.by(TraceConfig.class));
+        if (SharedExecutors.virtualThreads()) {
+            //the requests are not limited by max, the platform threads are only used for the Jetty loops
+            EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool(config.getMin())));
+            log.info("handling the requests on virtual threads");
+        } else {
+            threadPool(config.getMax(), config.getMin(), config.getTimeoutMillis());
+        }
         port(config.getPort());
         ipAddress(config.getHost());
         try {
-            templateFormatter = new LibreOfficeAssistant(Config.by(LibreConfig.class));
-            templateHandlerFactory = new JTwigTemplateHandlerFactory();
+            LibreConfig libreConfig = Config.by(LibreConfig.class);
+            LibreOfficeAssistant libreOfficeAssistant = new LibreOfficeAssistant(libreConfig);
+            templateFormatter = libreOfficeAssistant;
+            admissionController = new AdmissionController(Config.by(AdmissionConfig.class), libreOfficeAssistant::getPoolMax, libreOfficeAssistant::getConversionMillis);
+            streamOutput = libreConfig.streamOutput;
+            CacheConfig cacheConfig = Config.by(CacheConfig.class);
+            templateHandlerFactory = new JTwigTemplateHandlerFactory(new MyJTwigCompiler(cacheConfig.jtwigEntries, cacheConfig.jtwigMB));
             templateVarParserFactory = new JTwigTemplateVarParserFactory();
-            templateCompiler = new TemplateCompiler(config.getTmpFolder(), templateFormatter, templateHandlerFactory, templateVarParserFactory);
+            templateCompiler = new TemplateCompiler(config.getTmpFolder(), templateFormatter, templateHandlerFactory, templateVarParserFactory, cacheConfig);
+            JobConfig jobConfig = Config.by(JobConfig.class);
+            jobQueue = new JobQueue(jobConfig);
+            batchCompiler = new BatchCompiler(templateCompiler, jobConfig.batchWorkers);
+            registerGauges();
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(1);
@@ -114,24 +166,45 @@ public class SparkServer {
 
         // curl --form template=@myfile.odt -data=@data.json -asset1=myasset.jpg http://document-service/compile > myfile.pdf
         post("/compile", (request, response) -> {
+            Span span = Tracing.root("POST /compile");
+            AdmissionController.Admission admission = null;
             try {
-                StopWatch sw = StopWatch.createStarted();
+                long start = System.nanoTime();
+                if (!request.queryMap().hasKey("async")) {
+                    //rejected before the upload is read, async jobs are limited by the job queue
+                    admission = admissionController.admit(request::headers);
+                }
                 Template template;
-                if (request.contentType().startsWith(MULTIPART_FORM_DATA)) {
-                    request.attribute("org.eclipse.jetty.multipartConfig", new MultipartConfigElement("/temp"));
-                    template = Template.fromFormData(request.raw().getParts(), request.queryParams("format"));
-                } else {
-                    template = Template.fromZip(request.raw().getInputStream(), request.queryParams("format"));
+                try (Span upload = Tracing.start("upload")) {
+                    if (request.contentType().startsWith(MULTIPART_FORM_DATA)) {
+                        template = Template.fromFormData(formData(request), request.queryParams("format"));
+                    } else {
+                        template = Template.fromZip(request.raw().getInputStream(), request.queryParams("format"));
+                    }
+                }
+                Stage.UPLOAD.since(start);
+                span.setAttribute("format", template.getFormat());
+                template.setCacheOutput(!noCache(request));
+                if (request.queryMap().hasKey("async")) {
+                    submitJob(request, response, template);
+                    return 0;
                 }
+                template.setStreamOutput(streamOutput);
                 FileResult result = templateCompiler.compile(template, request.queryMap().hasKey("error"));
                 response.header("Content-Type", result.contentType);
-                response.header("Content-Length", "" + result.target.length());
                 try {
-                    streamAndClose(new FileInputStream(result.target), response.raw().getOutputStream());
+                    if (!result.isStreamed()) {
+                        response.header("Content-Length", "" + result.target.length());
+                    }
+                    OutputStream os = response.raw().getOutputStream();
+                    result.writeTo(os);
+                    os.flush();
+                    os.close();
                 } finally {
                     result.release();
                 }
-                log.info("request took: " + sw.getTime(TimeUnit.MILLISECONDS));
+                Stage.REQUEST.since(start);
+                log.info("request took: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
             } catch (EofException | MultipartStream.MalformedStreamException eof) {
                 try {
                     response.raw().getOutputStream().close();
@@ -149,12 +222,118 @@ public class SparkServer {
                 error(HttpURLConnection.HTTP_UNAVAILABLE, response, e);
             } catch (Exception e) {
                 error(HttpURLConnection.HTTP_INTERNAL_ERROR, response, e);
+            } finally {
+                if (admission != null) {
+                    admission.close();
+                }
+                endRequest(span, response);
+            }
+            return 0;
+        });
+
+        // curl --form template=@myfile.odt -data=@data.ndjson -asset1=myasset.jpg http://document-service/compile/batch > myfiles.zip
+        post("/compile/batch", (request, response) -> {
+            Batch batch = null;
+            Span span = Tracing.root("POST /compile/batch");
+            AdmissionController.Admission admission = null;
+            try {
+                //the data sets are streamed, their count isn't known before the batch is read
+                admission = admissionController.admit(request::headers, batchCompiler.getWorkers());
+                StopWatch sw = StopWatch.createStarted();
+                long start = System.nanoTime();
+                if (request.contentType().startsWith(MULTIPART_FORM_DATA)) {
+                    batch = Batch.fromFormData(formData(request), request.queryParams("format"));
+                } else {
+                    batch = Batch.fromZip(request.raw().getInputStream(), request.queryParams("format"));
+                }
+                Stage.UPLOAD.since(start);
+                response.header("Content-Type", "application/zip");
+                response.header(CONTENT_DISPOSITION, "attachment; filename=\"batch.zip\"");
+                int count = batchCompiler.compile(batch, response.raw().getOutputStream(), request.queryMap().hasKey("error"));
+                span.setAttribute("batch.count", count);
+                log.info("batch of " + count + " took: " + sw.getTime(TimeUnit.MILLISECONDS));
+            } catch (EofException | MultipartStream.MalformedStreamException eof) {
+                try {
+                    response.raw().getOutputStream().close();
+                } catch (Exception idc) {
+                }
+            } catch (CompilationException e) {
+                error(422, response, e);
+            } catch (BadRequestException e) {
+                error(HttpURLConnection.HTTP_BAD_REQUEST, response, e);
+            } catch (NotImplementedException e) {
+                error(HttpURLConnection.HTTP_NOT_IMPLEMENTED, response, e);
+            } catch (UnavailableException e) {
+                error(HttpURLConnection.HTTP_UNAVAILABLE, response, e);
+            } catch (Exception e) {
+                error(HttpURLConnection.HTTP_INTERNAL_ERROR, response, e);
+            } finally {
+                if (batch != null) {
+                    batch.release();
+                }
+                if (admission != null) {
+                    admission.close();
+                }
+                endRequest(span, response);
             }
             return 0;
         });
 
+        // curl http://document-service/jobs/{id} > myfile.pdf
+        get("/jobs/:id", (request, response) -> {
+            try {
+                Job job = jobQueue.get(request.params(":id"));
+                if (job == null) {
+                    notFound(response);
+                    return 0;
+                }
+                if (!job.isFinished() || request.queryMap().hasKey("status")) {
+                    response.status(job.isFinished() ? HttpURLConnection.HTTP_OK : HttpURLConnection.HTTP_ACCEPTED);
+                    json(response, job.toMap());
+                    return 0;
+                }
+                if (job.getError() != null) {
+                    throw job.getError();
+                }
+                Job.Download download = job.openResult();
+                if (download == null) {
+                    //expired in the meantime
+                    notFound(response);
+                    return 0;
+                }
+                response.header("Content-Type", download.contentType);
+                response.header("Content-Length", "" + download.length);
+                streamAndClose(download.input, response.raw().getOutputStream());
+            } catch (EofException eof) {
+                try {
+                    response.raw().getOutputStream().close();
+                } catch (Exception idc) {
+                }
+            } catch (CompilationException e) {
+                error(422, response, e);
+            } catch (BadRequestException e) {
+                error(HttpURLConnection.HTTP_BAD_REQUEST, response, e);
+            } catch (NotImplementedException e) {
+                error(HttpURLConnection.HTTP_NOT_IMPLEMENTED, response, e);
+            } catch (UnavailableException e) {
+                error(HttpURLConnection.HTTP_UNAVAILABLE, response, e);
+            } catch (Exception e) {
+                error(HttpURLConnection.HTTP_INTERNAL_ERROR, response, e);
+            }
+            return 0;
+        });
+
+        get("/metrics", (request, response) -> {
+            response.type(Metrics.CONTENT_TYPE);
+            Writer w = new OutputStreamWriter(response.raw().getOutputStream(), defaultCharset);
+            Metrics.write(w);
+            w.close();
+            return 0;
+        });
+
         post("/vars", (request, response) ->
         {
+            Span span = Tracing.root("POST /vars");
             try {
                 Template template;
                 if (request.contentType().startsWith("application/x-www-form-urlencoded")) {
@@ -162,8 +341,7 @@ public class SparkServer {
                     template = Template.fromODT(is);
                     is.close();
                 } else if (request.contentType().startsWith("multipart/form-data")) {
-                    request.attribute("org.eclipse.jetty.multipartConfig", new MultipartConfigElement("/temp"));
-                    template = Template.fromFormData(request.raw().getParts(), request.queryParams("format"));
+                    template = Template.fromFormData(formData(request), request.queryParams("format"));
                 } else {
                     template = Template.fromZip(request.raw().getInputStream(), request.queryParams("format"));
                 }
@@ -190,6 +368,8 @@ public class SparkServer {
             } catch (Exception e) {
                 error(HttpURLConnection.HTTP_INTERNAL_ERROR, response, e);
                 e.printStackTrace();
+            } finally {
+                endRequest(span, response);
             }
             return 0;
         });
@@ -197,6 +377,66 @@ public class SparkServer {
         log.info("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<]]][ Document Service started ][[[>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
     }
 
+    /**
+     * Queue the compilation and respond with the job right away, the result is fetched with GET /jobs/{id}.
+     */
+    private void submitJob(Request request, Response response, Template template) throws Exception {
+        int priority = 0;
+        try {
+            if (request.queryParams("priority") != null) {
+                priority = Integer.parseInt(request.queryParams("priority").trim());
+            }
+        } catch (NumberFormatException e) {
+            template.release();
+            throw new BadRequestException("priority must be a number");
+        }
+        boolean embedError = request.queryMap().hasKey("error");
+        Job job;
+        try {
+            job = jobQueue.submit(priority, () -> {
+                try (Span span = Tracing.root("job")) {
+                    span.setAttribute("format", template.getFormat());
+                    return templateCompiler.compile(template, embedError);
+                } catch (Exception e) {
+                    template.release();
+                    throw e;
+                }
+            });
+        } catch (UnavailableException e) {
+            template.release();
+            throw e;
+        }
+        response.status(HttpURLConnection.HTTP_ACCEPTED);
+        response.header("Location", "/jobs/" + job.getId());
+        json(response, job.toMap());
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("document_render_queued", "Render tasks waiting for a thread.", () -> SharedExecutors.render().getQueued());
+        Metrics.gauge("document_render_active", "Render tasks running.", () -> SharedExecutors.render().getActive());
+        Metrics.gauge("document_images_queued", "Image tasks waiting for a thread.", () -> SharedExecutors.images().getQueued());
+        Metrics.gauge("document_images_active", "Image tasks running.", () -> SharedExecutors.images().getActive());
+        Metrics.gauge("document_jobs_queued", "Async jobs waiting to be compiled.", jobQueue::getQueued);
+    }
+
+    /**
+     * Close the root span of the request, it is exported with the spans of the request finished by now.
+     */
+    private void endRequest(Span span, Response response) {
+        if (span.isRecording()) {
+            span.setAttribute("http.response.status_code", response.raw().getStatus());
+        }
+        span.close();
+    }
+
+    private void json(Response response, Object obj) throws IOException {
+        response.type(JSON_CONTENT_TYPE);
+        OutputStream os = response.raw().getOutputStream();
+        os.write(Json.toJson(obj).getBytes(defaultCharset));
+        os.flush();
+        os.close();
+    }
+
     private void api(Response response) {
         try {
             response.type("text/html; charset=UTF-8");
@@ -247,6 +487,21 @@ public class SparkServer {
         }
     }
 
+    /**
+     * @return true if the client asked to compile the document even if an identical request was cached
+     */
+    private boolean noCache(Request request) {
+        String cacheControl = request.headers("Cache-Control");
+        return request.queryMap().hasKey("nocache") || (cacheControl != null && cacheControl.contains("no-cache"));
+    }
+
+    /**
+     * The parts are parsed from the request while they are read, instead of being written to disk by Jetty first.
+     */
+    private FileItemIterator formData(Request request) throws Exception {
+        return new ServletFileUpload().getItemIterator(request.raw());
+    }
+
     private void notFound(Response response) {
         try {
             response.status(HttpURLConnection.HTTP_NOT_FOUND);
@@ -267,10 +522,24 @@ public class SparkServer {
         is.close();
     }
 
+    /**
+     * Send the error as text. If the response was committed already, the client got the status and a part of the
+     * result, the connection is aborted then so that the client doesn't take the truncated result as complete.
+     */
     private void error(int status, Response response, Exception e) {
+        if (response.raw().isCommitted()) {
+            abort(response, e);
+            return;
+        }
         try {
+            //the start of the result might be buffered
+            response.raw().resetBuffer();
+            response.raw().setHeader("Content-Length", null);
             response.status(status);
             response.type(TEXT_CONTENT_TYPE);
+            if (e instanceof UnavailableException && ((UnavailableException) e).getRetryAfterSeconds() > 0) {
+                response.header("Retry-After", Long.toString(((UnavailableException) e).getRetryAfterSeconds()));
+            }
             OutputStream os = response.raw().getOutputStream();
             String msg = e.getMessage();
             if (msg == null) {
@@ -283,4 +552,14 @@ public class SparkServer {
             System.err.println("couldn't send the error response");
         }
     }
+
+    private void abort(Response response, Exception e) {
+        System.err.println("aborting the committed response: " + e.getMessage());
+        HttpServletResponse raw = response.raw();
+        if (raw instanceof org.eclipse.jetty.server.Response) {
+            ((org.eclipse.jetty.server.Response) raw).getHttpChannel().abort(e);
+            return;
+        }
+        System.err.println("couldn't abort the response");
+    }
 }
@@ -0,0 +1,25 @@
+package com.proxeus.admission;
+
+/**
+ * AdmissionConfig defines when a compile request is rejected right away instead of being uploaded and rendered
+ * to wait for a LibreOffice executable it won't get in time.
+ * These are the defaults that are set here, they are going to be overwritten by the config, if defined.
+ */
+public class AdmissionConfig {
+    /**
+     * request header with the time the client waits for the response, like 10s or 10000 for milliseconds.
+     **/
+    public String deadlineHeader = "X-Request-Deadline";
+    /**
+     * deadline of the requests without the header, 0s to admit them regardless of the expected wait.
+     **/
+    public String defaultDeadline = "0s";
+    /**
+     * request header naming the tenant for the tenantLimit.
+     **/
+    public String tenantHeader = "X-Tenant";
+    /**
+     * max requests of one tenant compiled at the same time. 0 disables the limit.
+     **/
+    public int tenantLimit = 0;
+}
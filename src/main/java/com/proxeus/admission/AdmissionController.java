@@ -0,0 +1,180 @@
+package com.proxeus.admission;
+
+import com.proxeus.Config;
+import com.proxeus.error.BadRequestException;
+import com.proxeus.error.UnavailableException;
+import com.proxeus.metrics.Counter;
+import com.proxeus.metrics.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * AdmissionController decides before the upload is read whether a compile request can finish within its deadline.
+ * <p>
+ * Every admitted request needs one conversion at a time, a batch as many as it compiles in parallel, its weight.
+ * The executables convert capacity of them at the same time.
+ * The requests beyond the capacity wait for the ones ahead of them, one conversion time for each round of capacity
+ * requests. If the expected wait and the conversion of the request itself don't fit into its deadline,
+ * it is rejected with a Retry-After of the expected wait. The requests that are admitted are the ones that finish,
+ * instead of all of them timing out under overload.
+ * <p>
+ * The requests of a tenant are limited to tenantLimit at the same time, one tenant can't occupy all executables.
+ * They are counted as requests, a batch is one of them whatever its weight.
+ */
+public class AdmissionController {
+    private static final Counter rejected = Metrics.counter("document_admission_rejected_total", "Requests rejected before they were read.");
+
+    private final String deadlineHeader;
+    private final long defaultDeadlineMillis;
+    private final String tenantHeader;
+    private final int tenantLimit;
+    private final IntSupplier capacity;
+    private final LongSupplier conversionMillis;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrentHashMap<String, AtomicInteger> tenants = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity         count of conversions at the same time
+     * @param conversionMillis recent time of a conversion
+     */
+    public AdmissionController(AdmissionConfig config, IntSupplier capacity, LongSupplier conversionMillis) {
+        if (config == null) {
+            config = new AdmissionConfig();
+        }
+        deadlineHeader = config.deadlineHeader;
+        defaultDeadlineMillis = Config.parseDurationToMillis(config.defaultDeadline);
+        tenantHeader = config.tenantHeader;
+        tenantLimit = config.tenantLimit;
+        this.capacity = capacity;
+        this.conversionMillis = conversionMillis;
+        Metrics.gauge("document_admission_in_flight", "Conversions of the admitted requests not finished yet.", inFlight::get);
+    }
+
+    /**
+     * Admit the request or reject it, the returned admission has to be closed when the request is finished.
+     *
+     * @param headers the headers of the request by name
+     * @throws UnavailableException if the request wouldn't finish in time or the tenant reached its limit
+     * @throws BadRequestException  if the deadline header is malformed
+     */
+    public Admission admit(Function<String, String> headers) throws UnavailableException, BadRequestException {
+        return admit(headers, 1);
+    }
+
+    /**
+     * Admit the request or reject it, the returned admission has to be closed when the request is finished.
+     *
+     * @param headers the headers of the request by name
+     * @param weight  conversions the request runs at the same time, like the workers of a batch
+     * @throws UnavailableException if the request wouldn't finish in time or the tenant reached its limit
+     * @throws BadRequestException  if the deadline header is malformed
+     */
+    public Admission admit(Function<String, String> headers, int weight) throws UnavailableException, BadRequestException {
+        weight = Math.max(1, weight);
+        long deadlineMillis = parseDeadline(headers.apply(deadlineHeader));
+        String tenantName = tenantLimit > 0 ? headers.apply(tenantHeader) : null;
+        if (tenantName != null) {
+            //counted within the map, a counter is never incremented after it was removed
+            AtomicInteger tenant = tenants.compute(tenantName, (k, count) -> {
+                if (count == null) {
+                    count = new AtomicInteger();
+                }
+                count.incrementAndGet();
+                return count;
+            });
+            if (tenant.get() > tenantLimit) {
+                release(tenantName);
+                rejected.inc();
+                throw new UnavailableException("Too many requests of " + tenantName + " at the same time. Please try again later.",
+                        toRetryAfterSeconds(conversionMillis.getAsLong()));
+            }
+        }
+        int ahead = inFlight.getAndAdd(weight);
+        Admission admission = new Admission(tenantName, weight);
+        if (deadlineMillis > 0) {
+            long waitMillis = estimateWaitMillis(ahead);
+            if (waitMillis + conversionMillis.getAsLong() > deadlineMillis) {
+                admission.close();
+                rejected.inc();
+                throw new UnavailableException("The expected wait of " + waitMillis + "ms exceeds the deadline. Please try again later.",
+                        toRetryAfterSeconds(waitMillis));
+            }
+        }
+        return admission;
+    }
+
+    /**
+     * @param ahead conversions of the admitted requests not finished yet
+     * @return milliseconds until an executable is expected to be free for the next request
+     */
+    long estimateWaitMillis(int ahead) {
+        int cap = Math.max(1, capacity.getAsInt());
+        if (ahead < cap) {
+            return 0;
+        }
+        //full rounds of conversions ahead of the request
+        long rounds = (ahead - cap) / cap + 1;
+        return rounds * conversionMillis.getAsLong();
+    }
+
+    private long parseDeadline(String value) throws BadRequestException {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultDeadlineMillis;
+        }
+        value = value.trim();
+        try {
+            if (value.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(value);
+            }
+            return Config.parseDurationToMillis(value);
+        } catch (RuntimeException e) {
+            throw new BadRequestException(deadlineHeader + " must be a duration like 10s or the milliseconds");
+        }
+    }
+
+    private static long toRetryAfterSeconds(long millis) {
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(millis + 999));
+    }
+
+    private void release(String tenantName) {
+        tenants.computeIfPresent(tenantName, (k, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    /**
+     * @return conversions of the admitted requests not finished yet
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Admission holds the place of a request, closing it more than once has no effect.
+     */
+    public class Admission implements AutoCloseable {
+        private final String tenantName;
+        private final int weight;
+        private boolean closed;
+
+        private Admission(String tenantName, int weight) {
+            this.tenantName = tenantName;
+            this.weight = weight;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            inFlight.addAndGet(-weight);
+            if (tenantName != null) {
+                release(tenantName);
+            }
+        }
+    }
+}
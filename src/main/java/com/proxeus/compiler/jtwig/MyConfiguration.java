@@ -1,5 +1,6 @@
 package com.proxeus.compiler.jtwig;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import org.jtwig.environment.EnvironmentConfiguration;
 import org.jtwig.environment.initializer.EnvironmentInitializer;
@@ -8,6 +9,7 @@ import org.jtwig.escape.JavascriptEscapeEngine;
 import org.jtwig.escape.config.EscapeEngineConfiguration;
 import org.jtwig.extension.Extension;
 import org.jtwig.functions.config.DefaultJtwigFunctionList;
+import org.jtwig.parser.cache.TemplateCache;
 import org.jtwig.property.configuration.DefaultPropertyResolverConfiguration;
 import org.jtwig.render.expression.calculator.enumerated.config.DefaultEnumerationListStrategyList;
 import org.jtwig.value.config.DefaultValueConfiguration;
@@ -16,11 +18,15 @@ import java.util.Collections;
 
 public class MyConfiguration extends EnvironmentConfiguration {
     public MyConfiguration(boolean strictMode) {
+        this(strictMode, Optional.<TemplateCache>absent());
+    }
+
+    public MyConfiguration(boolean strictMode, Optional<TemplateCache> templateCache) {
         super(
                 new MyResourceConfiguration(),
                 new DefaultEnumerationListStrategyList(),
-                //new DefaultJtwigParserConfiguration(), this is using cache, we don't need it
-                new MyDefaultJtwigParserConfiguration(),
+                //new DefaultJtwigParserConfiguration(), this is using a cache by resource reference, which doesn't work with inline input streams
+                new MyDefaultJtwigParserConfiguration(templateCache),
                 new DefaultValueConfiguration(),
                 new MyRenderConfiguration(strictMode),
                 new EscapeEngineConfiguration("html",
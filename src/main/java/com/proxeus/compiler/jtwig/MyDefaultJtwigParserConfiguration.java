@@ -2,6 +2,7 @@ package com.proxeus.compiler.jtwig;
 
 import com.google.common.base.Optional;
 import org.jtwig.parser.addon.AddonParserProvider;
+import org.jtwig.parser.cache.TemplateCache;
 import org.jtwig.parser.config.DefaultSyntaxConfiguration;
 import org.jtwig.parser.config.JtwigParserConfiguration;
 import org.jtwig.parser.parboiled.expression.test.*;
@@ -17,6 +18,10 @@ import static java.util.Arrays.asList;
 public class MyDefaultJtwigParserConfiguration extends JtwigParserConfiguration {
 
     public MyDefaultJtwigParserConfiguration() {
+        this(Optional.<TemplateCache>absent());
+    }
+
+    public MyDefaultJtwigParserConfiguration(Optional<TemplateCache> templateCache) {
         super(new DefaultSyntaxConfiguration(),
                 Collections.<AddonParserProvider>emptyList(),
                 asList(
@@ -56,7 +61,7 @@ public class MyDefaultJtwigParserConfiguration extends JtwigParserConfiguration
                         SameAsTestExpressionParser.class,
                         FunctionTestExpressionParser.class
                 ),
-                Optional.absent(),
+                templateCache,
                 Collections.<String, Object>emptyMap());
     }
 }
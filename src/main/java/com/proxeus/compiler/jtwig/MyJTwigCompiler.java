@@ -1,6 +1,9 @@
 package com.proxeus.compiler.jtwig;
 
+import com.google.common.base.Optional;
 import com.proxeus.error.CompilationException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.jtwig.JtwigModel;
 import org.jtwig.JtwigTemplate;
 import org.jtwig.environment.Environment;
@@ -9,6 +12,7 @@ import org.jtwig.environment.EnvironmentFactory;
 import org.jtwig.escape.environment.EscapeEnvironmentFactory;
 import org.jtwig.functions.environment.FunctionResolverFactory;
 import org.jtwig.parser.JtwigParserFactory;
+import org.jtwig.parser.cache.TemplateCache;
 import org.jtwig.property.environment.PropertyResolverEnvironmentFactory;
 import org.jtwig.render.environment.RenderEnvironmentFactory;
 import org.jtwig.render.expression.calculator.enumerated.environment.EnumerationListStrategyFactory;
@@ -17,6 +21,7 @@ import org.jtwig.renderable.StreamRenderResult;
 import org.jtwig.resource.reference.ResourceReference;
 import org.jtwig.value.environment.ValueEnvironmentFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
@@ -27,7 +32,7 @@ import java.util.Map;
  * MyJTwigCompiler helps us to configure jTwig as we need it for XML documents.
  */
 public class MyJTwigCompiler {
-    private EnvironmentConfiguration configuration = new MyConfiguration(false);
+    private MyTemplateCache templateCache;
     private EnvironmentFactory environmentFactory = new EnvironmentFactory(new JtwigParserFactory(), new MyResourceEnvironmentFactory(),
             new RenderEnvironmentFactory(),
             new FunctionResolverFactory(),
@@ -35,11 +40,22 @@ public class MyJTwigCompiler {
             new ValueEnvironmentFactory(),
             new EnumerationListStrategyFactory(),
             new EscapeEnvironmentFactory());
-    private Environment environment = environmentFactory.create(configuration);
+    private Environment environment;
     private MyJTwigUserReadableErrorBeautifier errorBeautifier = new MyJTwigUserReadableErrorBeautifier(1400);
     private Method renderMethodWithCharset;
 
     public MyJTwigCompiler(){
+        this(0, 0);
+    }
+
+    /**
+     * @param cacheEntries max count of parsed sources kept in memory, 0 disables the cache
+     * @param cacheMB      max size in MB of the sources the cached trees were parsed from
+     */
+    public MyJTwigCompiler(int cacheEntries, int cacheMB){
+        templateCache = new MyTemplateCache(cacheEntries, cacheMB);
+        EnvironmentConfiguration configuration = new MyConfiguration(false, Optional.<TemplateCache>of(templateCache));
+        environment = environmentFactory.create(configuration);
         try{
             /**
              * The public method of JTwig get the default charset from the environment, which makes it impossible to reuse in multiple threads.
@@ -55,7 +71,21 @@ public class MyJTwigCompiler {
 
     public void Compile(InputStream inputStream, Map<String, Object> data, OutputStream outputStream, Charset charset) throws Exception {
         try{
-            ResourceReference rr = new MyResourceReferenceInlineInputStream(inputStream);
+            ResourceReference rr;
+            if(templateCache.isEnabled()){
+                //the digest of the source is the key of the parsed tree, the same source doesn't need to be parsed again
+                if(!(inputStream instanceof ByteArrayInputStream)){
+                    inputStream = new ByteArrayInputStream(IOUtils.toByteArray(inputStream));
+                }
+                //digest in place, the stream is reset to be read by the parser on a miss
+                long size = inputStream.available();
+                inputStream.mark(0);
+                String digest = DigestUtils.sha256Hex(inputStream);
+                inputStream.reset();
+                rr = new MyResourceReferenceInlineInputStream(inputStream, digest, size);
+            }else{
+                rr = new MyResourceReferenceInlineInputStream(inputStream);
+            }
             JtwigTemplate tmpl = new JtwigTemplate(environment, rr);
             renderMethodWithCharset.invoke(tmpl, JtwigModel.newModel(data), new StreamRenderResult(outputStream, charset));
         }catch (Exception e){
@@ -66,4 +96,8 @@ public class MyJTwigCompiler {
             throw new CompilationException(e.getMessage(),e);
         }
     }
+
+    public MyTemplateCache getTemplateCache() {
+        return templateCache;
+    }
 }
@@ -8,11 +8,21 @@ public class MyResourceReferenceInlineInputStream extends ResourceReference {
     public InputStream inputStream;
     public final static String INLINE_INPUT_STREAM = "_ii_";
     private boolean alreadyLoaded = false;
+    //identifies the content of the input stream, null if unknown
+    private String digest;
+    private long size;
+
     public MyResourceReferenceInlineInputStream(InputStream inputStream) {
         super(INLINE_INPUT_STREAM, "");
         this.inputStream = inputStream;
     }
 
+    public MyResourceReferenceInlineInputStream(InputStream inputStream, String digest, long size) {
+        this(inputStream);
+        this.digest = digest;
+        this.size = size;
+    }
+
     public InputStream getInputStream(){
         if(alreadyLoaded){
             //for self import it is being called again
@@ -25,4 +35,12 @@ public class MyResourceReferenceInlineInputStream extends ResourceReference {
         alreadyLoaded = true;
         return inputStream;
     }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public long getSize() {
+        return size;
+    }
 }
@@ -0,0 +1,66 @@
+package com.proxeus.compiler.jtwig;
+
+import com.proxeus.util.LRUCache;
+import org.jtwig.environment.Environment;
+import org.jtwig.model.tree.Node;
+import org.jtwig.parser.JtwigParser;
+import org.jtwig.parser.cache.TemplateCache;
+import org.jtwig.resource.reference.ResourceReference;
+
+/**
+ * MyTemplateCache keeps the parsed jTwig trees of the most recently rendered sources.
+ * The cache of jTwig is keyed by the resource reference which is always the same for our inline input streams,
+ * that's why the sources are identified by the digest of their content instead.
+ * Sources without a digest are parsed on every call like before.
+ */
+public class MyTemplateCache implements TemplateCache {
+    private LRUCache<String, Parsed> cache;
+
+    public MyTemplateCache(int maxEntries, int maxMB) {
+        cache = new LRUCache<>(maxEntries, maxMB * 1024L * 1024L, parsed -> parsed.size);
+    }
+
+    @Override
+    public Node get(JtwigParser jtwigParser, Environment environment, ResourceReference resourceReference) {
+        String digest = null;
+        if (resourceReference instanceof MyResourceReferenceInlineInputStream) {
+            digest = ((MyResourceReferenceInlineInputStream) resourceReference).getDigest();
+        }
+        if (digest == null || !cache.isEnabled()) {
+            return jtwigParser.parse(environment, resourceReference);
+        }
+        Parsed parsed = cache.get(digest);
+        if (parsed == null) {
+            //the parsed tree is immutable, the data is only applied when rendering
+            parsed = new Parsed(jtwigParser.parse(environment, resourceReference), ((MyResourceReferenceInlineInputStream) resourceReference).getSize());
+            cache.put(digest, parsed);
+        }
+        return parsed.node;
+    }
+
+    public boolean isEnabled() {
+        return cache.isEnabled();
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public String toString() {
+        return cache.toString();
+    }
+
+    private static class Parsed {
+        private final Node node;
+        private final long size;
+
+        Parsed(Node node, long size) {
+            this.node = node;
+            this.size = size;
+        }
+    }
+}
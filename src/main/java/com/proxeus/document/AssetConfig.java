@@ -0,0 +1,32 @@
+package com.proxeus.document;
+
+/**
+ * AssetConfig defines how the assets of the templates like http image links or embedded images are loaded.
+ * These are the defaults that are set here, they are going to be overwritten by the config, if defined.
+ */
+public class AssetConfig {
+    /**
+     * max size in MB of the downloaded assets kept on the disk in the tmpFolder. 0 disables the cache, every asset is downloaded for each request.
+     **/
+    public int diskMB = 512;
+    /**
+     * max size in MB of the small cached assets that are kept in memory as well.
+     **/
+    public int memoryMB = 32;
+    /**
+     * how long a cached asset is used without asking the server if it changed, like 5m or 1h.
+     **/
+    public String fresh = "5m";
+    /**
+     * how long to wait for the connection to the server of an asset.
+     **/
+    public String connectTimeout = "5s";
+    /**
+     * how long to wait for the download of an asset.
+     **/
+    public String timeout = "30s";
+    /**
+     * base64 image data URIs of the JSON data bigger than this in KB are decoded into a file while the data is read, instead of being kept in memory. 0 disables it.
+     **/
+    public int spillKB = 256;
+}
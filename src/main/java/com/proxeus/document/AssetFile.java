@@ -1,14 +1,17 @@
 package com.proxeus.document;
 
+import com.proxeus.util.Base64DecodingWriter;
 import org.apache.commons.io.IOUtils;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Collection;
@@ -39,15 +42,15 @@ public class AssetFile {
     public static AssetFile find(Object localRemoteOrEmbeddedFileObject, File tmpDir){
         try{
             if(localRemoteOrEmbeddedFileObject != null){
-                if(localRemoteOrEmbeddedFileObject instanceof String){
-                    return provideImageFileWithExtIfPossible((String)localRemoteOrEmbeddedFileObject, tmpDir);
+                if(localRemoteOrEmbeddedFileObject instanceof String || localRemoteOrEmbeddedFileObject instanceof EmbeddedFile){
+                    return provide(localRemoteOrEmbeddedFileObject, tmpDir);
                 }else if(localRemoteOrEmbeddedFileObject instanceof Map){
                     Map m = ((Map)localRemoteOrEmbeddedFileObject);
                     for(Object k : m.keySet()){
                         //try to find the path in the map
                         ////{contentType=image/jpeg, name=IMG_20190520_195031_1.jpg, path=1643fc69-d786-45ee-b865-0259c1c4a5d4, ref=, size=3718863}
                         if("path".equals(k.toString().toLowerCase())){
-                            return provideImageFileWithExtIfPossible((String)m.get(k), tmpDir);
+                            return provide(m.get(k), tmpDir);
                         }
                     }
                 }else if(localRemoteOrEmbeddedFileObject instanceof Collection) {
@@ -55,8 +58,8 @@ public class AssetFile {
                     Collection fileList = (Collection)localRemoteOrEmbeddedFileObject;
                     AssetFile res = null;
                     for(Object val : fileList){
-                        if(val != null && val instanceof String){
-                            res = provideImageFileWithExtIfPossible((String) val, tmpDir);
+                        if(val instanceof String || val instanceof EmbeddedFile){
+                            res = provide(val, tmpDir);
                             if(res!=null){
                                 return res;
                             }
@@ -71,7 +74,17 @@ public class AssetFile {
         return null;
     }
 
-    private final static Pattern embeddedFileReg = Pattern.compile("^data\\:(image\\/\\w+);base64,(.*)");
+    private static AssetFile provide(Object pathOrEmbeddedFile, File tmpDir) {
+        if (pathOrEmbeddedFile instanceof EmbeddedFile) {
+            //decoded into the tmp dir while the data was read
+            AssetFile result = new AssetFile();
+            result.src = ((EmbeddedFile) pathOrEmbeddedFile).getFile();
+            return result;
+        }
+        return provideImageFileWithExtIfPossible((String) pathOrEmbeddedFile, tmpDir);
+    }
+
+    private final static Pattern embeddedFileReg = Pattern.compile("^data\\:(image\\/\\w+);base64,");
     /**
      * Provide image file with ext if possible by the input of a local, remote or embedded file.
      *
@@ -83,13 +96,13 @@ public class AssetFile {
             return null;
         }
         Matcher matcher;
-        if ((matcher = embeddedFileReg.matcher(localOrRemotePath)).find()) {
+        if ((matcher = embeddedFileReg.matcher(localOrRemotePath)).lookingAt()) {
             try {
-                byte[] imageBytes = javax.xml.bind.DatatypeConverter.parseBase64Binary(matcher.group(2));
                 File localFile = new File(cacheDir, UUID.randomUUID().toString());
-                try (FileOutputStream fos = new FileOutputStream(localFile)) {
-                    fos.write(imageBytes);
-                    fos.flush();
+                //decoded in chunks straight from the string into the file
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(localFile));
+                     Base64DecodingWriter decoder = new Base64DecodingWriter(out)) {
+                    decoder.append(localOrRemotePath, matcher.end(), localOrRemotePath.length());
                 }
                 AssetFile result = new AssetFile();
                 result.src = localFile;
@@ -120,7 +133,11 @@ public class AssetFile {
                 URL url = new URL(localOrRemotePath);
                 String fileName = UUID.randomUUID().toString();
                 File downloadedImage = new File(cacheDir, fileName);
-                copyURLToFile(url, downloadedImage);
+                if ("http".equals(url.getProtocol()) || "https".equals(url.getProtocol())) {
+                    RemoteAssetCache.get().copyTo(url, downloadedImage);
+                } else {
+                    copyURLToFile(url, downloadedImage);
+                }
                 AssetFile result = new AssetFile();
                 result.src = downloadedImage;
                 return result;
@@ -140,6 +157,8 @@ public class AssetFile {
      */
     private static void copyURLToFile(URL source, File destination) throws IOException {
         URLConnection connection = source.openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(30000);
         connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.95 Safari/537.11");
         InputStream input = connection.getInputStream();
         try {
@@ -0,0 +1,180 @@
+package com.proxeus.document;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.proxeus.error.BadRequestException;
+import com.proxeus.util.Json;
+import com.proxeus.util.zip.Zip;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Batch is one template compiled with many data sets.
+ * The template and the assets are received once, every data set is compiled on its own Template derived from it.
+ * The data is a JSON array of objects or newline delimited JSON objects, it is kept on disk and read one data set at the time.
+ */
+public class Batch {
+    private Template template;
+    private File data;
+    private List<String> assets = new ArrayList<>();
+
+    private Batch(String format) throws Exception {
+        template = new Template();
+        template.setFormat(format == null ? "pdf" : format);
+    }
+
+    /**
+     * Read the parts while they are uploaded, every part is written once to where it belongs.
+     */
+    public static Batch fromFormData(FileItemIterator parts, String format) throws Exception {
+        Batch batch = new Batch(format);
+        try {
+            while (parts.hasNext()) {
+                FileItemStream part = parts.next();
+                try (InputStream inputStream = part.openStream()) {
+                    String filename = part.getName();
+                    if (filename == null) {
+                        filename = part.getFieldName();
+                    }
+                    batch.processEntry(filename, inputStream, false);
+                }
+            }
+            batch.validate();
+            return batch;
+        } catch (Exception e) {
+            batch.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Structure:
+     * -zip
+     * ---- tmpl.odt | tmpl.docx //only one template supported
+     * ---- data.json | data.ndjson //array or newline delimited objects, the template is compiled once for each
+     * ---- asset1 // assets that should be referenced in the json data
+     * ---- asset2
+     */
+    public static Batch fromZip(InputStream zipStream, String format) throws Exception {
+        Batch batch = new Batch(format);
+        try {
+            Zip.extract(zipStream, (zipEntry, zipInputStream) -> batch.processEntry(zipEntry.getName(), zipInputStream, zipEntry.isDirectory()));
+        } catch (Exception e) {
+            batch.release();
+            throw new BadRequestException("Please read the specification for creating the request with the zip package. zip[tmpl.odt,data.json,assets1,asset2...]");
+        }
+        try {
+            batch.validate();
+            return batch;
+        } catch (Exception e) {
+            batch.release();
+            throw e;
+        }
+    }
+
+    private void processEntry(String name, InputStream inputStream, boolean isDirectory) throws IOException {
+        String lowerName = name.toLowerCase();
+        if (lowerName.endsWith(".odt")) {
+            template.setSrc(toFile(inputStream, "tmpl.odt", false));
+        } else if (lowerName.endsWith(".docx")) {
+            template.setSrc(toFile(inputStream, "tmpl.docx", false));
+        } else if (lowerName.endsWith(".json") || lowerName.endsWith(".ndjson") || lowerName.endsWith(".jsonl")) {
+            //kept on disk, a batch can be larger than what we like to hold in memory
+            data = toFile(inputStream, "data.batch", false);
+        } else {
+            toFile(inputStream, name, isDirectory);
+            if (!isDirectory) {
+                assets.add(name);
+            }
+        }
+    }
+
+    private File toFile(InputStream inputStream, String name, boolean isDirectory) throws IOException {
+        File file = new File(template.getTmpDir(), name);
+        if (isDirectory) {
+            if (!file.exists() && !file.mkdirs()) {
+                throw new IOException("Could not create: " + file.getAbsolutePath());
+            }
+        } else {
+            file.getParentFile().mkdirs();
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                IOUtils.copy(inputStream, outputStream);
+            }
+        }
+        return file;
+    }
+
+    private void validate() throws BadRequestException {
+        if (!hasSrc()) {
+            throw new BadRequestException("The batch needs a template, tmpl.odt or tmpl.docx.");
+        }
+        if (data == null) {
+            throw new BadRequestException("The batch needs the data sets, data.json as array or data.ndjson with one object per line.");
+        }
+    }
+
+    private boolean hasSrc() {
+        try {
+            return template.getSrc().isFile();
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Iterate over the data sets.
+     * The objects are read on demand, a root array is unwrapped and a sequence of root objects is read one after the other.
+     * The caller has to close the iterator.
+     */
+    public MappingIterator<Map<String, Object>> dataSets() throws IOException {
+        return Json.mapper.readerFor(Map.class).readValues(new BufferedInputStream(new FileInputStream(data)));
+    }
+
+    /**
+     * Create the template of one data set.
+     * The source and the assets are copied as the compilation modifies them in the tmp dir of the template.
+     * The digest of the source is taken over, the prepared template is looked up without hashing the source again.
+     */
+    public Template newTemplate(Map<String, Object> dataSet) throws Exception {
+        Template item = new Template(null, dataSet, template.getFormat());
+        try {
+            File src = new File(item.getTmpDir(), template.getSrc().getName());
+            Files.copy(template.getSrc().toPath(), src.toPath());
+            item.setSrc(src);
+            item.setSrcDigest(template.getSrcDigest());
+            Path from = template.getTmpDir().toPath();
+            Path to = item.getTmpDir().toPath();
+            for (String asset : assets) {
+                Path dst = to.resolve(asset);
+                Files.createDirectories(dst.getParent());
+                Files.copy(from.resolve(asset), dst);
+            }
+            return item;
+        } catch (Exception e) {
+            item.release();
+            throw e;
+        }
+    }
+
+    public Template getTemplate() {
+        return template;
+    }
+
+    public String getFormat() {
+        return template.getFormat();
+    }
+
+    public void release() {
+        if (template != null) {
+            template.release();
+        }
+        template = null;
+        data = null;
+        assets = null;
+    }
+}
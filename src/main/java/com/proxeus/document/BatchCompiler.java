@@ -0,0 +1,181 @@
+package com.proxeus.document;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.proxeus.trace.Span;
+import com.proxeus.trace.Tracing;
+import com.proxeus.util.concurrent.BoundedExecutor;
+import com.proxeus.util.concurrent.TaskGroup;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * BatchCompiler compiles the data sets of a Batch in parallel and streams the results as ZIP.
+ * The entries are named by the position of their data set, 00001.pdf for the first one, in the order they are finished.
+ * A data set that fails is written as 00001.error.txt instead, the rest of the batch is compiled anyway.
+ * All batches share one executor of workers threads, each batch waits for its own tasks through a TaskGroup.
+ */
+public class BatchCompiler {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    private TemplateCompiler templateCompiler;
+    private int workers;
+    private BoundedExecutor executor;
+
+    public BatchCompiler(TemplateCompiler templateCompiler, int workers) {
+        this.templateCompiler = templateCompiler;
+        this.workers = Math.max(1, workers);
+        this.executor = new BoundedExecutor("batch", this.workers, this.workers * 2);
+    }
+
+    /**
+     * @return count of data sets written, including the failed ones
+     */
+    public int compile(Batch batch, OutputStream output, boolean embedError) throws Exception {
+        TaskGroup group = executor.group();
+        Finished finished = new Finished();
+        int submitted = 0;
+        int written = 0;
+        try (ZipOutputStream zip = new ZipOutputStream(output);
+             MappingIterator<Map<String, Object>> dataSets = batch.dataSets()) {
+            boolean more = true;
+            while (true) {
+                //the first data set is compiled alone, it prepares the template for the others
+                int maxPending = written == 0 ? 1 : workers * 2;
+                while (more && submitted - written < maxPending) {
+                    Map<String, Object> dataSet;
+                    try {
+                        more = dataSets.hasNextValue();
+                        if (!more) {
+                            break;
+                        }
+                        dataSet = dataSets.nextValue();
+                    } catch (Exception e) {
+                        //the data is broken from here on, report it and finish what was read so far
+                        more = false;
+                        writeText(zip, "error.txt", "couldn't read data set " + (submitted + 1) + ": " + e.getMessage());
+                        break;
+                    }
+                    int index = ++submitted;
+                    group.submit(() -> finished.add(compile(batch, index, dataSet, embedError)));
+                }
+                if (written == submitted) {
+                    break;
+                }
+                Item item = finished.take();
+                written++;
+                write(zip, item);
+            }
+            zip.finish();
+        } finally {
+            //aborted, the tasks not started are dropped and the results of the running ones are released when they finish
+            if (written < submitted) {
+                group.cancel();
+                finished.abort();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return count of data sets compiled at the same time
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    private Item compile(Batch batch, int index, Map<String, Object> dataSet, boolean embedError) {
+        Item item = new Item(index);
+        Template template = null;
+        try (Span span = Tracing.start("item")) {
+            span.setAttribute("batch.index", index);
+            template = batch.newTemplate(dataSet);
+            item.result = templateCompiler.compile(template, embedError);
+        } catch (Exception e) {
+            item.error = e;
+            if (template != null) {
+                template.release();
+            }
+        }
+        return item;
+    }
+
+    private void write(ZipOutputStream zip, Item item) throws Exception {
+        String name = String.format("%05d", item.index);
+        if (item.error != null) {
+            log.debug("batch data set " + item.index + " failed", item.error);
+            writeText(zip, name + ".error.txt", item.error.getMessage());
+            return;
+        }
+        try (InputStream inputStream = new FileInputStream(item.result.target)) {
+            zip.putNextEntry(new ZipEntry(name + "." + item.result.template.getFormat()));
+            IOUtils.copy(inputStream, zip);
+            zip.closeEntry();
+        } finally {
+            item.result.release();
+        }
+    }
+
+    private void writeText(ZipOutputStream zip, String name, String text) throws Exception {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(String.valueOf(text).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    /**
+     * Finished holds the items of a batch in the order they are finished, until they are written or the batch is aborted.
+     */
+    private static class Finished {
+        private final BlockingQueue<Item> items = new LinkedBlockingQueue<>();
+        private boolean aborted;
+
+        synchronized void add(Item item) {
+            if (aborted) {
+                item.release();
+                return;
+            }
+            items.add(item);
+        }
+
+        Item take() throws InterruptedException {
+            return items.take();
+        }
+
+        /**
+         * Release the items not written and the ones finished from now on.
+         */
+        synchronized void abort() {
+            aborted = true;
+            Item item;
+            while ((item = items.poll()) != null) {
+                item.release();
+            }
+        }
+    }
+
+    private static class Item {
+        private final int index;
+        private FileResult result;
+        private Exception error;
+
+        Item(int index) {
+            this.index = index;
+        }
+
+        void release() {
+            if (result != null) {
+                result.release();
+            }
+        }
+    }
+}
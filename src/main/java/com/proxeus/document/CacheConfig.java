@@ -0,0 +1,44 @@
+package com.proxeus.document;
+
+/**
+ * CacheConfig defines the limits of the in-memory caches shared between requests.
+ * These are the defaults that are set here, they are going to be overwritten by the config, if defined.
+ */
+public class CacheConfig {
+    /**
+     * max count of prepared template XML entries like content.xml or styles.xml kept in memory. 0 disables the template cache.
+     **/
+    public int templateEntries = 128;
+    /**
+     * max size in MB of the XML the cached template entries were prepared from. The heap used by the prepared events is a multiple of it.
+     **/
+    public int templateMB = 64;
+    /**
+     * max count of parsed jTwig templates kept in memory. 0 disables the jTwig cache.
+     **/
+    public int jtwigEntries = 128;
+    /**
+     * max size in MB of the sources the cached jTwig templates were parsed from. The heap used by the parsed trees is a multiple of it.
+     **/
+    public int jtwigMB = 64;
+    /**
+     * max count of adjusted images kept in memory as png, for the same image in the same container. 0 disables the image cache.
+     **/
+    public int imageEntries = 512;
+    /**
+     * max size in MB of the cached png images.
+     **/
+    public int imageMB = 64;
+    /**
+     * max count of templates whose variables are kept in memory for /vars. 0 disables the vars cache.
+     **/
+    public int varsEntries = 256;
+    /**
+     * max size in MB of the compiled documents kept on the disk in the tmpFolder, to answer identical requests without compiling them again. 0 disables the output cache.
+     **/
+    public int outputMB = 0;
+    /**
+     * how long a compiled document is used for identical requests, like 1h. The http assets of the data are not part of the key, they can change within this time. 0s keeps it until it is evicted.
+     **/
+    public String outputTtl = "1h";
+}
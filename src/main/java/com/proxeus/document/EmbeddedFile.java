@@ -0,0 +1,32 @@
+package com.proxeus.document;
+
+import java.io.File;
+
+/**
+ * EmbeddedFile takes the place of a big base64 data URI in the data of a template.
+ * The content was decoded into a file of the request while the data was read, the URI itself is not kept in memory.
+ */
+public class EmbeddedFile {
+    private final String mediaType;
+    private final File file;
+
+    public EmbeddedFile(String mediaType, File file) {
+        this.mediaType = mediaType;
+        this.file = file;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * A short form of the data URI, the content is not encoded again.
+     */
+    public String toString() {
+        return "data:" + mediaType + ";base64,[" + file.length() + " bytes]";
+    }
+}
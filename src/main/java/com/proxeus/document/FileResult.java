@@ -2,7 +2,12 @@ package com.proxeus.document;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import org.apache.commons.io.IOUtils;
+
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * FileResult helps to deliver the results and free resources as soon as they are not needed anymore.
@@ -11,15 +16,36 @@ public class FileResult {
     public File target;
     public String contentType;
     public Template template;
+    /**
+     * set instead of target when the result is converted while it is written
+     */
+    public Stream stream;
 
     public FileResult(Template template){
         this.template = template;
     }
 
+    public boolean isStreamed(){
+        return stream != null;
+    }
+
+    /**
+     * Write the result to output, it is converted on the way if it is streamed.
+     */
+    public void writeTo(OutputStream output) throws Exception{
+        if(stream != null){
+            stream.writeTo(output);
+            return;
+        }
+        try(InputStream input = new FileInputStream(target)){
+            IOUtils.copy(input, output);
+        }
+    }
+
     public void release(){
         if(template!=null){
             template.release();
-        }else{
+        }else if(target != null){
             if(!target.delete()){
                 System.err.println("error when deleting directory: "+ target.getAbsolutePath());
             }
@@ -27,11 +53,16 @@ public class FileResult {
         target = null;
         contentType = null;
         template = null;
+        stream = null;
     }
 
     public String toString(){
         return ToStringBuilder.reflectionToString(this);
     }
+
+    public interface Stream {
+        void writeTo(OutputStream output) throws Exception;
+    }
 }
 
 
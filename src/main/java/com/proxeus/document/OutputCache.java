@@ -0,0 +1,312 @@
+package com.proxeus.document;
+
+import com.proxeus.Config;
+import com.proxeus.metrics.Counter;
+import com.proxeus.metrics.Metrics;
+import com.proxeus.util.LRUCache;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * OutputCache keeps the compiled documents on the disk to answer identical requests without compiling them again.
+ * <p>
+ * A request is identified by the digest of the template, the data with the keys in order, the assets of the request
+ * and the format. Concurrent identical requests wait for the one that compiles the document.
+ * The http assets referenced by the data are not part of the key, a cached document is used for ttl at most.
+ * The index is in memory only, the files of a previous run are removed.
+ */
+public class OutputCache {
+    private static final long MB = 1024 * 1024;
+
+    private static final Counter hits = Metrics.counter("document_output_cache_hits_total", "Compile requests answered by the output cache.");
+    private static final Counter coalesced = Metrics.counter("document_output_cache_coalesced_total", "Compile requests that waited for an identical one.");
+
+    private final Logger log = LogManager.getLogger(this.getClass());
+    private final File dir;
+    private final long ttlMillis;
+    private final LRUCache<String, Output> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<Output>> compiling = new ConcurrentHashMap<>();
+    private final AtomicLong fileCount = new AtomicLong();
+
+    public OutputCache(CacheConfig config, File dir) {
+        if (config == null) {
+            config = new CacheConfig();
+        }
+        this.dir = dir;
+        ttlMillis = Config.parseDurationToMillis(config.outputTtl);
+        cache = new LRUCache<>(Integer.MAX_VALUE, config.outputMB * MB, output -> output.size, (key, output) -> output.file.delete());
+        if (cache.isEnabled()) {
+            FileUtils.deleteQuietly(dir);
+            dir.mkdirs();
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache.isEnabled();
+    }
+
+    /**
+     * Deliver the cached result of an identical request or compile it.
+     *
+     * @param template    the request, the result is put into its tmp dir
+     * @param compilation compiles the template on a miss
+     */
+    public FileResult get(Template template, Compilation compilation) throws Exception {
+        if (!cache.isEnabled() || !template.isCacheOutput()) {
+            return compilation.compile();
+        }
+        String key = key(template);
+        Output cached = cache.get(key);
+        if (cached != null && cached.isFresh(System.currentTimeMillis(), ttlMillis)) {
+            FileResult result = deliver(cached, template);
+            if (result != null) {
+                hits.inc();
+                return result;
+            }
+        }
+        CompletableFuture<Output> mine = new CompletableFuture<>();
+        CompletableFuture<Output> running = compiling.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.inc();
+            FileResult result = deliver(await(running), template);
+            //too big to be cached or evicted in the meantime
+            return result != null ? result : compilation.compile();
+        }
+        try {
+            FileResult result = compilation.compile();
+            boolean streamed = result.isStreamed();
+            try {
+                mine.complete(store(key, result));
+            } catch (Exception e) {
+                if (streamed) {
+                    //the stream is consumed by the conversion, there is no document to deliver
+                    result.release();
+                    throw e;
+                }
+                //the compiled document is fine, the waiting requests compile it themselves
+                mine.complete(null);
+                log.error("couldn't cache the output of " + result.template.getSrc(), e);
+            }
+            return result;
+        } catch (Throwable e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            compiling.remove(key, mine);
+        }
+    }
+
+    private static Output await(CompletableFuture<Output> running) throws Exception {
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            //the identical request failed, this one would fail as well
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Keep a link or copy of the result in the cache dir, a streamed result is converted right now.
+     *
+     * @return the cached output or null if it isn't cached
+     */
+    private Output store(String key, FileResult result) throws Exception {
+        //the tmpFolder is cleaned when a compiler is created
+        dir.mkdirs();
+        File file = new File(dir, fileCount.incrementAndGet() + ".out");
+        try {
+            if (result.isStreamed()) {
+                try (OutputStream output = new FileOutputStream(file)) {
+                    result.writeTo(output);
+                }
+                result.stream = null;
+                result.target = new File(result.template.getTmpDir(), "final");
+                Files.move(file.toPath(), result.target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            linkOrCopy(result.target.toPath(), file.toPath());
+        } catch (Exception e) {
+            file.delete();
+            throw e;
+        }
+        Output output = new Output(file, file.length(), result.contentType, System.currentTimeMillis());
+        if (!cache.put(key, output)) {
+            file.delete();
+            return null;
+        }
+        return output;
+    }
+
+    /**
+     * @return a result with the cached output as its target, null if there is none or it was removed in the meantime
+     */
+    private FileResult deliver(Output output, Template template) throws IOException {
+        if (output == null) {
+            return null;
+        }
+        File target = new File(template.getTmpDir(), "final");
+        try {
+            linkOrCopy(output.file.toPath(), target.toPath());
+        } catch (NoSuchFileException e) {
+            if (!e.getFile().equals(output.file.toString())) {
+                throw e;
+            }
+            return null;
+        }
+        FileResult result = new FileResult(template);
+        result.target = target;
+        result.contentType = output.contentType;
+        return result;
+    }
+
+    /**
+     * A hard link shares the content, evicting the cached file doesn't affect the result being written.
+     */
+    private static void linkOrCopy(Path src, Path dst) throws IOException {
+        try {
+            Files.createLink(dst, src);
+        } catch (UnsupportedOperationException | IOException e) {
+            if (e instanceof NoSuchFileException) {
+                throw (NoSuchFileException) e;
+            }
+            Files.copy(src, dst, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return the digest of everything the compiled document depends on
+     */
+    static String key(Template template) throws IOException {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        update(digest, template.getSrcDigest());
+        update(digest, template.getFormat());
+        update(digest, Boolean.toString(template.isEmbedError()));
+        Set<File> embedded = new HashSet<>();
+        updateValue(digest, template.getData(), embedded);
+        for (Path asset : assets(template, embedded)) {
+            update(digest, template.getTmpDir().toPath().relativize(asset).toString());
+            update(digest, digest(asset.toFile()));
+        }
+        return DigestUtils.sha256Hex(digest.digest());
+    }
+
+    private static List<Path> assets(Template template, Set<File> embedded) throws IOException {
+        Path src = template.getSrc().toPath();
+        try (Stream<Path> files = Files.walk(template.getTmpDir().toPath())) {
+            return files.filter(Files::isRegularFile)
+                    .filter(path -> !path.equals(src) && !embedded.contains(path.toFile()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void updateValue(MessageDigest digest, Object value, Set<File> embedded) throws IOException {
+        if (value instanceof Map) {
+            //sorted, the same data in another order is the same request
+            Map<String, Object> sorted = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            update(digest, "{" + sorted.size());
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                update(digest, entry.getKey());
+                updateValue(digest, entry.getValue(), embedded);
+            }
+        } else if (value instanceof Collection) {
+            Collection<Object> list = new ArrayList<>((Collection<Object>) value);
+            update(digest, "[" + list.size());
+            for (Object o : list) {
+                updateValue(digest, o, embedded);
+            }
+        } else if (value instanceof EmbeddedFile) {
+            //decoded into a file with a random name
+            EmbeddedFile file = (EmbeddedFile) value;
+            embedded.add(file.getFile());
+            update(digest, "data:" + file.getMediaType());
+            update(digest, digest(file.getFile()));
+        } else if (value == null) {
+            update(digest, "null");
+        } else {
+            update(digest, value.getClass().getSimpleName() + ":" + value);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        //length prefixed, the values can't run into each other
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static String digest(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return DigestUtils.sha256Hex(input);
+        }
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public String toString() {
+        return cache.toString();
+    }
+
+    public interface Compilation {
+        FileResult compile() throws Exception;
+    }
+
+    private static class Output {
+        final File file;
+        final long size;
+        final String contentType;
+        final long createdAt;
+
+        Output(File file, long size, String contentType, long createdAt) {
+            this.file = file;
+            this.size = size;
+            this.contentType = contentType;
+            this.createdAt = createdAt;
+        }
+
+        boolean isFresh(long now, long ttlMillis) {
+            return ttlMillis <= 0 || now - createdAt < ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.proxeus.document;
+
+import com.proxeus.Config;
+import com.proxeus.util.LRUCache;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RemoteAssetCache downloads the http assets of the templates, like logos and signatures, and keeps them on the disk
+ * for the next requests. The small ones are kept in memory as well.
+ * <p>
+ * A cached asset is used as it is while it is fresh, afterwards the server is asked with its ETag or Last-Modified
+ * if it changed. Concurrent requests for the same URL wait for one download instead of starting their own.
+ * The index is in memory only, the files of a previous run are removed.
+ */
+public class RemoteAssetCache {
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.95 Safari/537.11";
+    private static final long MB = 1024 * 1024;
+    //bigger assets are copied from the disk
+    private static final long MEMORY_ENTRY_LIMIT = MB;
+
+    private static volatile RemoteAssetCache instance;
+
+    private final Logger log = LogManager.getLogger(this.getClass());
+    private final File dir;
+    private final HttpClient client;
+    private final long freshMillis;
+    private final long timeoutMillis;
+    private final LRUCache<File, byte[]> memory;
+    private final LRUCache<String, Asset> disk;
+    private final ConcurrentHashMap<String, CompletableFuture<Asset>> downloads = new ConcurrentHashMap<>();
+    private final AtomicLong fileCount = new AtomicLong();
+
+    private final AtomicLong downloaded = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public RemoteAssetCache(AssetConfig config, File dir) {
+        this.dir = dir;
+        FileUtils.deleteQuietly(dir);
+        dir.mkdirs();
+        long connectTimeout = Config.parseDurationToMillis(config.connectTimeout);
+        long timeout = Config.parseDurationToMillis(config.timeout);
+        freshMillis = Math.max(0, Config.parseDurationToMillis(config.fresh));
+        timeoutMillis = timeout > 0 ? timeout : 30000;
+        //keeps the connections to the servers open for the next downloads
+        client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeout > 0 ? connectTimeout : 5000))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        memory = new LRUCache<>(Integer.MAX_VALUE, config.memoryMB * MB, bytes -> bytes.length);
+        disk = new LRUCache<>(Integer.MAX_VALUE, config.diskMB * MB, asset -> asset.size, (url, asset) -> {
+            memory.remove(asset.file);
+            asset.file.delete();
+        });
+    }
+
+    /**
+     * Replace the shared cache, the files of the previous one are removed.
+     */
+    public static synchronized void configure(AssetConfig config, File dir) {
+        RemoteAssetCache previous = instance;
+        instance = new RemoteAssetCache(config == null ? new AssetConfig() : config, dir);
+        if (previous != null && !previous.dir.equals(dir)) {
+            previous.disk.clear();
+        }
+    }
+
+    public static RemoteAssetCache get() {
+        RemoteAssetCache i = instance;
+        if (i == null) {
+            synchronized (RemoteAssetCache.class) {
+                if (instance == null) {
+                    instance = new RemoteAssetCache(new AssetConfig(), new File(System.getProperty("java.io.tmpdir"), "document-service-assets"));
+                }
+                i = instance;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Copy the asset behind the http or https URL to the destination, from the cache if possible.
+     *
+     * @throws IOException if the asset couldn't be downloaded or the server didn't respond with 200
+     */
+    public void copyTo(URL url, File destination) throws IOException {
+        if (!disk.isEnabled()) {
+            download(url, null, destination.toPath());
+            return;
+        }
+        String key = url.toString();
+        Asset cached = disk.get(key);
+        if (cached != null && cached.isFresh(System.currentTimeMillis(), freshMillis) && deliver(cached, destination)) {
+            return;
+        }
+        CompletableFuture<Asset> mine = new CompletableFuture<>();
+        CompletableFuture<Asset> running = downloads.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            if (!deliver(await(running, key), destination)) {
+                //too big to be cached and already removed by the request that downloaded it
+                download(url, null, destination.toPath());
+            }
+            return;
+        }
+        Asset asset;
+        try {
+            asset = load(url, cached);
+            mine.complete(asset);
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            downloads.remove(key, mine);
+        }
+        try {
+            if (!deliver(asset, destination)) {
+                download(url, null, destination.toPath());
+            }
+        } finally {
+            if (!asset.cached) {
+                asset.file.delete();
+            }
+        }
+    }
+
+    private Asset await(CompletableFuture<Asset> running, String url) throws IOException {
+        try {
+            return running.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(url + ": " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException(url + " didn't download within " + timeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(url);
+        }
+    }
+
+    /**
+     * Revalidate the cached asset or download it.
+     */
+    private Asset load(URL url, Asset cached) throws IOException {
+        //the tmpFolder is cleaned at start up
+        dir.mkdirs();
+        File file = new File(dir, fileCount.incrementAndGet() + ".asset");
+        HttpResponse<Path> response;
+        try {
+            response = download(url, cached, file.toPath());
+        } catch (IOException e) {
+            file.delete();
+            if (cached != null) {
+                //better an old logo than none
+                log.warn("using the cached " + url + " as it couldn't be revalidated: " + e.getMessage());
+                return cached;
+            }
+            throw e;
+        }
+        long now = System.currentTimeMillis();
+        if (cached != null && response.statusCode() == 304) {
+            notModified.incrementAndGet();
+            cached.validatedAt = now;
+            return cached;
+        }
+        downloaded.incrementAndGet();
+        Asset asset = new Asset(file, file.length(), response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null), now);
+        asset.cached = disk.put(url.toString(), asset);
+        return asset;
+    }
+
+    /**
+     * @param cached  to ask the server if it changed, null for an unconditional download
+     * @param target  file the body is written to if the status is 200
+     * @return the response with status 200, or 304 if the cached asset didn't change
+     */
+    private HttpResponse<Path> download(URL url, Asset cached, Path target) throws IOException {
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        request.timeout(Duration.ofMillis(timeoutMillis)).header("User-Agent", USER_AGENT);
+        if (cached != null && cached.etag != null) {
+            request.header("If-None-Match", cached.etag);
+        }
+        if (cached != null && cached.lastModified != null) {
+            request.header("If-Modified-Since", cached.lastModified);
+        }
+        CompletableFuture<HttpResponse<Path>> future = client.sendAsync(request.build(), info -> info.statusCode() == 200
+                ? HttpResponse.BodySubscribers.ofFile(target)
+                : HttpResponse.BodySubscribers.replacing(null));
+        HttpResponse<Path> response;
+        try {
+            //the request timeout ends with the headers, this one includes the body
+            response = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(url + ": " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException(url + " didn't download within " + timeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(url.toString());
+        }
+        if (response.statusCode() != 200 && !(cached != null && response.statusCode() == 304)) {
+            throw new IOException(url + " responded with " + response.statusCode());
+        }
+        return response;
+    }
+
+    /**
+     * @return false if the file of the asset was removed in the meantime
+     */
+    private boolean deliver(Asset asset, File destination) throws IOException {
+        try {
+            byte[] bytes = memory.get(asset.file);
+            if (bytes == null && asset.cached && asset.size <= MEMORY_ENTRY_LIMIT && memory.isEnabled()) {
+                bytes = Files.readAllBytes(asset.file.toPath());
+                memory.put(asset.file, bytes);
+            }
+            if (bytes != null) {
+                Files.write(destination.toPath(), bytes);
+            } else {
+                Files.copy(asset.file.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            if (!e.getFile().equals(asset.file.toString())) {
+                throw e;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return count of assets downloaded from their servers
+     */
+    public long getDownloaded() {
+        return downloaded.get();
+    }
+
+    /**
+     * @return count of cached assets the servers confirmed to be unchanged
+     */
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * @return count of requests that waited for the download of another request
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getHits() {
+        return disk.getHits();
+    }
+
+    public long getMisses() {
+        return disk.getMisses();
+    }
+
+    public String toString() {
+        return "disk[" + disk + "] memory[" + memory + "] downloaded=" + getDownloaded() + " notModified=" + getNotModified() + " coalesced=" + getCoalesced();
+    }
+
+    private static class Asset {
+        private final File file;
+        private final long size;
+        private final String etag;
+        private final String lastModified;
+        private volatile long validatedAt;
+        //false if it was too big for the cache, the file is removed after the request
+        private volatile boolean cached;
+
+        Asset(File file, long size, String etag, String lastModified, long validatedAt) {
+            this.file = file;
+            this.size = size;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.validatedAt = validatedAt;
+        }
+
+        boolean isFresh(long now, long freshMillis) {
+            return validatedAt + freshMillis > now;
+        }
+    }
+}
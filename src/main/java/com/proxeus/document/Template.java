@@ -1,16 +1,17 @@
 package com.proxeus.document;
 
 import com.proxeus.error.BadRequestException;
-import com.proxeus.util.Json;
 import com.proxeus.util.zip.EntryFilter;
 import com.proxeus.util.zip.Zip;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.logging.log4j.Logger;
 
-import javax.servlet.http.Part;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
@@ -26,10 +27,13 @@ import static com.proxeus.document.TemplateType.ODT;
 public class Template {
     private TemplateType type;
     private File src;
+    private String srcDigest;
     private Map<String, Object> data;
     private File tmpDir;
     private String format;
     private boolean embedError;
+    private boolean streamOutput;
+    private boolean cacheOutput = true;
     private String cacheDir = System.getProperty("document.template.cache.dir");
     private String alternateCacheDir = System.getProperty("java.io.tmpdir");
 
@@ -41,7 +45,8 @@ public class Template {
                 append("data", data).
                 append("tmpDir", tmpDir).
                 append("format", format).
-                append("embedError", embedError).toString();
+                append("embedError", embedError).
+                append("streamOutput", streamOutput).toString();
     }
 
     public Template() throws Exception {
@@ -63,15 +68,22 @@ public class Template {
         createCacheDir();
     }
 
-    public static Template fromFormData(Collection<Part> parts, String format) throws Exception {
+    /**
+     * Read the parts while they are uploaded, every part is written once to where it belongs.
+     */
+    public static Template fromFormData(FileItemIterator parts, String format) throws Exception {
         if (format == null) {
             format = "pdf";
         }
 
         Template template = new Template();
-        for (Part part : parts) {
-            try (InputStream inputStream = part.getInputStream()) {
-                String filename = part.getSubmittedFileName();
+        while (parts.hasNext()) {
+            FileItemStream part = parts.next();
+            try (InputStream inputStream = part.openStream()) {
+                String filename = part.getName();
+                if (filename == null) {
+                    filename = part.getFieldName();
+                }
                 processEntry(template, filename, inputStream, false);
             }
         }
@@ -139,10 +151,13 @@ public class Template {
                 throw new IllegalStateException("couldn't process template docx");
             }
         } else if (name.toLowerCase().endsWith(".json")) {
-            //the json data the template is going to be resolved with
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            IOUtils.copy(inputStream, outputStream);
-            template.setData(Json.fromJson(outputStream.toByteArray(), Map.class));
+            //the json data the template is going to be resolved with, big images are decoded into the tmp dir
+            try {
+                template.setData(TemplateDataReader.read(new BufferedInputStream(inputStream), template.getTmpDir()));
+            } catch (IOException e) {
+                e.printStackTrace();
+                template.setData(null);
+            }
         } else {
             //other assets that should be referenced in the json data
             inputStreamToFile(inputStream, template.getTmpDir(), name, isDirectory);
@@ -192,6 +207,7 @@ public class Template {
             System.err.println("error when deleting directory: " + tmpDir.getAbsolutePath());
         }
         src = null;
+        srcDigest = null;
         data = null;
         tmpDir = null;
     }
@@ -249,6 +265,27 @@ public class Template {
 
     public void setSrc(File src) {
         this.src = src;
+        this.srcDigest = null;
+    }
+
+    /**
+     * SHA-256 of the template as it was provided.
+     * It is calculated on the first call, later modifications of the source file are not reflected.
+     */
+    public String getSrcDigest() throws IOException {
+        if (srcDigest == null) {
+            try (InputStream inputStream = new FileInputStream(getSrc())) {
+                srcDigest = DigestUtils.sha256Hex(inputStream);
+            }
+        }
+        return srcDigest;
+    }
+
+    /**
+     * Set the digest of a source known to be identical to the one it was calculated from.
+     */
+    void setSrcDigest(String srcDigest) {
+        this.srcDigest = srcDigest;
     }
 
     public File getTmpDir() {
@@ -272,6 +309,28 @@ public class Template {
         this.embedError = embedError;
     }
 
+    public boolean isStreamOutput() {
+        return streamOutput;
+    }
+
+    /**
+     * @param streamOutput true to convert the document through streams when the result is written, instead of from and to files
+     */
+    public void setStreamOutput(boolean streamOutput) {
+        this.streamOutput = streamOutput;
+    }
+
+    public boolean isCacheOutput() {
+        return cacheOutput;
+    }
+
+    /**
+     * @param cacheOutput false to compile the document even if an identical request was cached
+     */
+    public void setCacheOutput(boolean cacheOutput) {
+        this.cacheOutput = cacheOutput;
+    }
+
     public String getFormat() {
         return format;
     }
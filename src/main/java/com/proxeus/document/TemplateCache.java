@@ -0,0 +1,44 @@
+package com.proxeus.document;
+
+import com.proxeus.util.LRUCache;
+import com.proxeus.xml.template.PreparedTemplate;
+
+/**
+ * TemplateCache keeps the prepared XML entries of the most recently used templates.
+ * Templates are identified by the digest of their content, it doesn't matter how and by whom they were uploaded.
+ */
+public class TemplateCache {
+    private LRUCache<String, PreparedTemplate> cache;
+
+    public TemplateCache(CacheConfig cacheConfig) {
+        if (cacheConfig == null) {
+            cacheConfig = new CacheConfig();
+        }
+        cache = new LRUCache<>(cacheConfig.templateEntries, cacheConfig.templateMB * 1024L * 1024L, PreparedTemplate::getSize);
+    }
+
+    /**
+     * @param template  the template the entry belongs to
+     * @param entryName path of the XML inside the template
+     * @param loader    prepares the entry on a miss
+     * @return the prepared entry
+     */
+    public PreparedTemplate get(Template template, String entryName, LRUCache.Loader<PreparedTemplate> loader) throws Exception {
+        if (!cache.isEnabled()) {
+            return loader.load();
+        }
+        return cache.get(template.getSrcDigest() + "/" + entryName, loader);
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public String toString() {
+        return cache.toString();
+    }
+}
@@ -27,20 +27,35 @@ public class TemplateCompiler {
     private Logger log = LogManager.getLogger(this.getClass());
 
     private ODTCompiler odtCompiler;
+    private OutputCache outputCache;
 
     public TemplateCompiler(String cacheFolder, TemplateFormatter templateFormatter, TemplateHandlerFactory templateHandlerFactory, TemplateVarParserFactory templateVarParserFactory) throws Exception {
-        this.odtCompiler = new ODTCompiler(cacheFolder, templateFormatter, templateHandlerFactory, templateVarParserFactory);
+        this(cacheFolder, templateFormatter, templateHandlerFactory, templateVarParserFactory, new CacheConfig());
     }
 
+    public TemplateCompiler(String cacheFolder, TemplateFormatter templateFormatter, TemplateHandlerFactory templateHandlerFactory, TemplateVarParserFactory templateVarParserFactory, CacheConfig cacheConfig) throws Exception {
+        this.odtCompiler = new ODTCompiler(cacheFolder, templateFormatter, templateHandlerFactory, templateVarParserFactory, cacheConfig);
+        //created after the compiler cleaned the folder
+        File folder = cacheFolder == null || cacheFolder.isEmpty() ? new File(System.getProperty("java.io.tmpdir"), "odtCache") : new File(cacheFolder);
+        this.outputCache = new OutputCache(cacheConfig, new File(folder, "output"));
+    }
+
+    /**
+     * Compile the template, or deliver the document of an identical request from the output cache.
+     */
     public FileResult compile(Template template, boolean embedError) throws Exception {
         template.setEmbedError(embedError);
-        return getCompiler(template).Compile(template);
+        return outputCache.get(template, () -> getCompiler(template).Compile(template));
     }
 
     public Set<String> vars(Template template, String varPrefix) throws Exception {
         return getCompiler(template).Vars(template, varPrefix);
     }
 
+    public OutputCache getOutputCache() {
+        return outputCache;
+    }
+
     private DocumentCompiler getCompiler(Template template) {
         switch (template.getType()) {
             case ODT:
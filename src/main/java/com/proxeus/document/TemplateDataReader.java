@@ -0,0 +1,199 @@
+package com.proxeus.document;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.proxeus.util.Base64DecodingWriter;
+import com.proxeus.util.Json;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * TemplateDataReader reads the JSON data of a template into maps and lists like Jackson does for Map.class.
+ * Image data URIs bigger than the spill size are decoded into a file of the request while reading, they are
+ * replaced by an {@link EmbeddedFile} instead of being held in memory as a string of several MB.
+ */
+public class TemplateDataReader {
+    private static final String DATA_URI_PREFIX = "data:image/";
+    private static final String BASE64 = ";base64,";
+    //the media type has to be found within the head of the string
+    private static final int MAX_HEAD = 128;
+
+    private static volatile int spillBytes = new AssetConfig().spillKB * 1024;
+
+    public static void configure(AssetConfig config) {
+        spillBytes = (config == null ? new AssetConfig() : config).spillKB * 1024;
+    }
+
+    /**
+     * @param json the JSON object
+     * @param dir  where the big images are decoded to
+     * @return the data or null if the JSON is not an object
+     */
+    public static Map<String, Object> read(InputStream json, File dir) throws IOException {
+        try (JsonParser parser = Json.mapper.getFactory().createParser(json)) {
+            //the input might be an entry of a zip stream with more entries to come
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            return readObject(parser, dir);
+        }
+    }
+
+    private static Map<String, Object> readObject(JsonParser parser, File dir) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            map.put(name, readValue(parser, parser.nextToken(), dir));
+        }
+        return map;
+    }
+
+    private static List<Object> readArray(JsonParser parser, File dir) throws IOException {
+        List<Object> list = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            list.add(readValue(parser, token, dir));
+        }
+        return list;
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token, File dir) throws IOException {
+        if (token == null) {
+            throw new IOException("unexpected end of the JSON data");
+        }
+        switch (token) {
+            case START_OBJECT:
+                return readObject(parser, dir);
+            case START_ARRAY:
+                return readArray(parser, dir);
+            case VALUE_STRING:
+                return readString(parser, dir);
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.getEmbeddedObject();
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new IOException("unexpected JSON token " + token);
+        }
+    }
+
+    private static Object readString(JsonParser parser, File dir) throws IOException {
+        int spill = spillBytes;
+        //the length doesn't create the string
+        if (spill <= 0 || parser.getTextLength() < spill) {
+            return parser.getText();
+        }
+        try (DataUriWriter writer = new DataUriWriter(dir)) {
+            parser.getText(writer);
+            return writer.result();
+        }
+    }
+
+    /**
+     * Decodes the string into a file if it is an image data URI, otherwise it collects the string.
+     */
+    private static class DataUriWriter extends Writer {
+        private final File dir;
+        private StringBuilder text = new StringBuilder(MAX_HEAD);
+        private String mediaType;
+        private File file;
+        private OutputStream fileOutput;
+        private Base64DecodingWriter decoder;
+        private boolean plain;
+
+        DataUriWriter(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (decoder != null) {
+                decoder.write(cbuf, off, len);
+                return;
+            }
+            if (plain) {
+                text.append(cbuf, off, len);
+                return;
+            }
+            for (int i = off; i < off + len; i++) {
+                text.append(cbuf[i]);
+                if (isHeadComplete()) {
+                    write(cbuf, i + 1, off + len - i - 1);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return true if it is decided whether it is a data URI
+         */
+        private boolean isHeadComplete() throws IOException {
+            int length = text.length();
+            if (length <= DATA_URI_PREFIX.length()) {
+                if (text.charAt(length - 1) != DATA_URI_PREFIX.charAt(length - 1)) {
+                    plain = true;
+                }
+                return plain;
+            }
+            if (length > MAX_HEAD) {
+                plain = true;
+                return true;
+            }
+            if (text.charAt(length - 1) == ',' && length >= BASE64.length() && text.lastIndexOf(BASE64) == length - BASE64.length()) {
+                mediaType = text.substring("data:".length(), length - BASE64.length());
+                file = new File(dir, UUID.randomUUID().toString());
+                fileOutput = new BufferedOutputStream(new FileOutputStream(file));
+                decoder = new Base64DecodingWriter(fileOutput);
+                text = null;
+                return true;
+            }
+            return false;
+        }
+
+        Object result() throws IOException {
+            if (decoder != null) {
+                close();
+                return new EmbeddedFile(mediaType, file);
+            }
+            return text.toString();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (decoder != null) {
+                decoder.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoder != null && fileOutput != null) {
+                try {
+                    decoder.close();
+                } finally {
+                    fileOutput.close();
+                    fileOutput = null;
+                }
+            }
+        }
+    }
+}
@@ -3,7 +3,14 @@ package com.proxeus.document;
 import com.proxeus.office.libre.exe.Extension;
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 public interface TemplateFormatter {
     String Convert(File src, File dst, String format, boolean restart) throws Exception;
+
+    /**
+     * Convert the document read from src to the provided format written to dst, without temporary files.
+     */
+    String Convert(InputStream src, OutputStream dst, String format, boolean restart) throws Exception;
 }
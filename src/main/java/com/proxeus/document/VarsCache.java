@@ -0,0 +1,80 @@
+package com.proxeus.document;
+
+import com.proxeus.util.LRUCache;
+
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * VarsCache keeps the variables of the most recently used templates, unfiltered and sorted like the var parser does.
+ * Templates are identified by the digest of their content, the prefix is applied to the cached set on every request.
+ */
+public class VarsCache {
+    private LRUCache<String, NavigableSet<String>> cache;
+
+    public VarsCache(CacheConfig cacheConfig) {
+        if (cacheConfig == null) {
+            cacheConfig = new CacheConfig();
+        }
+        //limited by the count only, a set of variable names is small
+        cache = new LRUCache<>(cacheConfig.varsEntries, Long.MAX_VALUE, vars -> 1);
+    }
+
+    /**
+     * @param template the template the variables belong to
+     * @param loader   finds the variables on a miss
+     * @return the sorted variables, read only
+     */
+    public NavigableSet<String> get(Template template, LRUCache.Loader<Set<String>> loader) throws Exception {
+        if (!cache.isEnabled()) {
+            return sorted(loader.load());
+        }
+        return cache.get(template.getSrcDigest(), () -> sorted(loader.load()));
+    }
+
+    /**
+     * Select the variables starting with prefix by a range query over the sorted set,
+     * only the variables within the range are compared.
+     *
+     * @param vars   sorted case insensitive like the var parser does
+     * @param prefix case sensitive, null or empty for all of them
+     */
+    public static Set<String> withPrefix(NavigableSet<String> vars, String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return vars;
+        }
+        //the case insensitive order keeps the names starting with prefix in any case together
+        Set<String> range = vars.subSet(prefix, true, prefix + Character.MAX_VALUE, true);
+        Set<String> result = new TreeSet<>(vars.comparator());
+        for (String var : range) {
+            if (var.startsWith(prefix)) {
+                result.add(var);
+            }
+        }
+        return result;
+    }
+
+    private static NavigableSet<String> sorted(Set<String> vars) {
+        NavigableSet<String> sorted = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (String var : vars) {
+            if (var != null) {
+                sorted.add(var);
+            }
+        }
+        return Collections.unmodifiableNavigableSet(sorted);
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public String toString() {
+        return cache.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package com.proxeus.document.odt;
+
+import com.proxeus.util.zip.ZipRawEntry;
+import com.proxeus.util.zip.ZipRawReader;
+import com.proxeus.util.zip.ZipRawWriter;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * ODTAssembler writes the compiled ODT in a single pass over the template.
+ * The mimetype entry comes first and stored as the ODF specification requires it.
+ * Rendered entries and assets replace the ones of the template, removed entries are left out
+ * and the rest is copied raw, without being inflated and deflated again.
+ */
+class ODTAssembler {
+    final static String MIMETYPE = "mimetype";
+    private final static String ODT_MIMETYPE = "application/vnd.oasis.opendocument.text";
+
+    private final Map<String, Content> entries = new LinkedHashMap<>();
+    private final Map<String, File> assets = new LinkedHashMap<>();
+    private final Set<String> removed = new HashSet<>();
+
+    /**
+     * Content writes an entry straight into the archive.
+     */
+    interface Content {
+        void writeTo(OutputStream output) throws Exception;
+    }
+
+    /**
+     * @param name    path inside the zip
+     * @param content of the entry, it is written deflated
+     */
+    void put(String name, Content content) {
+        entries.put(zipName(name), content);
+    }
+
+    /**
+     * @param name path inside the zip
+     * @param file stored as it is, assets are compressed images already
+     */
+    void putAsset(String name, File file) {
+        assets.put(zipName(name), file);
+    }
+
+    void remove(String name) {
+        removed.add(zipName(name));
+    }
+
+    void assemble(File template, OutputStream output) throws Exception {
+        Set<String> written = new HashSet<>();
+        try (ZipRawReader zip = new ZipRawReader(template);
+             ZipRawWriter out = new ZipRawWriter(CloseShieldOutputStream.wrap(output))) {
+            ZipRawEntry mimetype = zip.getEntry(MIMETYPE);
+            byte[] mimetypeContent;
+            if (mimetype != null) {
+                try (InputStream input = zip.getInputStream(mimetype)) {
+                    mimetypeContent = IOUtils.toByteArray(input);
+                }
+            } else {
+                mimetypeContent = ODT_MIMETYPE.getBytes(US_ASCII);
+            }
+            out.putStored(MIMETYPE, mimetypeContent);
+            written.add(MIMETYPE);
+
+            //keep the order of the template, the new entries follow at the end
+            for (ZipRawEntry entry : zip.entries()) {
+                String name = entry.getName();
+                if (written.contains(name) || removed.contains(name) || assets.containsKey(name)) {
+                    continue;
+                }
+                Content content = entries.get(name);
+                if (content != null) {
+                    putDeflated(out, name, content);
+                } else {
+                    //pictures, fonts and the rest are moved over as they are compressed
+                    out.copy(zip, entry);
+                }
+                written.add(name);
+            }
+            for (Map.Entry<String, Content> entry : entries.entrySet()) {
+                if (written.add(entry.getKey())) {
+                    putDeflated(out, entry.getKey(), entry.getValue());
+                }
+            }
+            for (Map.Entry<String, File> asset : assets.entrySet()) {
+                if (written.add(asset.getKey())) {
+                    out.putStored(asset.getKey(), asset.getValue());
+                }
+            }
+        }
+    }
+
+    private void putDeflated(ZipRawWriter out, String name, Content content) throws Exception {
+        try (OutputStream entry = out.putDeflated(name)) {
+            content.writeTo(entry);
+        }
+    }
+
+    /**
+     * The paths of the renderer start with a slash, the entries of the zip do not.
+     */
+    private static String zipName(String name) {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+}
@@ -1,7 +1,12 @@
 package com.proxeus.document.odt;
 
 import com.proxeus.document.*;
+import com.proxeus.document.odt.img.ImageCache;
 import com.proxeus.document.odt.img.ImageVarProcessor;
+import com.proxeus.util.concurrent.SharedExecutors;
+import com.proxeus.xml.processor.NoOpEventProcessor;
+import com.proxeus.xml.processor.XMLEventProcessorChain;
+import com.proxeus.xml.processor.XMLEventSink;
 import com.proxeus.util.zip.EntryFileFilter;
 import com.proxeus.util.zip.Zip;
 import com.proxeus.xml.Config;
@@ -11,11 +16,10 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import java.io.File;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -37,14 +41,28 @@ public class ODTCompiler implements DocumentCompiler {
     private TemplateFormatter templateFormatter;
     private TemplateHandlerFactory templateHandlerFactory;
     private TemplateVarParserFactory templateVarParserFactory;
+    private TemplateCache templateCache;
+    private ImageCache imageCache;
+    private VarsCache varsCache;
 
     public ODTCompiler(String cacheFolder,
                        TemplateFormatter templateFormatter,
                        TemplateHandlerFactory templateHandlerFactory,
                        TemplateVarParserFactory templateVarParserFactory) throws Exception {
+        this(cacheFolder, templateFormatter, templateHandlerFactory, templateVarParserFactory, new CacheConfig());
+    }
+
+    public ODTCompiler(String cacheFolder,
+                       TemplateFormatter templateFormatter,
+                       TemplateHandlerFactory templateHandlerFactory,
+                       TemplateVarParserFactory templateVarParserFactory,
+                       CacheConfig cacheConfig) throws Exception {
         this.templateFormatter = templateFormatter;
         this.templateHandlerFactory = templateHandlerFactory;
         this.templateVarParserFactory = templateVarParserFactory;
+        this.templateCache = new TemplateCache(cacheConfig);
+        this.imageCache = new ImageCache(cacheConfig);
+        this.varsCache = new VarsCache(cacheConfig);
 
         fontInstaller = new FontInstaller();
         if (cacheFolder == null || cacheFolder.equals("")) {
@@ -80,29 +98,66 @@ public class ODTCompiler implements DocumentCompiler {
         return compile(template);
     }
 
+    /**
+     * @return the variables of the template starting with prefix, sorted
+     */
     public Set<String> Vars(Template template, String prefix) throws Exception {
-        TemplateVarParser varParser = templateVarParserFactory.newInstance();
-        findVars(template, varParser);
-        Set<String> result = varParser.getVars().stream().filter(Objects::nonNull).filter(var -> var.startsWith(prefix != null ? prefix : "")).collect(Collectors.toSet());
-        return result;
+        return VarsCache.withPrefix(varsCache.get(template, () -> findVars(template)), prefix);
     }
 
-    private void findVars(Template template, TemplateVarParser varParser) throws Exception {
-        ImageVarProcessor imageVarProcessor = new ImageVarProcessor(varParser);
-        TemplateVarProcessor templateVarProcessor = new TemplateVarProcessor(varParser);
+    /**
+     * Only content.xml and styles.xml are read. If the template language has a scanner, it reads the vars straight from the entries.
+     * Otherwise the var processors run over the prepared entries, they don't need the handler with its event buffer, the rendering and the clean up.
+     */
+    private Set<String> findVars(Template template) throws Exception {
+        TemplateVarParser varParser = templateVarParserFactory.newInstance();
+        TemplateVarScanner scanner = templateVarParserFactory.newScanner(varParser);
+        if (scanner != null) {
+            scanner.onAttribute(ImageVarProcessor.FRAME, ImageVarProcessor.NAME, name -> ImageVarProcessor.parse(name, varParser));
+            Zip.extract(template.getSrc(), (entry, zf) -> {
+                if (entry.getName().endsWith(CONTENT_XML) || entry.getName().endsWith(STYLE_XML)) {
+                    try (InputStream input = zf.getInputStream(entry)) {
+                        scanner.scan(input);
+                    }
+                }
+            });
+            return varParser.getVars();
+        }
+        XMLEventProcessorChain varProcessors = new XMLEventProcessorChain(
+                new ImageVarProcessor(varParser),
+                new TemplateVarProcessor(varParser)
+        );
         Zip.extract(template.getSrc(), (entry, zf) -> {
             if (entry.getName().endsWith(CONTENT_XML) || entry.getName().endsWith(STYLE_XML)) {
-                TemplateHandler xml = templateHandlerFactory.newInstance(
-                        imageVarProcessor,
-                        templateVarProcessor
-                );
-                xml.process(zf.getInputStream(entry));
+                //the extraction puts every code island into its own characters event, the var parser relies on it
+                PreparedTemplate prepared = templateCache.get(template, entry.getName(), () -> templateHandlerFactory.newInstance(
+                        new NoOpEventProcessor(),
+                        new NoOpEventProcessor()
+                ).prepare(zf.getInputStream(entry)));
+                varProcessors.process(prepared.reader(), new XMLEventSink());
             }
         });
+        return varParser.getVars();
     }
 
     private FileResult compile(Template template) throws Exception {
-        ODTRenderer cfc = new ODTRenderer(template, templateHandlerFactory, templateFormatter);
-        return cfc.compile(conf, fontInstaller);
+        ODTRenderer cfc = new ODTRenderer(template, templateHandlerFactory, templateFormatter, templateCache, imageCache);
+        FileResult result = cfc.compile(conf, fontInstaller);
+        log.debug("template cache: " + templateCache);
+        log.debug("image cache: " + imageCache);
+        log.debug("executors: " + SharedExecutors.render() + " " + SharedExecutors.images());
+        return result;
+    }
+
+    public TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    public ImageCache getImageCache() {
+        return imageCache;
+    }
+
+    public VarsCache getVarsCache() {
+        return varsCache;
     }
 }
@@ -2,6 +2,7 @@ package com.proxeus.document.odt;
 
 import com.google.common.base.Strings;
 import com.proxeus.document.AssetFile;
+import com.proxeus.xml.XMLFactories;
 import com.proxeus.xml.processor.XMLEventProcessor;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -28,7 +29,7 @@ public class ODTManifestProcessor implements XMLEventProcessor {
     static private QName FILE_ENTRY = new QName(MANIFEST_NAMESPACE, "file-entry", MANIFEST_PREFIX);
     static private QName FULL_PATH = new QName(MANIFEST_NAMESPACE, "full-path", MANIFEST_PREFIX);
     static private QName MEDIA_TYPE = new QName(MANIFEST_NAMESPACE, "media-type", MANIFEST_PREFIX);
-    static private XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+    static private XMLEventFactory eventFactory = XMLFactories.events();
 
 
     private Queue<AssetFile> assetFiles;
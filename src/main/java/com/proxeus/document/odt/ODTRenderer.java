@@ -2,9 +2,16 @@ package com.proxeus.document.odt;
 
 import com.proxeus.document.*;
 import com.proxeus.document.odt.img.ImageAdjustProcessorFactory;
+import com.proxeus.document.odt.img.ImageCache;
 import com.proxeus.error.CompilationException;
 import com.proxeus.error.InternalException;
 import com.proxeus.error.UnavailableException;
+import com.proxeus.metrics.Stage;
+import com.proxeus.trace.Span;
+import com.proxeus.trace.Tracing;
+import com.proxeus.office.libre.exe.LibreOfficeFormat;
+import com.proxeus.util.concurrent.SharedExecutors;
+import com.proxeus.util.concurrent.TaskGroup;
 import com.proxeus.util.zip.EntryFileFilter;
 import com.proxeus.util.zip.Zip;
 import com.proxeus.xml.Config;
@@ -15,18 +22,17 @@ import com.proxeus.xml.template.TemplateHandler;
 import com.proxeus.xml.template.TemplateHandlerFactory;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import javax.xml.namespace.QName;
 import java.io.*;
-import java.nio.file.FileSystem;
-import java.nio.file.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -48,31 +54,36 @@ public class ODTRenderer {
 
     final static String CONTENT_XML = "content.xml";
     final static String STYLE_XML = "styles.xml";
+    final static String MANIFEST_XML = "META-INF/manifest.xml";
+    //streamed results bigger than this are buffered in the tmp folder of the request
+    private final static int CONVERTED_MEMORY_THRESHOLD = 4 * 1024 * 1024;
     public Template template;
     private boolean extractedFonts;
-    private TemplateHandler manifest = null;
-    private File manifestDest = null;
     private ByteArrayOutputStream manifestContent = null;
-    private Queue<String> fileToRemoveFromZip = new ConcurrentLinkedQueue<>();
+    private ODTAssembler assembler = new ODTAssembler();
+    //the assembled document when it is converted while the result is written
+    private UnsynchronizedByteArrayOutputStream assembled = null;
 
 
     private ImageAdjustProcessorFactory imageAdjuster;
     private TemplateHandlerFactory templateHandlerFactory;
 
     private TemplateFormatter templateFormatter;
+    private TemplateCache templateCache;
 
-    ODTRenderer(Template template, TemplateHandlerFactory templateHandlerFactory, TemplateFormatter templateFormatter) {
+    ODTRenderer(Template template, TemplateHandlerFactory templateHandlerFactory, TemplateFormatter templateFormatter, TemplateCache templateCache, ImageCache imageCache) {
         this.template = template;
         this.templateHandlerFactory = templateHandlerFactory;
         this.templateFormatter = templateFormatter;
-        this.imageAdjuster = new ImageAdjustProcessorFactory(template.getTmpDir(), template.getDataCopy());
+        this.templateCache = templateCache;
+        this.imageAdjuster = new ImageAdjustProcessorFactory(template.getTmpDir(), template.getDataCopy(), imageCache);
     }
 
 
     protected FileResult compile(Config conf, FontInstaller fontInstaller) throws Exception {
         try {
-            List<File> extractedFiles = extractAndCompile(conf);
-            assembleZipFile(extractedFiles);
+            extractAndCompile(conf);
+            assembleZipFile();
         } catch (CompilationException e) {
             if (template.isEmbedError()) {
                 return renderOdtError(template, e.getMessage(), template.getTmpDir());
@@ -84,20 +95,20 @@ public class ODTRenderer {
     }
 
 
-    private List<File> extractAndCompile(Config conf) throws Exception {
-        ExecutorService compileExecutor = Executors.newFixedThreadPool(2);
-        List<File> extractedFiles = new ArrayList<>(2);
-        Queue<Exception> compileExceptions = new ConcurrentLinkedQueue<>();
-        try {
+    private void extractAndCompile(Config conf) throws Exception {
+        TaskGroup compileTasks = SharedExecutors.render().group();
+        try (Span extractSpan = Tracing.start("extract")) {
+            if (extractSpan.isRecording()) {
+                extractSpan.setAttribute("template.digest", template.getSrcDigest());
+            }
+            long start = System.nanoTime();
             Zip.extract(template.getSrc(), (entry, zf) -> {
                 if (entry.getName().startsWith("Fonts/")) {
                     extractedFonts = true;
                     File toExtract = new File(template.getTmpDir(), entry.getName());
                     toExtract.getParentFile().mkdirs();
                     FileUtils.copyToFile(zf.getInputStream(entry), toExtract);
-                } else if (entry.getName().equals("META-INF/manifest.xml")) {
-                    manifestDest = new File(template.getTmpDir(), entry.getName());
-                    manifestDest.getParentFile().mkdirs();
+                } else if (entry.getName().equals(MANIFEST_XML)) {
                     manifestContent = new ByteArrayOutputStream();
                     IOUtils.copy(zf.getInputStream(entry), manifestContent);
                 } else if (entry.getName().endsWith(CONTENT_XML) || entry.getName().endsWith(STYLE_XML)) {
@@ -105,77 +116,100 @@ public class ODTRenderer {
                             imageAdjuster.newInstance(entry.getName()),
                             new CleanEmptyElementProcessor(EMPTY_XML_ELEMENT_TO_REMOVE, EMPTY_XML_ELEMENT_TO_REMOVE_IF_ONLY_WHITESPACE)
                     );
-                    xml.process(zf.getInputStream(entry));
-
-
-                    File toExtract = new File(template.getTmpDir(), entry.getName());
-                    toExtract.getParentFile().mkdirs();
-                    extractedFiles.add(toExtract);
+                    //the extraction doesn't depend on the data, reuse it if the same template was compiled before
+                    xml.process(templateCache.get(template, entry.getName(), () -> {
+                        long prepareStart = System.nanoTime();
+                        try (Span span = Tracing.start("prepare")) {
+                            span.setAttribute("entry", entry.getName());
+                            return xml.prepare(zf.getInputStream(entry));
+                        } finally {
+                            Stage.PREPARE.since(prepareStart);
+                        }
+                    }));
+
+                    //rendered in memory and written from there into the assembled zip
+                    UnsynchronizedByteArrayOutputStream rendered = new UnsynchronizedByteArrayOutputStream();
+                    assembler.put(entry.getName(), rendered::writeTo);
+                    if (entry.getName().startsWith("Object")) {
+                        //the replacement image of a compiled embedded object is outdated
+                        assembler.remove("ObjectReplacements/" + entry.getName().substring(0, entry.getName().indexOf('/')));
+                    }
 
-                    compileExecutor.submit(() -> {
-                        try {
-                            FileOutputStream output = new FileOutputStream(toExtract);
-                            xml.render(output, template.getDataCopy());
-                            output.flush();
-                        } catch (Exception e) {
-                            compileExceptions.offer(e);
+                    compileTasks.submit(() -> {
+                        long renderStart = System.nanoTime();
+                        try (Span span = Tracing.start("render")) {
+                            span.setAttribute("entry", entry.getName());
+                            xml.render(rendered, template.getDataCopy());
                         }
+                        Stage.RENDER.since(renderStart);
+                        return null;
                     });
                 }
             });
+            Stage.EXTRACT.since(start);
 
-            compileExecutor.shutdown();
-            compileExecutor.awaitTermination(15, TimeUnit.SECONDS);
-            if (compileExceptions.size() > 0) {
-                //at least one exception was thrown during compilation, throw the first one
-                //lets assume the first exception is accurate enough to help solving the issue
-                throw compileExceptions.poll();
-            }
+            //if more than one exception was thrown during compilation, the first one is thrown
+            //lets assume the first exception is accurate enough to help solving the issue
+            compileTasks.await(SharedExecutors.timeoutMillis());
+        } catch (TimeoutException e) {
+            waitForImageTasksToFinish();
+            throw new UnavailableException("Rendering took too long, please try again later.", e);
         } catch (Exception e) {
+            compileTasks.cancel();
             waitForImageTasksToFinish();
             throw e;
         }
-        return extractedFiles;
     }
 
-    void assembleZipFile(List<File> extractedFiles) throws Exception {
-        Set<String> collectedEmbeddedObjects = new HashSet<>();
-        try (FileSystem fs = FileSystems.newFileSystem(template.getSrc().toPath(), null)) {
-            for (File newPath : extractedFiles) {
-                String zipPath = getZipPath(template.getTmpDir(), newPath.getAbsolutePath());
-                try {
-                    if (zipPath.startsWith(File.separator + "Object")) {
-                        collectedEmbeddedObjects.add(zipPath.split(File.separator)[1]);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
+    /**
+     * Write the compiled document in one pass over the template, in memory when it is streamed to the formatter.
+     */
+    void assembleZipFile() throws Exception {
+        long start = System.nanoTime();
+        try (Span span = Tracing.start("assemble")) {
+            Queue<AssetFile> assetFiles = waitForImageTasksToFinish();
+            span.setAttribute("images", assetFiles.size());
+            for (AssetFile f : assetFiles) {
+                if (f.dst.exists()) {
+                    assembler.putAsset(f.newZipPath, f.dst);
                 }
-                Files.move(newPath.toPath(), fs.getPath(zipPath), StandardCopyOption.REPLACE_EXISTING);
             }
-            for (String embeddedCacheToDelete : collectedEmbeddedObjects) {
-                Zip.delete(fs.getPath("/ObjectReplacements/" + embeddedCacheToDelete));
+            if (manifestContent != null) {
+                TemplateHandler manifest = processManifest(assetFiles);
+                assembler.put(MANIFEST_XML, output -> manifest.render(output, Collections.emptyMap()));
             }
-            if (fileToRemoveFromZip != null && fileToRemoveFromZip.size() > 0) {
-                for (String toRemPath : fileToRemoveFromZip) {
-                    Zip.delete(fs.getPath(toRemPath));
-                }
-            }
-
-            Queue<AssetFile> assetFiles = waitForImageTasksToFinish();
-            processManifest(assetFiles);
-            insertManifest(fs);
-            includeAssets(assetFiles, fs);
+            assemble(assembler);
+            Stage.ASSEMBLE.since(start);
         } catch (Exception e) {
             throw new InternalException("Couldn't finish up, error during pack to zip.", e);
         }
     }
 
+    private void assemble(ODTAssembler assembler) throws Exception {
+        if (template.isStreamOutput()) {
+            assembled = new UnsynchronizedByteArrayOutputStream();
+            assembler.assemble(template.getSrc(), assembled);
+            return;
+        }
+        File dst = new File(template.getTmpDir(), "assembled");
+        try (OutputStream output = new FileOutputStream(dst)) {
+            assembler.assemble(template.getSrc(), output);
+        }
+        Files.move(dst.toPath(), template.getSrc().toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
     private FileResult format(FontInstaller fontInstaller) throws UnavailableException {
         try {
             FileResult result = new FileResult(template);
-            result.target = new File(template.getTmpDir(), "final");
             result.template = template;
             boolean newFontsInstalled = extractedFonts && fontInstaller.installDir(getFontsDir());
+            if (template.isStreamOutput()) {
+                //converted later on, straight into the output the result is written to
+                result.contentType = LibreOfficeFormat.get(template.getFormat()).getContentType();
+                result.stream = output -> convert(output, newFontsInstalled);
+                return result;
+            }
+            result.target = new File(template.getTmpDir(), "final");
             result.contentType = templateFormatter.Convert(template.getSrc(), result.target, template.getFormat(), newFontsInstalled);
             return result;
         } catch (Exception e) {
@@ -184,6 +218,26 @@ public class ODTRenderer {
         }
     }
 
+    /**
+     * The converted document is buffered and only written to output when LibreOffice is done with it.
+     * A slow client doesn't keep the executable busy or distort the conversion time the pool scales by, and a failed
+     * conversion is reported before anything of the response is sent. That costs the memory of the document, or its
+     * copy in the tmp folder when it is bigger than 4 MB, and the client receives the first byte after the conversion.
+     */
+    private void convert(OutputStream output, boolean newFontsInstalled) throws Exception {
+        DeferredFileOutputStream converted = new DeferredFileOutputStream(CONVERTED_MEMORY_THRESHOLD, new File(template.getTmpDir(), "final"));
+        try (InputStream input = assembled.toInputStream()) {
+            templateFormatter.Convert(input, converted, template.getFormat(), newFontsInstalled);
+        } catch (UnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UnavailableException("LibreOffice error during convert to " + template.getFormat() + ": " + e.getMessage(), e);
+        } finally {
+            converted.close();
+        }
+        converted.writeTo(output);
+    }
+
     File getFontsDir() {
         return new File(template.getTmpDir(), "Fonts");
     }
@@ -199,55 +253,13 @@ public class ODTRenderer {
         return result.getAssetFiles();
     }
 
-    private void processManifest(Queue<AssetFile> assetFiles) throws Exception {
-        try {
-            if (manifestContent == null) {
-                return;
-            }
-
-            TemplateHandler manifest = templateHandlerFactory.newInstance(
-                    new ODTManifestProcessor(assetFiles),
-                    new NoOpEventProcessor()
-            );
-            manifest.process(new ByteArrayInputStream(manifestContent.toByteArray()));
-
-
-            FileOutputStream output = new FileOutputStream(manifestDest);
-
-            manifest.render(output, Collections.emptyMap());
-        } catch (Exception e) {
-            throw e;
-        }
-    }
-
-
-    private void insertManifest(FileSystem fs) {
-        try {
-            Files.move(manifestDest.toPath(), fs.getPath(getZipPath(template.getTmpDir(), manifestDest.getAbsolutePath())), StandardCopyOption.REPLACE_EXISTING);
-        } catch (Exception e) {
-            log.error("Could not insert manifest", e);
-        }
-    }
-
-    private void includeAssets(Queue<AssetFile> assetFiles, FileSystem fs) throws IOException {
-        for (AssetFile f : assetFiles) {
-            if (!f.dst.exists()) {
-                //looks like it as been already moved to the zip
-                continue;
-            }
-            Path insideZip = fs.getPath(f.newZipPath);
-            try {
-                Files.move(f.dst.toPath(), insideZip, StandardCopyOption.REPLACE_EXISTING);
-            } catch (NoSuchFileException nsf) {
-                Files.createDirectories(insideZip.getParent());
-                Files.move(f.dst.toPath(), insideZip, StandardCopyOption.REPLACE_EXISTING);
-            }
-        }
-    }
-
-    private static String getZipPath(File userTmpDir, String path) {
-        String extractedDir = userTmpDir.getName() + File.separator;
-        return File.separator + path.substring(path.lastIndexOf(extractedDir) + extractedDir.length());
+    private TemplateHandler processManifest(Queue<AssetFile> assetFiles) throws Exception {
+        TemplateHandler manifest = templateHandlerFactory.newInstance(
+                new ODTManifestProcessor(assetFiles),
+                new NoOpEventProcessor()
+        );
+        manifest.process(new ByteArrayInputStream(manifestContent.toByteArray()));
+        return manifest;
     }
 
     /**
@@ -267,19 +279,14 @@ public class ODTRenderer {
         }
 
         ODTReadableErrorHandler odtReadableErrorHandler = new ODTReadableErrorHandler();
-        contentXml = odtReadableErrorHandler.setErrorMessage(contentXml, error);
-        File tmp = new File(userTmpDir, "odterror");
-        try (FileOutputStream fos = new FileOutputStream(tmp)) {
-            fos.write(contentXml.getBytes(UTF_8));
-            fos.flush();
-        }
-        try (FileSystem fs = FileSystems.newFileSystem(template.getSrc().toPath(), null)) {
-            Path fileInsideZipPath = fs.getPath("/" + CONTENT_XML);
-            Files.copy(tmp.toPath(), fileInsideZipPath, StandardCopyOption.REPLACE_EXISTING);
-        }
-        if (!tmp.delete()) {
-            log.error("renderOdtError tmp.delete() failed for " + tmp.getAbsolutePath());
+        byte[] errorContentXml = odtReadableErrorHandler.setErrorMessage(contentXml, error).getBytes(UTF_8);
+        ODTAssembler errorAssembler = new ODTAssembler();
+        errorAssembler.put(CONTENT_XML, output -> output.write(errorContentXml));
+        File dst = new File(userTmpDir, "odterror");
+        try (OutputStream output = new FileOutputStream(dst)) {
+            errorAssembler.assemble(template.getSrc(), output);
         }
+        Files.move(dst.toPath(), template.getSrc().toPath(), StandardCopyOption.REPLACE_EXISTING);
         FileResult result = new FileResult(template);
         result.target = new File(template.getTmpDir(), "error");
         result.contentType = templateFormatter.Convert(template.getSrc(), result.target, "pdf", false);
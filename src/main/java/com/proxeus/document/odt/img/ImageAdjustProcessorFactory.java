@@ -1,14 +1,17 @@
 package com.proxeus.document.odt.img;
 
 import com.proxeus.document.AssetFile;
+import com.proxeus.error.UnavailableException;
 import com.proxeus.util.Eval;
+import com.proxeus.util.concurrent.SharedExecutors;
+import com.proxeus.util.concurrent.TaskGroup;
 import com.proxeus.util.zip.Zip;
-import com.proxeus.xml.processor.XMLEventProcessor;
+import com.proxeus.xml.XMLFactories;
+import com.proxeus.xml.processor.XMLEventStreamProcessor;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventFactory;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
@@ -18,9 +21,8 @@ import javax.xml.stream.events.XMLEvent;
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ImageAdjustProcessorFactory {
 
@@ -37,28 +39,43 @@ public class ImageAdjustProcessorFactory {
     private final static QName LOEXT_MIMETYPE = new QName(LOEXT, "mime-type", "loext");
 
     private Map<String, Object> data;
-    private ExecutorService imgExecutor = Executors.newFixedThreadPool(4);
+    private TaskGroup imageTasks = SharedExecutors.images().group();
     private Queue<AssetFile> assetFiles = new ConcurrentLinkedQueue<>();
     private Queue<Exception> exceptions = new ConcurrentLinkedQueue<>();
     private File tmpDir;
-    private XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+    private ImageCache imageCache;
+    private XMLEventFactory eventFactory = XMLFactories.events();
+    //frame names must be unique within the document but the same for the same template, otherwise the rendering source changes on every request
+    private AtomicInteger frameCount = new AtomicInteger();
 
     public ImageAdjustProcessorFactory(File tmpDir, Map<String, Object> data) {
+        this(tmpDir, data, null);
+    }
+
+    /**
+     * @param imageCache shared between requests, null to always adjust the images
+     */
+    public ImageAdjustProcessorFactory(File tmpDir, Map<String, Object> data, ImageCache imageCache) {
         this.data = data;
         this.tmpDir = tmpDir;
+        this.imageCache = imageCache;
     }
 
-    public XMLEventProcessor newInstance(String entryName) {
+    public XMLEventStreamProcessor newInstance(String entryName) {
         return new ImageAdjustProcessor(entryName);
     }
 
-    public class ImageAdjustProcessor implements XMLEventProcessor {
+    public class ImageAdjustProcessor implements XMLEventStreamProcessor {
         private Logger log = LogManager.getLogger(this.getClass());
 
         private String entryName;
+        private String xmlDirPath;
+        //events of the current frame, they are written when the frame ends
+        private Queue<XMLEvent> frameEvents = new LinkedList<>();
 
         ImageAdjustProcessor(String entryName) {
             this.entryName = entryName;
+            this.xmlDirPath = Zip.dirPath(entryName);
         }
 
         /**
@@ -76,44 +93,38 @@ public class ImageAdjustProcessorFactory {
          * </draw:frame>
          */
         @Override
-        public void process(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
-            String xmlDirPath = Zip.dirPath(entryName);
-            Queue<XMLEvent> frameEvents = new LinkedList<>();
-
-            while (reader.hasNext()) {
-                XMLEvent event = reader.nextEvent();
-                switch (event.getEventType()) {
-                    case XMLEvent.START_ELEMENT:
-                        StartElement start = event.asStartElement();
-                        if (start.getName().equals(DRAW_FRAME)) {
-                            frameEvents.add(start);
-                            continue;
-                        }
-                        if (start.getName().equals(DRAW_IMAGE)) {
-                            frameEvents.add(start);
-                            continue;
+        public void process(XMLEvent event, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
+            switch (event.getEventType()) {
+                case XMLEvent.START_ELEMENT:
+                    StartElement start = event.asStartElement();
+                    if (start.getName().equals(DRAW_FRAME)) {
+                        frameEvents.add(start);
+                        return;
+                    }
+                    if (start.getName().equals(DRAW_IMAGE)) {
+                        frameEvents.add(start);
+                        return;
+                    }
+                    writer.add(start);
+                    return;
+                case XMLEvent.END_ELEMENT:
+                    EndElement end = event.asEndElement();
+                    if (end.getName().equals(DRAW_IMAGE)) {
+                        frameEvents.add(end);
+                        return;
+                    }
+                    if (end.getName().equals(DRAW_FRAME)) {
+                        frameEvents.add(end);
+                        for (XMLEvent e : assetFileReplacement(frameEvents, xmlDirPath)) {
+                            writer.add(e);
                         }
-                        writer.add(start);
-                        continue;
-                    case XMLEvent.END_ELEMENT:
-                        EndElement end = event.asEndElement();
-                        if (end.getName().equals(DRAW_IMAGE)) {
-                            frameEvents.add(end);
-                            continue;
-                        }
-                        if (end.getName().equals(DRAW_FRAME)) {
-                            frameEvents.add(end);
-                            for (XMLEvent e : assetFileReplacement(frameEvents, xmlDirPath)) {
-                                writer.add(e);
-                            }
-                            frameEvents.clear();
-                            continue;
-                        }
-                        writer.add(end);
-                        continue;
-                    default:
-                        writer.add(event);
-                }
+                        frameEvents.clear();
+                        return;
+                    }
+                    writer.add(end);
+                    return;
+                default:
+                    writer.add(event);
             }
         }
 
@@ -139,7 +150,7 @@ public class ImageAdjustProcessorFactory {
             Queue<XMLEvent> result = new LinkedList<>();
 
             result.add(update(frame, Arrays.asList(
-                    eventFactory.createAttribute(DRAW_NAME, "img" + System.nanoTime()))
+                    eventFactory.createAttribute(DRAW_NAME, "img" + frameCount.incrementAndGet()))
             ));
 
             //take away the expression >{{< * >}}<
@@ -191,7 +202,7 @@ public class ImageAdjustProcessorFactory {
             result.add(image);
             result.addAll(frameEvents);
 
-            imgExecutor.submit(new ImageAdjusterRunnable(imgStngs, exceptions));
+            imageTasks.submit(new ImageAdjusterRunnable(imgStngs, exceptions, imageCache));
 
             return result;
         }
@@ -220,8 +231,11 @@ public class ImageAdjustProcessorFactory {
     }
 
     public Result finish() throws Exception {
-        imgExecutor.shutdown();
-        imgExecutor.awaitTermination(15, TimeUnit.SECONDS);
+        try {
+            imageTasks.await(SharedExecutors.timeoutMillis());
+        } catch (TimeoutException e) {
+            exceptions.offer(new UnavailableException("Adjusting the images took too long, please try again later.", e));
+        }
         return new Result(assetFiles, exceptions);
     }
 
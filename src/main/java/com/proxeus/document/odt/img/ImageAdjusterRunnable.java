@@ -1,6 +1,9 @@
 package com.proxeus.document.odt.img;
 
 import com.proxeus.document.AssetFile;
+import com.proxeus.metrics.Stage;
+import com.proxeus.trace.Span;
+import com.proxeus.trace.Tracing;
 import com.proxeus.util.Image;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -16,20 +19,35 @@ public class ImageAdjusterRunnable implements Runnable {
 
     private ImageSettings imageSettings;
     private Queue<Exception> exceptions;
+    private ImageCache imageCache;
 
     public ImageAdjusterRunnable(ImageSettings imageSettings, Queue<Exception> exceptions) {
+        this(imageSettings, exceptions, null);
+    }
+
+    /**
+     * @param imageCache shared between requests, null to always adjust the image
+     */
+    public ImageAdjusterRunnable(ImageSettings imageSettings, Queue<Exception> exceptions, ImageCache imageCache) {
         this.imageSettings = imageSettings;
         this.exceptions = exceptions;
+        this.imageCache = imageCache;
     }
 
     public void run() {
-        try {
+        long start = System.nanoTime();
+        try (Span span = Tracing.start("image")) {
+            span.setAttribute("image", imageSettings.refFileName);
             AssetFile assetFile = AssetFile.find(imageSettings.localRemoteOrEmbeddedFileObject, imageSettings.tmpDir);
             if (assetFile != null) {
                 assetFile.dst = imageSettings.dst;
                 assetFile.orgZipPath = imageSettings.refFileName;
                 assetFile.newZipPath = "/" + joinZipPath(imageSettings.xmlDirPath, "Pictures/" + imageSettings.ID());
                 if(imageSettings.assetFilesToInclude.offer(assetFile)){
+                    if (imageCache != null) {
+                        imageCache.adjust(assetFile.src, imageSettings);
+                        return;
+                    }
                     Image.adjustToFitToRatio(
                             assetFile.src,
                             imageSettings.dst,
@@ -44,6 +62,8 @@ public class ImageAdjusterRunnable implements Runnable {
             e.printStackTrace();
             System.err.println("couldn't adjust the image to the provided container");
             exceptions.offer(e);
+        } finally {
+            Stage.IMAGES.since(start);
         }
     }
 
@@ -0,0 +1,67 @@
+package com.proxeus.document.odt.img;
+
+import com.proxeus.document.CacheConfig;
+import com.proxeus.util.Image;
+import com.proxeus.util.LRUCache;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * ImageCache keeps the png of the images adjusted to their container, the same logo in the same frame is
+ * decoded, resized and encoded only once for all requests.
+ * Images are identified by the digest of their content and the settings of the container, it doesn't matter where they were loaded from.
+ */
+public class ImageCache {
+    private LRUCache<String, byte[]> cache;
+
+    public ImageCache(CacheConfig cacheConfig) {
+        if (cacheConfig == null) {
+            cacheConfig = new CacheConfig();
+        }
+        cache = new LRUCache<>(cacheConfig.imageEntries, cacheConfig.imageMB * 1024L * 1024L, png -> png.length);
+    }
+
+    /**
+     * Write the image adjusted to the container of the settings as png to the destination of the settings.
+     *
+     * @param src the image to adjust
+     */
+    public void adjust(File src, ImageSettings settings) throws Exception {
+        if (!cache.isEnabled()) {
+            Image.adjustToFitToRatio(src, settings.dst, settings.containerWidth, settings.containerHeight, settings.align, settings.sizeItUpIfSmaller);
+            return;
+        }
+        byte[] png = cache.get(key(src, settings), () -> {
+            UnsynchronizedByteArrayOutputStream out = new UnsynchronizedByteArrayOutputStream();
+            Image.adjustToFitToRatio(src, out, settings.containerWidth, settings.containerHeight, settings.align, settings.sizeItUpIfSmaller);
+            return out.toByteArray();
+        });
+        Files.write(settings.dst.toPath(), png);
+    }
+
+    private static String key(File src, ImageSettings settings) throws Exception {
+        String digest;
+        try (InputStream in = Files.newInputStream(src.toPath())) {
+            digest = Hex.encodeHexString(DigestUtils.sha256(in));
+        }
+        return digest + "/" + settings.containerWidth + "x" + settings.containerHeight + "/" + settings.dpi
+                + "/" + settings.align + "/" + settings.sizeItUpIfSmaller;
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public String toString() {
+        return cache.toString();
+    }
+}
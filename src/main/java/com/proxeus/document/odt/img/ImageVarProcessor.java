@@ -1,10 +1,9 @@
 package com.proxeus.document.odt.img;
 
-import com.proxeus.xml.processor.XMLEventProcessor;
+import com.proxeus.xml.processor.XMLEventStreamProcessor;
 import com.proxeus.xml.template.TemplateVarParser;
 
 import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
@@ -13,8 +12,11 @@ import javax.xml.stream.events.XMLEvent;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class ImageVarProcessor implements XMLEventProcessor {
+public class ImageVarProcessor implements XMLEventStreamProcessor {
     private final static String NAME_SPACE = "urn:oasis:names:tc:opendocument:xmlns:drawing:1.0";
+    //the qualified names as used by the documents, for the scanners working without namespaces
+    public final static String FRAME = "draw:frame";
+    public final static String NAME = "draw:name";
     private final static Pattern imageOptionsRegex = Pattern.compile("(.*)\\[([^\\[\\]]*)\\]");
 
     private TemplateVarParser varParser;
@@ -24,37 +26,41 @@ public class ImageVarProcessor implements XMLEventProcessor {
     }
 
     @Override
-    public void process(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
-        while (reader.hasNext()) {
-            XMLEvent e = reader.nextEvent();
-            writer.add(e);
-
-            if (!e.isStartElement()) {
-                continue;
-            }
-
-            StartElement s = e.asStartElement();
-            if (!s.getName().equals(new QName(NAME_SPACE, "frame"))) {
-                continue;
-            }
-            Attribute attribute = s.getAttributeByName(new QName(NAME_SPACE, "name"));
-            if (attribute == null) {
-                continue;
-            }
-
-            String varWithOptions = attribute.getValue().trim();
-            if (!(varWithOptions.startsWith("{{") && varWithOptions.endsWith("}}"))) {
-                //continue as there is no valid var expression and therefore nothing for us to do on this image tag
-                continue;
-            }
-
-            Matcher alignMatcher = imageOptionsRegex.matcher(varWithOptions);
-            if (!alignMatcher.find()) {
-                continue;
-            }
-            varWithOptions = alignMatcher.group(1).trim();
-
-            varParser.parse(varWithOptions);
+    public void process(XMLEvent e, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
+        writer.add(e);
+
+        if (!e.isStartElement()) {
+            return;
+        }
+
+        StartElement s = e.asStartElement();
+        if (!s.getName().equals(new QName(NAME_SPACE, "frame"))) {
+            return;
         }
+        Attribute attribute = s.getAttributeByName(new QName(NAME_SPACE, "name"));
+        if (attribute == null) {
+            return;
+        }
+
+        parse(attribute.getValue(), varParser);
+    }
+
+    /**
+     * @param name of the frame like {{input.image[align]}}
+     */
+    public static void parse(String name, TemplateVarParser varParser) {
+        String varWithOptions = name.trim();
+        if (!(varWithOptions.startsWith("{{") && varWithOptions.endsWith("}}"))) {
+            //continue as there is no valid var expression and therefore nothing for us to do on this image tag
+            return;
+        }
+
+        Matcher alignMatcher = imageOptionsRegex.matcher(varWithOptions);
+        if (!alignMatcher.find()) {
+            return;
+        }
+        varWithOptions = alignMatcher.group(1).trim();
+
+        varParser.parse(varWithOptions);
     }
 }
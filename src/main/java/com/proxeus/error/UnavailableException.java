@@ -1,10 +1,27 @@
 package com.proxeus.error;
 
 public class UnavailableException extends Exception {
+    private long retryAfterSeconds;
+
     public UnavailableException(String msg) {
         super(msg);
     }
     public UnavailableException(String msg, Throwable t){
         super(msg, t);
     }
+
+    /**
+     * @param retryAfterSeconds how long the client should wait before trying again
+     */
+    public UnavailableException(String msg, long retryAfterSeconds) {
+        super(msg);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return seconds for the Retry-After header, 0 if unknown
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
 }
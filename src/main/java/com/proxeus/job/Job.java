@@ -0,0 +1,141 @@
+package com.proxeus.job;
+
+import com.proxeus.document.FileResult;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Job is an asynchronous compile request, it holds the result until it is expired.
+ */
+public class Job implements Runnable, Comparable<Job> {
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final String id;
+    private final int priority;
+    //keeps the order of submission for jobs with the same priority
+    private final long sequence;
+    private final Callable<FileResult> work;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long finishedAt;
+    private FileResult result;
+    private Exception error;
+
+    Job(String id, int priority, long sequence, Callable<FileResult> work) {
+        this.id = id;
+        this.priority = priority;
+        this.sequence = sequence;
+        this.work = work;
+    }
+
+    @Override
+    public void run() {
+        status = Status.RUNNING;
+        try {
+            FileResult r = work.call();
+            synchronized (this) {
+                result = r;
+            }
+            //set before the status, a finished job is never seen without it
+            finishedAt = System.currentTimeMillis();
+            status = Status.DONE;
+        } catch (Throwable e) {
+            //an error must finish the job as well, it would stay running and never expire otherwise
+            synchronized (this) {
+                error = e instanceof Exception ? (Exception) e : new Exception(e);
+            }
+            finishedAt = System.currentTimeMillis();
+            status = Status.FAILED;
+        }
+    }
+
+    /**
+     * Higher priorities first, then first come first served.
+     */
+    @Override
+    public int compareTo(Job o) {
+        if (priority != o.priority) {
+            return Integer.compare(o.priority, priority);
+        }
+        return Long.compare(sequence, o.sequence);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    boolean isExpired(long now, long ttlMillis) {
+        long finished = finishedAt;
+        return isFinished() && finished > 0 && finished + ttlMillis < now;
+    }
+
+    public synchronized FileResult getResult() {
+        return result;
+    }
+
+    public synchronized Exception getError() {
+        return error;
+    }
+
+    /**
+     * Open the result so that it can't be released in between. The file stays readable when the job expires during the download.
+     *
+     * @return null if there is no result or it expired in the meantime
+     */
+    public synchronized Download openResult() throws IOException {
+        if (result == null || result.target == null) {
+            return null;
+        }
+        return new Download(result.contentType, result.target.length(), new FileInputStream(result.target));
+    }
+
+    synchronized void release() {
+        if (result != null) {
+            result.release();
+            result = null;
+        }
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id", id);
+        m.put("status", status.name().toLowerCase());
+        m.put("priority", priority);
+        Exception e = getError();
+        if (e != null) {
+            m.put("error", e.getMessage());
+        }
+        return m;
+    }
+
+    public static class Download {
+        public final String contentType;
+        public final long length;
+        public final InputStream input;
+
+        Download(String contentType, long length, InputStream input) {
+            this.contentType = contentType;
+            this.length = length;
+            this.input = input;
+        }
+    }
+}
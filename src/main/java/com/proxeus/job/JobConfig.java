@@ -0,0 +1,24 @@
+package com.proxeus.job;
+
+/**
+ * JobConfig defines the queue of the asynchronous compile requests.
+ * These are the defaults that are set here, they are going to be overwritten by the config, if defined.
+ */
+public class JobConfig {
+    /**
+     * count of jobs compiled at the same time.
+     **/
+    public int workers = 4;
+    /**
+     * max count of jobs waiting to be compiled. Further jobs are rejected with 503 until the queue has capacity again.
+     **/
+    public int queueSize = 1000;
+    /**
+     * how long a finished job and its result are kept to be fetched, like 30s, 10m or 1h.
+     **/
+    public String ttl = "10m";
+    /**
+     * count of data sets of the batches (/compile/batch) compiled at the same time, the threads are shared by all batches.
+     **/
+    public int batchWorkers = 4;
+}
@@ -0,0 +1,96 @@
+package com.proxeus.job;
+
+import com.proxeus.Config;
+import com.proxeus.document.FileResult;
+import com.proxeus.error.UnavailableException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JobQueue compiles the asynchronous requests with its own workers, independent of the HTTP threads.
+ * The queue is bounded and ordered by priority. Finished jobs are kept for the configured TTL to be fetched by their id.
+ */
+public class JobQueue {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final int queueSize;
+    private final long ttlMillis;
+
+    public JobQueue(JobConfig config) {
+        if (config == null) {
+            config = new JobConfig();
+        }
+        int workers = Math.max(1, config.workers);
+        queueSize = Math.max(1, config.queueSize);
+        ttlMillis = Config.parseDurationToMillis(config.ttl);
+        //the queue is bounded in submit, the priority queue itself isn't
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+        long cleanupMillis = Math.max(1000, Math.min(ttlMillis, TimeUnit.MINUTES.toMillis(1)));
+        cleaner.scheduleWithFixedDelay(this::expire, cleanupMillis, cleanupMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param priority higher is compiled first
+     * @param work     the compilation
+     * @return the queued job
+     * @throws UnavailableException if the queue is full
+     */
+    public synchronized Job submit(int priority, Callable<FileResult> work) throws UnavailableException {
+        if (executor.getQueue().size() >= queueSize) {
+            throw new UnavailableException("job queue is full, please try again later");
+        }
+        Job job = new Job(UUID.randomUUID().toString(), priority, sequence.incrementAndGet(), work);
+        jobs.put(job.getId(), job);
+        executor.execute(job);
+        return job;
+    }
+
+    /**
+     * @return the job or null if it doesn't exist or is expired
+     */
+    public Job get(String id) {
+        if (id == null) {
+            return null;
+        }
+        return jobs.get(id);
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    private void expire() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<Job> it = jobs.values().iterator();
+            while (it.hasNext()) {
+                Job job = it.next();
+                if (job.isExpired(now, ttlMillis)) {
+                    it.remove();
+                    job.release();
+                }
+            }
+        } catch (Exception e) {
+            log.error("couldn't expire the jobs", e);
+        }
+    }
+
+    public void shutdown() {
+        cleaner.shutdownNow();
+        executor.shutdownNow();
+        for (Job job : jobs.values()) {
+            job.release();
+        }
+        jobs.clear();
+    }
+}
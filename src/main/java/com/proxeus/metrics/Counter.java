@@ -0,0 +1,18 @@
+package com.proxeus.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter only goes up, it is cheap to increment from many threads at once.
+ */
+public class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void inc() {
+        count.increment();
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
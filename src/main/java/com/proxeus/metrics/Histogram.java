@@ -0,0 +1,72 @@
+package com.proxeus.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram counts durations into fixed buckets that are allocated once, when it is created.
+ * Recording is a binary search and two atomic additions, it doesn't allocate and doesn't lock,
+ * so it can be used on every request and every render task.
+ */
+public class Histogram {
+    /**
+     * upper bounds of the buckets in milliseconds, from a short template entry up to the request timeouts
+     */
+    static final double[] BOUNDS_MILLIS = {1, 2.5, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_MILLIS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS_MILLIS[i] * TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    //the last one is +Inf
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int i = Arrays.binarySearch(BOUNDS_NANOS, nanos);
+        //the bounds are inclusive like the le label of Prometheus
+        counts.incrementAndGet(i < 0 ? -i - 1 : i);
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Record the time passed since start.
+     *
+     * @param startNanos taken from System.nanoTime()
+     */
+    public void since(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the counts per bucket, not cumulative, the last one above all bounds
+     */
+    public long[] getCounts() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+}
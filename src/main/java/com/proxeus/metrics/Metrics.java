@@ -0,0 +1,98 @@
+package com.proxeus.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics holds the counters and gauges of the service next to the histograms of the stages
+ * and writes them in the text format of Prometheus.
+ * The metrics are registered once, recording them doesn't touch the registry.
+ */
+public class Metrics {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String STAGE_NAME = "document_stage_seconds";
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Map<String, Sampled> registered = new LinkedHashMap<>();
+
+    /**
+     * @return the counter registered with name, a new one if it doesn't exist yet
+     */
+    public static synchronized Counter counter(String name, String help) {
+        Sampled sampled = registered.get(name);
+        if (sampled != null && sampled.counter != null) {
+            return sampled.counter;
+        }
+        Counter counter = new Counter();
+        registered.put(name, new Sampled("counter", help, counter::get, counter));
+        return counter;
+    }
+
+    /**
+     * Register the gauge, it replaces the one registered before with the same name.
+     *
+     * @param value read when the metrics are written
+     */
+    public static synchronized void gauge(String name, String help, LongSupplier value) {
+        registered.put(name, new Sampled("gauge", help, value, null));
+    }
+
+    public static void write(Writer w) throws IOException {
+        writeStages(w);
+        List<Map.Entry<String, Sampled>> entries;
+        synchronized (Metrics.class) {
+            entries = new ArrayList<>(registered.entrySet());
+        }
+        for (Map.Entry<String, Sampled> entry : entries) {
+            Sampled sampled = entry.getValue();
+            header(w, entry.getKey(), sampled.help, sampled.type);
+            w.write(entry.getKey());
+            w.write(' ');
+            w.write(Long.toString(sampled.value.getAsLong()));
+            w.write('\n');
+        }
+        w.flush();
+    }
+
+    private static void writeStages(Writer w) throws IOException {
+        header(w, STAGE_NAME, "Time spent in each stage of the compilation.", "histogram");
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = stage.getHistogram();
+            long[] counts = histogram.getCounts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String le = i < Histogram.BOUNDS_MILLIS.length ? Double.toString(Histogram.BOUNDS_MILLIS[i] / 1000) : "+Inf";
+                w.write(STAGE_NAME + "_bucket{stage=\"" + stage.getLabel() + "\",le=\"" + le + "\"} " + cumulative + "\n");
+            }
+            w.write(STAGE_NAME + "_sum{stage=\"" + stage.getLabel() + "\"} " + histogram.getSumNanos() / NANOS_PER_SECOND + "\n");
+            w.write(STAGE_NAME + "_count{stage=\"" + stage.getLabel() + "\"} " + cumulative + "\n");
+        }
+    }
+
+    private static void header(Writer w, String name, String help, String type) throws IOException {
+        w.write("# HELP " + name + " " + help + "\n");
+        w.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private static class Sampled {
+        final String type;
+        final String help;
+        final LongSupplier value;
+        final Counter counter;
+
+        Sampled(String type, String help, LongSupplier value, Counter counter) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+            this.counter = counter;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.proxeus.metrics;
+
+/**
+ * Stage is a step of a compilation, the time spent in it is recorded in its own histogram.
+ * The stages of one request overlap where the work runs in parallel, like rendering and the image adjustment.
+ */
+public enum Stage {
+    /**
+     * reading the request into the template, the multipart upload or the zip package
+     */
+    UPLOAD,
+    /**
+     * reading the entries of the template, including the preparation of content.xml and styles.xml
+     */
+    EXTRACT,
+    /**
+     * running the TemplateExtractor over an entry, only if it isn't cached yet
+     */
+    PREPARE,
+    /**
+     * rendering an entry with the data
+     */
+    RENDER,
+    /**
+     * loading and resizing an image
+     */
+    IMAGES,
+    /**
+     * packing the compiled document
+     */
+    ASSEMBLE,
+    /**
+     * waiting for a LibreOffice executable
+     */
+    LEASE,
+    /**
+     * converting the document with LibreOffice
+     */
+    EXPORT,
+    /**
+     * the whole request, from the first byte read until the last one written
+     */
+    REQUEST;
+
+    private final Histogram histogram = new Histogram();
+    private final String label = name().toLowerCase();
+
+    /**
+     * @param startNanos taken from System.nanoTime()
+     */
+    public void since(long startNanos) {
+        histogram.since(startNanos);
+    }
+
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -21,4 +21,22 @@ public class LibreConfig {
 
     /** highLoad defines the percentage of executables in use, when it is reached prepare new ones to be ready for high availability and fast response.**/
     public int highLoad = 60;
+
+    /**
+     * how long the predicted demand has to stay lower before an executable is closed, like 30s or 5m.
+     **/
+    public String shrinkAfter = "30s";
+    /**
+     * count of executables started at the same time.
+     **/
+    public int startParallelism = 4;
+    /**
+     * convert a tiny document with new executables before they are used, to have the filters loaded.
+     **/
+    public boolean warmup = true;
+    /**
+     * convert the compiled documents through UNO streams when the response is written. The converted document is buffered in memory,
+     * in the tmp folder beyond 4 MB, and sent once LibreOffice is done with it, so slow clients don't hold the executables.
+     **/
+    public boolean streamOutput = true;
 }
@@ -2,20 +2,32 @@ package com.proxeus.office.libre;
 
 import com.proxeus.document.TemplateFormatter;
 import com.proxeus.error.UnavailableException;
+import com.proxeus.metrics.Counter;
+import com.proxeus.metrics.Metrics;
+import com.proxeus.metrics.Stage;
+import com.proxeus.trace.Span;
+import com.proxeus.trace.Tracing;
 import com.proxeus.office.libre.exe.Extension;
 import com.proxeus.office.libre.exe.LibreOffice;
+import com.proxeus.office.libre.exe.LibreOfficeLease;
 import com.proxeus.office.libre.exe.LibreOfficePool;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.BooleanSupplier;
 
 /**
  * LibreOfficeAssistant makes the communication between LibreOffice and the Document-Service easier and safely.
  */
 public class LibreOfficeAssistant implements TemplateFormatter, Closeable {
+    private static final Counter retries = Metrics.counter("libreoffice_convert_retries_total", "Conversions tried again after LibreOffice failed to initialize.");
+
     private Logger log = LogManager.getLogger(this.getClass());
 
     private LibreOfficePool libreOfficePool;
@@ -44,36 +56,100 @@ public class LibreOfficeAssistant implements TemplateFormatter, Closeable {
      */
     @Override
     public String Convert(File src, File dst, String format, boolean newFontsInstalled) throws Exception {
-        LibreOffice lo = null;
-        try{
-            lo = libreOfficePool.take(newFontsInstalled);
+        return convert(format, newFontsInstalled, () -> true, lo -> lo.Convert(src, dst, format));
+    }
+
+    /**
+     * Convert the document read from src as the provided format written to dst, through UNO streams.
+     * It is only tried again on a broken executable as long as nothing was read from src or written to dst.
+     * @param src source document
+     * @param dst destination, closed when the document is stored
+     * @param format pdf, odt, docx or doc
+     * @param newFontsInstalled signal new fonts are installed, to restart the executables so the font can be used
+     * @return contentType
+     */
+    @Override
+    public String Convert(InputStream src, OutputStream dst, String format, boolean newFontsInstalled) throws Exception {
+        CountingInputStream input = new CountingInputStream(src);
+        CountingOutputStream output = new CountingOutputStream(dst);
+        return convert(format, newFontsInstalled, () -> input.getByteCount() == 0 && output.getByteCount() == 0, lo -> lo.Convert(input, output, format));
+    }
+
+    private String convert(String format, boolean newFontsInstalled, BooleanSupplier retryable, Conversion conversion) throws Exception {
+        try (Span span = Tracing.start("convert")) {
+            span.setAttribute("format", format);
+            return convert(span, newFontsInstalled, retryable, conversion);
+        }
+    }
+
+    private String convert(Span span, boolean newFontsInstalled, BooleanSupplier retryable, Conversion conversion) throws Exception {
+        LibreOfficeLease lease;
+        long leaseStart = System.nanoTime();
+        try (Span leaseSpan = Tracing.start("lease")) {
+            lease = libreOfficePool.take(newFontsInstalled);
+        }catch(UnavailableException e){
+            throw e;
         }catch(Exception e){
             throw new UnavailableException("Please try again later.", e);
-        }finally {
-            libreOfficePool.release();
+        }finally{
+            Stage.LEASE.since(leaseStart);
         }
 
-        if (lo == null){
-            throw new UnavailableException("Cannot initialize LibreOffice instance. Please try again later.");
+        try (lease) {
+            span.setAttribute("libreoffice.id", lease.get().getId());
+            int count = 0;
+            do{
+                long start = System.currentTimeMillis();
+                try{
+                    String contentType = conversion.convert(lease.get());
+                    libreOfficePool.converted(System.currentTimeMillis() - start);
+                    return contentType;
+                }catch(ExceptionInInitializerError wiie){
+                    wiie.printStackTrace();
+                    retries.inc();
+                    ++count;
+                    span.setAttribute("retry", count);
+                }catch(Exception e){
+                    throw new UnavailableException("Please try again later.", e);
+                }
+            }while(count < 10 && retryable.getAsBoolean());
         }
-
-        int count = 0;
-        do{
-            try{
-                return lo.Convert(src, dst, format);
-            }catch(ExceptionInInitializerError wiie){
-                wiie.printStackTrace();
-                ++count;
-            }catch(Exception e){
-                throw new UnavailableException("Please try again later.", e);
-            }finally {
-                libreOfficePool.release();
-            }
-        }while(count < 10);
         throw new UnavailableException("Cannot initialize LibreOffice instance. Please try again later.");
     }
 
+    /**
+     * @return count of LibreOffice executables the pool is scaling to
+     */
+    public int getPoolTargetSize() {
+        return libreOfficePool.getTargetSize();
+    }
+
+    /**
+     * @return count of LibreOffice executables ready, occupied or being started
+     */
+    public int getPoolSize() {
+        return libreOfficePool.getSize();
+    }
+
+    /**
+     * @return max count of LibreOffice executables converting at the same time
+     */
+    public int getPoolMax() {
+        return libreOfficePool.getMax();
+    }
+
+    /**
+     * @return moving average of the conversion time
+     */
+    public long getConversionMillis() {
+        return libreOfficePool.getConversionMillis();
+    }
+
     public void close() {
         libreOfficePool.close();
     }
+
+    private interface Conversion {
+        String convert(LibreOffice libreOffice) throws Exception;
+    }
 }
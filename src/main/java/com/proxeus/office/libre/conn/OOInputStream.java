@@ -4,8 +4,10 @@ import com.sun.star.io.BufferSizeExceededException;
 import com.sun.star.io.IOException;
 import com.sun.star.io.NotConnectedException;
 import com.sun.star.io.XInputStream;
+import org.apache.commons.io.IOUtils;
 
 import java.io.InputStream;
+import java.util.Arrays;
 
 public class OOInputStream implements XInputStream {
 
@@ -32,20 +34,16 @@ public class OOInputStream implements XInputStream {
 
     }
 
+    /**
+     * Reads p2 bytes, less only at the end of the stream as UNO expects it.
+     */
     public int readBytes(byte[][] p1, int p2) throws NotConnectedException,
             BufferSizeExceededException, IOException {
         try {
             byte[] b = new byte[p2];
-            int res = input.read(b);
-            if (res > 0) {
-                if (res < p2) {
-                    byte[] b2 = new byte[res];
-                    System.arraycopy(b, 0, b2, 0, res);
-                    b = b2;
-                }
-            } else {
-                b = new byte[0];
-                res = 0;
+            int res = IOUtils.read(input, b);
+            if (res < p2) {
+                b = Arrays.copyOf(b, res);
             }
             p1[0] = b;
             return res;
@@ -54,16 +52,29 @@ public class OOInputStream implements XInputStream {
         }
     }
 
+    /**
+     * Reads at most p2 bytes, as many as the stream returns with one read.
+     */
     public int readSomeBytes(byte[][] p1, int p2)
             throws NotConnectedException, BufferSizeExceededException,
             IOException {
-        return readBytes(p1, p2);
+        try {
+            byte[] b = new byte[p2];
+            int res = Math.max(input.read(b), 0);
+            if (res < p2) {
+                b = Arrays.copyOf(b, res);
+            }
+            p1[0] = b;
+            return res;
+        } catch (java.io.IOException e) {
+            throw new com.sun.star.io.IOException("thrown after printStackTrace: " + e.getMessage(), this);
+        }
     }
 
     public void skipBytes(int arg0) throws NotConnectedException,
             BufferSizeExceededException, IOException {
         try {
-            input.skip(arg0);
+            IOUtils.skip(input, arg0);
         } catch (java.io.IOException e) {
             throw new IOException("thrown after printStackTrace: " + e.getMessage());
         }
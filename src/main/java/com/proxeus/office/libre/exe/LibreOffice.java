@@ -1,5 +1,6 @@
 package com.proxeus.office.libre.exe;
 
+import com.proxeus.metrics.Stage;
 import com.proxeus.office.libre.conn.BootstrapConnector;
 import com.proxeus.office.libre.conn.BootstrapSocketConnector;
 import com.proxeus.office.libre.conn.OOInputStream;
@@ -23,11 +24,14 @@ import com.sun.star.uno.Exception;
 import com.sun.star.uno.UnoRuntime;
 import com.sun.star.util.XCloseable;
 import com.sun.star.util.XRefreshable;
+import org.apache.commons.io.output.NullOutputStream;
 
 import java.io.*;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.sun.star.uno.UnoRuntime.queryInterface;
 
@@ -40,7 +44,10 @@ public class LibreOffice implements Closeable {
     private String exeDir;
     private BootstrapConnector con;
     private long lastReconnect = 0;
-    private final static String OUT_URL = "private:stream";
+    private final static String STREAM_URL = "private:stream";
+    private static final AtomicInteger ids = new AtomicInteger();
+    //tells the executables apart in the traces
+    private final int id = ids.incrementAndGet();
 
     public LibreOffice(String exeDir) {
         this.exeDir = exeDir;
@@ -52,12 +59,37 @@ public class LibreOffice implements Closeable {
         reconnect(System.currentTimeMillis());
     }
 
+    public int getId() {
+        return id;
+    }
+
     public String Convert(File src, File dst, String format) throws java.lang.Exception {
         LibreOfficeFormat lof = LibreOfficeFormat.get(format);
         exportDocument(src, dst, lof);
         return lof.getContentType();
     }
 
+    /**
+     * Convert the document read from src to the provided format written to dst.
+     * The document is passed to LibreOffice through UNO streams, nothing is stored on the disk.
+     * dst is closed by LibreOffice when the document is stored.
+     */
+    public String Convert(InputStream src, OutputStream dst, String format) throws java.lang.Exception {
+        LibreOfficeFormat lof = LibreOfficeFormat.get(format);
+        exportDocument(STREAM_URL, new OOInputStream(src), STREAM_URL, new OOOutputStream(dst), lof);
+        return lof.getContentType();
+    }
+
+    /**
+     * Convert a document once, LibreOffice loads the filters on the first use.
+     * A warmed up executable converts the first request as fast as any other.
+     */
+    public void warmUp(File doc) throws java.lang.Exception {
+        try (InputStream input = new FileInputStream(doc)) {
+            Convert(input, NullOutputStream.NULL_OUTPUT_STREAM, "pdf");
+        }
+    }
+
     /**
      * @param reconnectStamp time stamp of the attempt
      * @return true if reconnected
@@ -83,17 +115,35 @@ public class LibreOffice implements Closeable {
     }
 
     private void exportDocument(File src, File dst, LibreOfficeFormat outputFormat) throws java.lang.Exception {
+        File tmp = null;
+        String dstUrl;
+        if (src == dst) {
+            tmp = File.createTempFile("libre_dst", ".tmp");
+            dstUrl = tmp.toURI().toString();
+        } else {
+            dstUrl = dst.toURI().toString();
+        }
+        exportDocument(src.toURI().toString(), null, dstUrl, null, outputFormat);
+        if (tmp != null) {
+            Files.move(tmp.toPath(), dst.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Load the document from srcUrl or from the input stream, if it is set, and store it to dstUrl or to the output stream.
+     */
+    private void exportDocument(String srcUrl, OOInputStream input, String dstUrl, OOOutputStream output, LibreOfficeFormat outputFormat) throws java.lang.Exception {
+        long start = System.nanoTime();
         try {
-            String sUrl = src.toURI().toString();
             XComponent oDocToStore;
             try {
-                oDocToStore = con.getCompLoader().loadComponentFromURL(sUrl, "_blank", 0, createProps(
+                oDocToStore = con.getCompLoader().loadComponentFromURL(srcUrl, "_blank", 0, createProps(
                         p("Hidden", Boolean.TRUE),
                         p("RepairPackage", Boolean.TRUE),
                         p("Overwrite", Boolean.FALSE),
-                        //p("InputStream", ooInputStream),
                         p("FilterName", "writer8"),
-                        p("ReadOnly", Boolean.FALSE)
+                        p("ReadOnly", Boolean.FALSE),
+                        p("InputStream", input)
                 ));
                 if (oDocToStore == null) {
                     lastReconnect = -1;//force reconnect
@@ -126,21 +176,12 @@ public class LibreOffice implements Closeable {
                 lastReconnect = -1;
                 throw new ExceptionInInitializerError();
             }
-            //OutputStream output = new FileOutputStream(dst);
-            //OOOutputStream out = new OOOutputStream(output);
             // Storing and converting the document
-            File tmp = null;
-            if (src == dst) {
-                tmp = File.createTempFile("libre_dst", ".tmp");
-                sUrl = tmp.toURI().toString();
-            } else {
-                sUrl = dst.toURI().toString();
-            }
-            xStorable.storeToURL(sUrl, createProps(
+            xStorable.storeToURL(dstUrl, createProps(
                     p("Overwrite", Boolean.TRUE),
                     p("FilterName", outputFormat.getFilterName()),
-                    p("Hidden", Boolean.TRUE)
-                    //p("OutputStream", out)
+                    p("Hidden", Boolean.TRUE),
+                    p("OutputStream", output)
             ));
 
             // Closing the converted document. Use XCloseable.close if the
@@ -152,14 +193,11 @@ public class LibreOffice implements Closeable {
                 XComponent xComp = queryInterface(XComponent.class, xStorable);
                 xComp.dispose();
             }
-            if (tmp != null) {
-                Files.move(tmp.toPath(), dst.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            }
-            //output.flush();
-            //output.close();
         } catch (DisposedException e) {
             lastReconnect = -1;//force reconnect
             throw new ExceptionInInitializerError("Please try again later.");
+        } finally {
+            Stage.EXPORT.since(start);
         }
     }
 
@@ -170,7 +208,7 @@ public class LibreOffice implements Closeable {
         //String sUrl = "file:///" + temp.getAbsolutePath().replace('\\', '/');
         OOInputStream ooInputStream = new OOInputStream(input);
         // Open the corrupted document
-        XComponent xDocument = con.getCompLoader().loadComponentFromURL(OUT_URL, "_blank", 0, createProps(
+        XComponent xDocument = con.getCompLoader().loadComponentFromURL(STREAM_URL, "_blank", 0, createProps(
                 p("Hidden", Boolean.TRUE),
                 p("RepairPackage", Boolean.TRUE),
                 p("FilterName", "writer8"),
@@ -196,7 +234,7 @@ public class LibreOffice implements Closeable {
         XStorable xStorable = queryInterface(XStorable.class, xDocument);
 
         // Storing and converting the document
-        xStorable.storeToURL(OUT_URL, createProps(
+        xStorable.storeToURL(STREAM_URL, createProps(
                 p("OutputStream", out),
                 p("FilterName", "writer8")
         ));
@@ -294,8 +332,11 @@ public class LibreOffice implements Closeable {
         (queryInterface(XRefreshable.class, xDoc)).refresh();
     }
 
+    /**
+     * @return the properties without the ones that have no value
+     */
     private PropertyValue[] createProps(PropertyValue... pvs) {
-        return pvs;
+        return Arrays.stream(pvs).filter(pv -> pv.Value != null).toArray(PropertyValue[]::new);
     }
 
     private PropertyValue p(String name, Object value) {
@@ -0,0 +1,90 @@
+package com.proxeus.office.libre.exe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LibreOfficeDemand predicts how many executables are needed to serve the requests without waiting for a cold start.
+ *
+ * It follows the arrival rate of the conversions and their mean duration. By Little's law the conversions in flight
+ * are the rate times the duration. The target is sized to have them use highLoad percent of the executables,
+ * the rest is the headroom to absorb bursts.
+ * The target follows a rising demand right away but it is only lowered after the demand stayed lower for shrinkAfter,
+ * a short pause between two bursts doesn't close the executables needed by the next one.
+ */
+class LibreOfficeDemand {
+    //weight of the newest sample of the moving averages
+    private final static double ALPHA = 0.3;
+    //creating a new instance takes around 1 second, assume the conversions take as long until we know better
+    private final static double INITIAL_CONVERSION_MILLIS = 1000;
+
+    private final int min;
+    private final int max;
+    private final int highLoad;
+    private final long shrinkAfterMillis;
+
+    private final AtomicLong arrivals = new AtomicLong();
+    private long lastUpdate;
+    private double ratePerMilli = 0;
+    private double conversionMillis = INITIAL_CONVERSION_MILLIS;
+    private int target;
+    private long lowerSince = -1;
+
+    LibreOfficeDemand(int min, int max, int highLoad, long shrinkAfterMillis, long now) {
+        this.min = min;
+        this.max = max;
+        this.highLoad = highLoad;
+        this.shrinkAfterMillis = shrinkAfterMillis;
+        this.lastUpdate = now;
+        this.target = min;
+    }
+
+    void arrived() {
+        arrivals.incrementAndGet();
+    }
+
+    synchronized void converted(long millis) {
+        conversionMillis = conversionMillis + ALPHA * (millis - conversionMillis);
+    }
+
+    /**
+     * Take the arrivals since the last update into account and calculate the target.
+     *
+     * @param inUse executables occupied right now, the target doesn't fall behind what is actually used
+     * @return count of executables that should be running, occupied or ready
+     */
+    synchronized int update(long now, int inUse) {
+        long elapsed = now - lastUpdate;
+        if (elapsed > 0) {
+            double rate = (double) arrivals.getAndSet(0) / elapsed;
+            //rise with the burst, calm down slowly
+            ratePerMilli = Math.max(rate, ratePerMilli + ALPHA * (rate - ratePerMilli));
+            lastUpdate = now;
+        }
+        double inFlight = Math.max(inUse, ratePerMilli * conversionMillis);
+        int predicted = (int) Math.ceil(inFlight * 100 / highLoad - 1e-9);
+        predicted = Math.min(max, Math.max(min, predicted));
+        if (predicted >= target) {
+            target = predicted;
+            lowerSince = -1;
+        } else if (lowerSince < 0) {
+            lowerSince = now;
+        } else if (now - lowerSince >= shrinkAfterMillis) {
+            //one at the time, the next one after another shrinkAfter
+            target--;
+            lowerSince = target > predicted ? now : -1;
+        }
+        return target;
+    }
+
+    synchronized int getTarget() {
+        return target;
+    }
+
+    synchronized double getConversionMillis() {
+        return conversionMillis;
+    }
+
+    synchronized double getRatePerSecond() {
+        return ratePerMilli * 1000;
+    }
+}
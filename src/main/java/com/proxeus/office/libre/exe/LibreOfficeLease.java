@@ -0,0 +1,36 @@
+package com.proxeus.office.libre.exe;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LibreOfficeLease is the checkout of one executable of the LibreOfficePool.
+ * The executable belongs to the lease until it is closed, no matter which thread uses or closes it.
+ * Closing it more than once has no effect.
+ */
+public class LibreOfficeLease implements Closeable {
+    private final LibreOfficePool pool;
+    private final LibreOffice libreOffice;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    LibreOfficeLease(LibreOfficePool pool, LibreOffice libreOffice) {
+        this.pool = pool;
+        this.libreOffice = libreOffice;
+    }
+
+    public LibreOffice get() {
+        if (closed.get()) {
+            throw new IllegalStateException("lease already returned to the pool");
+        }
+        return libreOffice;
+    }
+
+    /**
+     * Return the executable to the pool.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            pool.giveBack(libreOffice);
+        }
+    }
+}
@@ -1,19 +1,27 @@
 package com.proxeus.office.libre.exe;
 
+import com.proxeus.Config;
 import com.proxeus.error.UnavailableException;
+import com.proxeus.metrics.Counter;
+import com.proxeus.metrics.Metrics;
 import com.proxeus.office.libre.LibreConfig;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
-import java.lang.reflect.Field;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.InputStream;
 import java.security.InvalidParameterException;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * LibreOfficePool decreases the chances of failure for updating and converting the document to the requested type.
@@ -23,7 +31,16 @@ import java.util.concurrent.TimeUnit;
  * With min, max and highLoad. You have the possibility to tell how much resources should be used even in edge cases.
  * min LibreOffice executables that should be ready in any case.
  * max LibreOffice executables that are allowed.
- * highLoad is the percentage of the actual usage to tell when to start to increase the executables.
+ * highLoad is the percentage of the executables that should be in use, the rest is kept ready for the next requests.
+ *
+ * The size follows the demand predicted by LibreOfficeDemand from the request rate and the conversion time.
+ * New executables are started in parallel and warmed up with a tiny document before they are handed out,
+ * a request never pays for the start or for loading the filters. They are closed one at the time when the demand
+ * stayed lower for shrinkAfter.
+ *
+ * An executable is checked out with take and belongs to the returned LibreOfficeLease until the lease is closed.
+ * The ready executables are kept in a lock-free deque, the semaphore counts them to let take wait for the next one.
+ * Neither take nor closing the lease goes through a lock or a background thread.
  *
  * Please be aware of this minefield.
  * Objects of LibreOffice are sometimes just like that disposed, sometimes when requesting an object on a valid connection
@@ -33,26 +50,34 @@ import java.util.concurrent.TimeUnit;
  * This class makes the horror more than just acceptable.
  */
 public class LibreOfficePool {
+    private static final Counter reconnects = Metrics.counter("libreoffice_reconnects_total", "Reconnections of LibreOffice executables.");
+
     private Logger log = LogManager.getLogger(this.getClass());
 
-    private LinkedBlockingDeque<LibreOffice> executables;
-    private LinkedBlockingQueue<Long> toBeReleased;
+    //ready executables, the permits of idleCount are never more than its size
+    private final ConcurrentLinkedDeque<LibreOffice> idle = new ConcurrentLinkedDeque<>();
+    private final Semaphore idleCount = new Semaphore(0);
+    private final AtomicInteger occupied = new AtomicInteger();
     private LinkedBlockingQueue<LibreOffice> toReconnect;
-    private final Object lock = new Object();
-    private Map<Long, LibreOffice> occupied;
     private final int min;
     private final int max;
     private final String exeDir;
     private long lastReconnectionAttempt = 0;
     private volatile long reconnectionAttempt = 0;
+    private volatile boolean closed = false;
     private int highLoad = 60;
-    private int lowLoad = 0;
-    private final int failoverStart = 1;
     private final int reconnectWait = 8;
-    private int failover = failoverStart;
-    private long cleanupThreadSleep = 200;
-    private Thread cleanupThread;
+    private final long scaleInterval = 500;
     private Thread reconnectionThread;
+    private Thread scalerThread;
+
+    private final LibreOfficeDemand demand;
+    private final ExecutorService starter;
+    private final AtomicInteger starting = new AtomicInteger();
+    private final boolean warmup;
+    private File warmupDoc;
+    private final ReentrantLock warmupLock = new ReentrantLock();
+    private volatile int lastTarget;
 
     public LibreOfficePool(LibreConfig libreConfig) throws Exception {
         exeDir = libreConfig.librepath;
@@ -63,19 +88,29 @@ public class LibreOfficePool {
         // pathFixForLibrary();
         // Instead you can use:
         // export LD_LIBRARY_PATH=path/to/your/library/dir/
-        executables = new LinkedBlockingDeque<>(libreConfig.max);
-        occupied = new HashMap<>(libreConfig.max);
-        toBeReleased = new LinkedBlockingQueue<>(libreConfig.max);
         toReconnect = new LinkedBlockingQueue<>(libreConfig.max);
         min = libreConfig.min;
         max = libreConfig.max;
         if (libreConfig.highLoad > 10 && libreConfig.highLoad <= 100) {
             highLoad = libreConfig.highLoad;
         }
-        setupCleanupThread();
+        warmup = libreConfig.warmup;
+        demand = new LibreOfficeDemand(min, max, highLoad, Config.parseDurationToMillis(libreConfig.shrinkAfter), System.currentTimeMillis());
+        lastTarget = min;
+        starter = Executors.newFixedThreadPool(Math.max(1, libreConfig.startParallelism));
+        registerGauges();
+        setupMaintenanceThreads();
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("libreoffice_pool_idle", "LibreOffice executables ready to be taken.", idleCount::availablePermits);
+        Metrics.gauge("libreoffice_pool_occupied", "LibreOffice executables checked out.", occupied::get);
+        Metrics.gauge("libreoffice_pool_reconnecting", "LibreOffice executables waiting to be reconnected.", toReconnect::size);
+        Metrics.gauge("libreoffice_pool_starting", "LibreOffice executables being started.", starting::get);
+        Metrics.gauge("libreoffice_pool_target", "LibreOffice executables the pool is scaling to.", this::getTargetSize);
     }
 
-    private void setupCleanupThread() {
+    private void setupMaintenanceThreads() {
         reconnectionThread = new Thread() {
             public void run() {
                 try {
@@ -87,14 +122,12 @@ public class LibreOfficePool {
                         } else if (lastReconnectionAttempt < reconnectionAttempt) {
                             //reconnect all prepared ones for font update
                             while (!isInterrupted()) {
-                                lo = executables.pollLast();
+                                lo = pollIdle(true);
                                 if (lo != null) {
                                     if (lo.needToReconnect(reconnectionAttempt)) {
                                         reconnect(lo);
                                     } else {
-                                        if(!executables.offer(lo)){
-                                            lo.close();
-                                        }
+                                        offerIdle(lo, false);
                                         //all reconnected
                                         break;
                                     }
@@ -110,231 +143,238 @@ public class LibreOfficePool {
                 } catch (InterruptedException e) {
                     //exit
                 }
+
+                //shutdown
+                LibreOffice lo;
+                while ((lo = pollIdle(false)) != null) {
+                    lo.close();
+                }
+                while ((lo = toReconnect.poll()) != null) {
+                    lo.close();
+                }
             }
 
             private void reconnect(LibreOffice lo) {
                 try {
-                    int currentOccupiedSize;
-                    synchronized (lock) {
-                        currentOccupiedSize = occupied.size();
-                    }
-                    if(shouldIncrease(currentOccupiedSize, 0)){
-                        lo.reconnect(reconnectionAttempt);
-                        if (executables.offerFirst(lo)) {
-                            return;
-                        }
+                    reconnects.inc();
+                    lo.reconnect(reconnectionAttempt);
+                    if (warmUp(lo)) {
+                        offerIdle(lo, true);
+                        return;
                     }
                 } catch (Exception e) {}
-                //list seems to be full, an error was thrown or we don't need to increase anymore
+                //an error was thrown, the scaler starts a new one if it is still needed
                 lo.close();
             }
         };
         reconnectionThread.start();
-        cleanupThread = new Thread() {
+        scalerThread = new Thread() {
             public void run() {
                 try {
-                    prepare();
-                    //runtime maintenance
-                    LibreOffice lo = null;
-                    int currentOccupiedSize = 0;
                     while (!isInterrupted()) {
-                        Long takerId = toBeReleased.poll(cleanupThreadSleep, TimeUnit.MILLISECONDS);
-                        if (takerId != null) {
-                            synchronized (lock) {
-                                lo = occupied.remove(takerId);
-                                currentOccupiedSize = occupied.size();
-                            }
-                            if (lo == null) {
-                                //already released
-                                continue;
-                            }
-                            if(offer(lo)){
-                                isHighLoad(currentOccupiedSize);
-                            }
-                            checkLowLoad(currentOccupiedSize);
-                        } else {
-                            synchronized (lock) {
-                                currentOccupiedSize = occupied.size();
-                            }
-                            if (!isHighLoad(currentOccupiedSize)) {
-                                checkLowLoad(currentOccupiedSize);
-                            }
-                        }
+                        Thread.sleep(scaleInterval);
+                        scale();
                     }
-                } catch (Exception e) {
-                    log.info("shutting down libre pool cleanup");
+                } catch (InterruptedException e) {
+                    //exit
                 }
+            }
+        };
+        scalerThread.start();
+    }
 
-                //shutdown
-                synchronized (lock) {
-                    Collection<LibreOffice> los = occupied.values();
-                    for (LibreOffice lo : los) {
-                        lo.close();
-                    }
-                }
-                Iterator<LibreOffice> iterator = executables.iterator();
-                while (iterator.hasNext()) {
-                    iterator.next().close();
-                    iterator.remove();
-                }
+    /**
+     * Start or close executables to get to the predicted target.
+     */
+    private void scale() {
+        int target = demand.update(System.currentTimeMillis(), occupied.get());
+        int size = getSize();
+        if (target != lastTarget) {
+            log.info("LibreOfficePool target " + target + " size " + size + " rate/s " + String.format("%.2f", demand.getRatePerSecond())
+                    + " conversion ms " + Math.round(demand.getConversionMillis()));
+            lastTarget = target;
+        }
+        if (size < target) {
+            for (int i = size; i < target; i++) {
+                startNew();
             }
-            private void checkLowLoad(int currentOccupiedSize){
-                if (currentOccupiedSize == 0 && executables.size() > min) {
-                    ++lowLoad;
-                    lowLoad = lowLoad + (int) ((double) lowLoad * 0.4);
-                    if (failover > failoverStart) {
-                        failover = failover - (int) ((double) failover * 0.4);
-                        if (failover < failoverStart) {
-                            failover = failoverStart;
-                        }
-                    }
-                    if (lowLoad > failover) {
-                        LibreOffice lo = executables.pollLast();
-                        if (lo != null) {
-                            if (cleanupThreadSleep > 200) {
-                                cleanupThreadSleep = 10;
-                            }
-                            lowLoad = 0;
-                            lo.close();
-                            if(executables.size() == min){
-                                cleanupThreadSleep = 200;
-                                System.gc();
-                            }
-                        }
-                    }
-                } else {
-                    lowLoad = 0;
-                }
+        } else if (size > target && size > min) {
+            //the target is lowered one by one with a delay, closing one at the time follows it smoothly
+            LibreOffice lo = pollIdle(true);
+            if (lo != null) {
+                lo.close();
             }
-            private boolean isHighLoad(int currentOccupiedSize) {
+        }
+    }
+
+    private boolean offerNew(){
+        if(starting.get() + toReconnect.size() < max){
+            return startNew();
+        }
+        return false;
+    }
+
+    /**
+     * Start and warm up a new executable in the background, it is offered to the requests when it is ready.
+     */
+    private boolean startNew() {
+        starting.incrementAndGet();
+        try {
+            starter.execute(() -> {
                 try {
-                    if (shouldIncrease(currentOccupiedSize, toReconnect.size())) {
-                        lowLoad = 0;
-                        int fo = (int) ((double) failover * 6.8);
-                        if (fo > failover) {
-                            failover = fo;
-                        }
-                        if(cleanupThreadSleep<2000){
-                            cleanupThreadSleep += 100;
+                    LibreOffice lo = tryNewLibreOffice();
+                    if (lo != null) {
+                        if (warmUp(lo)) {
+                            offerIdle(lo, false);
+                        } else {
+                            lo.close();
                         }
-                        return offerNew();
                     }
-                } catch (Exception e) {
-                    //not important
+                } finally {
+                    starting.decrementAndGet();
                 }
-                return false;
-            }
-        };
-        cleanupThread.start();
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            //closed
+            starting.decrementAndGet();
+            return false;
+        }
     }
 
-    private boolean offerNew(){
-        if(toReconnect.size()<max){
-            return toReconnect.offer(new LibreOffice(exeDir));
+    /**
+     * @return false if the executable failed to convert the warm up document and should not be used
+     */
+    private boolean warmUp(LibreOffice lo) {
+        if (!warmup) {
+            return true;
+        }
+        try {
+            lo.warmUp(getWarmupDoc());
+            return true;
+        } catch (Exception | ExceptionInInitializerError e) {
+            log.info("LibreOffice warm up failed: " + e.getMessage());
+            return false;
         }
-        return false;
     }
 
-    private boolean shouldIncrease(int currentOccupiedSize, int pending){
-        //if over highLoad % occupied and list not full, offer a new one already to prevent requests from waiting
-        //as creating a new instance takes around 1 second
-        int available = executables.size();
-        return currentOccupiedSize > 0 && ((double) currentOccupiedSize / available * 100.0) >= highLoad && available + pending + currentOccupiedSize < max;
+    private File getWarmupDoc() throws Exception {
+        //a lock instead of synchronized, the file is written while holding it
+        warmupLock.lock();
+        try {
+            if (warmupDoc == null || !warmupDoc.exists()) {
+                File doc = File.createTempFile("libre_warmup", ".odt");
+                doc.deleteOnExit();
+                try (InputStream inputStream = LibreOfficePool.class.getResourceAsStream("/libre/warmup.odt")) {
+                    FileUtils.copyInputStreamToFile(inputStream, doc);
+                }
+                warmupDoc = doc;
+            }
+            return warmupDoc;
+        } finally {
+            warmupLock.unlock();
+        }
     }
 
-    private void prepare() {
-        log.info("Preparing LibreOfficePool: ", exeDir);
-        for (; executables.size() < min; ) {
-            LibreOffice lo = tryNewLibreOffice();
-            if (lo != null) {
-                if (!executables.offer(lo)) {
-                    lo.close();
-                }
+    private void prepare() throws InterruptedException {
+        log.info("Preparing LibreOfficePool: " + exeDir);
+        while (idleCount.availablePermits() < min) {
+            for (int i = idleCount.availablePermits() + starting.get(); i < min; i++) {
+                startNew();
             }
+            Thread.sleep(100);
         }
     }
 
-    public LibreOffice take() throws Exception {
+    public LibreOfficeLease take() throws Exception {
         return take(false);
     }
 
-    public LibreOffice take(boolean reconnect) throws Exception {
-        //return loff;
-        long id = Thread.currentThread().getId();
-        LibreOffice lo = null;
-        int currentOccupiedSize;
-        synchronized (lock) {
-            currentOccupiedSize = occupied.size();
-            if (currentOccupiedSize > 0) {
-                lo = occupied.get(id);
-            }
-            if (reconnect) {
-                reconnectionAttempt = System.currentTimeMillis();
-            }
-        }
-        if (lo != null) {
-            //already taken one, provide it again
-            return lo;
+    /**
+     * Check out an executable, it has to be given back by closing the lease.
+     *
+     * @param reconnect restart the executables, to have new fonts loaded
+     */
+    public LibreOfficeLease take(boolean reconnect) throws Exception {
+        demand.arrived();
+        if (reconnect) {
+            reconnectionAttempt = System.currentTimeMillis();
         }
-        if (currentOccupiedSize + toReconnect.size() >= max) {
-            //full, lets wait until one of them is getting released again
-            lo = executables.poll(reconnectWait, TimeUnit.SECONDS);
+        LibreOffice lo = pollIdle(false);
+        if (lo == null) {
+            String busy;
+            if (occupied.get() + toReconnect.size() + starting.get() >= max) {
+                //full, lets wait until one of them is getting released again
+                busy = "All LibreOffice instances busy.  Please try again later.";
+            } else {
+                offerNew();
+                busy = "Cannot get LibreOffice instance.  Please try again later.";
+            }
+            lo = pollIdle(reconnectWait, TimeUnit.SECONDS);
             //looks like the service is under heavy load, lets throw and exceptions saying try again later
             //holding the request longer doesn't make sense as it takes more resources
             if (lo == null) {
-                throw new UnavailableException("All LibreOffice instances busy.  Please try again later.");
+                throw new UnavailableException(busy);
             }
-        } else {
-            //try poll
-            lo = executables.poll();
-            if (lo == null) {
-                offerNew();
-                lo = executables.poll(reconnectWait, TimeUnit.SECONDS);
-                if (lo == null) {
-                    throw new UnavailableException("Cannot get LibreOffice instance.  Please try again later.");
-                }
-            }
-        }
-        if (reconnect) {
-            tryReconnect(lo);
-        }
-        synchronized (lock) {
-            occupied.put(id, lo);
         }
-        return lo;
-    }
-
-    public void release() {
-        long tid = Thread.currentThread().getId();
-        if (!toBeReleased.offer(tid)) {
-            //couldn't queue it for release so lets just close it ourselves
-            LibreOffice lo;
-            synchronized (lock) {
-                lo = occupied.get(tid);
-            }
-            if (lo != null) {
-                lo.close();
+        occupied.incrementAndGet();
+        try {
+            if (reconnect) {
+                tryReconnect(lo);
             }
+        } catch (Exception e) {
+            occupied.decrementAndGet();
+            throw e;
         }
+        return new LibreOfficeLease(this, lo);
     }
 
-    private boolean offer(LibreOffice lo) {
+    /**
+     * Called by the lease when it is closed.
+     */
+    void giveBack(LibreOffice lo) {
+        occupied.decrementAndGet();
+        if (closed) {
+            lo.close();
+            return;
+        }
         if (lo.needToReconnect(reconnectionAttempt)) {
-            if (toReconnect.offer(lo)) {
-                return true;
-            }else{
+            if (!toReconnect.offer(lo)) {
                 //list seems to be full
                 lo.close();
-                return false;
             }
+            return;
         }
-        if (executables.offer(lo)) {
-            return true;
-        }else{
-            //list seems to be full
+        offerIdle(lo, true);
+    }
+
+    private void offerIdle(LibreOffice lo, boolean first) {
+        if (closed || idleCount.availablePermits() + occupied.get() >= max) {
+            //we have enough of them
             lo.close();
-            return false;
+            return;
+        }
+        //the most recently used ones first, the ones at the end are closed first when shrinking
+        if (first) {
+            idle.offerFirst(lo);
+        } else {
+            idle.offerLast(lo);
         }
+        idleCount.release();
+    }
+
+    private LibreOffice pollIdle(boolean last) {
+        if (!idleCount.tryAcquire()) {
+            return null;
+        }
+        return last ? idle.pollLast() : idle.pollFirst();
+    }
+
+    private LibreOffice pollIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!idleCount.tryAcquire(timeout, unit)) {
+            return null;
+        }
+        return idle.pollFirst();
     }
 
     private final int maxAttempts = 6;
@@ -359,6 +399,7 @@ public class LibreOfficePool {
         int count = 0;
         do {
             try {
+                reconnects.inc();
                 lo.reconnect(reconnectionAttempt);
                 return;
             } catch (Exception e) {
@@ -374,8 +415,52 @@ public class LibreOfficePool {
         throw new UnavailableException("Please try again later.");
     }
 
+    /**
+     * Let the conversion time be taken into account for the predicted demand.
+     */
+    public void converted(long millis) {
+        demand.converted(millis);
+    }
+
+    /**
+     * @return count of executables the pool is scaling to
+     */
+    public int getTargetSize() {
+        return demand.getTarget();
+    }
+
+    /**
+     * @return count of executables ready, occupied or being started
+     */
+    public int getSize() {
+        return occupied.get() + idleCount.availablePermits() + toReconnect.size() + starting.get();
+    }
+
+    /**
+     * @return max count of executables
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @return moving average of the conversion time
+     */
+    public long getConversionMillis() {
+        return (long) demand.getConversionMillis();
+    }
+
+    /**
+     * @return count of executables checked out
+     */
+    public int getOccupied() {
+        return occupied.get();
+    }
+
     public void close() {
-        cleanupThread.interrupt();
+        closed = true;
+        scalerThread.interrupt();
+        starter.shutdownNow();
         reconnectionThread.interrupt();
     }
 }
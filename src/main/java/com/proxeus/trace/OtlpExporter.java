@@ -0,0 +1,147 @@
+package com.proxeus.trace;
+
+import com.proxeus.Config;
+import com.proxeus.util.Json;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OtlpExporter writes the finished traces in the JSON encoding of the OpenTelemetry protocol (OTLP),
+ * appended as one line to a file and/or posted to the traces endpoint of a collector.
+ * It runs on its own thread, traces that don't fit into the queue are dropped.
+ */
+class OtlpExporter {
+    private static final Logger log = LogManager.getLogger(OtlpExporter.class);
+    private static final int SPAN_KIND_INTERNAL = 1;
+    private static final int SPAN_KIND_SERVER = 2;
+
+    private final File file;
+    private final URI endpoint;
+    private final HttpClient client;
+    private final long slowerThanNanos;
+    private final String serviceName;
+    private final ThreadPoolExecutor executor;
+
+    private OtlpExporter(TraceConfig config, File file, URI endpoint) {
+        this.file = file;
+        this.endpoint = endpoint;
+        this.client = endpoint == null ? null : HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        this.slowerThanNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, Config.parseDurationToMillis(config.slowerThan)));
+        this.serviceName = config.serviceName;
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, config.queueSize)), r -> {
+            Thread t = new Thread(r, "trace-export");
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * @return null if neither a file nor an endpoint is configured
+     */
+    static OtlpExporter create(TraceConfig config) {
+        boolean toFile = config.file != null && !config.file.trim().isEmpty();
+        boolean toEndpoint = config.endpoint != null && !config.endpoint.trim().isEmpty();
+        if (!toFile && !toEndpoint) {
+            return null;
+        }
+        return new OtlpExporter(config, toFile ? new File(config.file.trim()) : null, toEndpoint ? URI.create(config.endpoint.trim()) : null);
+    }
+
+    void export(Span.Trace trace, long durationNanos) {
+        trace.exported();
+        if (durationNanos < slowerThanNanos) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                write(toJson(trace));
+            } catch (Exception e) {
+                log.warn("couldn't export the trace " + trace.traceId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void write(String json) throws Exception {
+        if (file != null) {
+            try (OutputStream out = new FileOutputStream(file, true)) {
+                out.write((json + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (endpoint != null) {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(endpoint)
+                    .timeout(Duration.ofSeconds(10))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(json))
+                    .build(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                throw new Exception("collector responded with " + response.statusCode());
+            }
+        }
+    }
+
+    /**
+     * @return the trace as an ExportTraceServiceRequest
+     */
+    String toJson(Span.Trace trace) {
+        List<Object> spans = new ArrayList<>();
+        for (Span span : trace.finished) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("traceId", trace.traceId);
+            s.put("spanId", span.spanId);
+            if (span.parentSpanId != null) {
+                s.put("parentSpanId", span.parentSpanId);
+            }
+            s.put("name", span.name);
+            s.put("kind", span == trace.root ? SPAN_KIND_SERVER : SPAN_KIND_INTERNAL);
+            //64 bit integers are strings in the JSON encoding of OTLP
+            s.put("startTimeUnixNano", Long.toString(span.startEpochNanos));
+            s.put("endTimeUnixNano", Long.toString(span.endEpochNanos));
+            List<Object> attributes = new ArrayList<>();
+            synchronized (span.attributes) {
+                for (Object[] a : span.attributes) {
+                    attributes.add(attribute((String) a[0], a[1]));
+                }
+            }
+            s.put("attributes", attributes);
+            spans.add(s);
+        }
+        Map<String, Object> scopeSpans = new LinkedHashMap<>();
+        scopeSpans.put("scope", Collections.singletonMap("name", "com.proxeus.document-service"));
+        scopeSpans.put("spans", spans);
+        Map<String, Object> resourceSpans = new LinkedHashMap<>();
+        resourceSpans.put("resource", Collections.singletonMap("attributes", Collections.singletonList(attribute("service.name", serviceName))));
+        resourceSpans.put("scopeSpans", Collections.singletonList(scopeSpans));
+        return Json.toJson(Collections.singletonMap("resourceSpans", Collections.singletonList(resourceSpans)));
+    }
+
+    private static Map<String, Object> attribute(String key, Object value) {
+        Map<String, Object> attribute = new LinkedHashMap<>();
+        attribute.put("key", key);
+        attribute.put("value", value instanceof Long
+                ? Collections.singletonMap("intValue", value.toString())
+                : Collections.singletonMap("stringValue", String.valueOf(value)));
+        return attribute;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,134 @@
+package com.proxeus.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Span is a timed step of a request. It is started with {@link Tracing#root(String)} or {@link Tracing#start(String)}
+ * and becomes the current span of the thread until it is closed.
+ * Closing the root exports the spans of the request that are finished by then.
+ * If tracing is off the shared no-op span is returned, it records nothing.
+ */
+public class Span implements AutoCloseable {
+    static final Span NOOP = new Span();
+
+    final Trace trace;
+    final String spanId;
+    final String parentSpanId;
+    final String name;
+    final long startEpochNanos;
+    private final long startNanos;
+    long endEpochNanos;
+    final List<Object[]> attributes;
+    private final Span previous;
+    private boolean ended;
+
+    private Span() {
+        trace = null;
+        spanId = null;
+        parentSpanId = null;
+        name = null;
+        startEpochNanos = 0;
+        startNanos = 0;
+        attributes = null;
+        previous = null;
+        ended = true;
+    }
+
+    Span(Trace trace, Span parent, String name, Span previous) {
+        this.trace = trace;
+        this.spanId = randomHex(1);
+        this.parentSpanId = parent == null ? null : parent.spanId;
+        this.name = name;
+        this.startNanos = System.nanoTime();
+        this.startEpochNanos = trace.toEpochNanos(startNanos);
+        this.attributes = new ArrayList<>(4);
+        this.previous = previous;
+    }
+
+    /**
+     * @return false for the no-op span, to skip attributes that are expensive to get
+     */
+    public boolean isRecording() {
+        return trace != null;
+    }
+
+    public Span setAttribute(String key, String value) {
+        return attribute(key, value);
+    }
+
+    public Span setAttribute(String key, long value) {
+        return attribute(key, value);
+    }
+
+    private Span attribute(String key, Object value) {
+        if (trace != null && value != null) {
+            synchronized (attributes) {
+                attributes.add(new Object[]{key, value});
+            }
+        }
+        return this;
+    }
+
+    /**
+     * End the span and make the span it was started in the current one again.
+     */
+    @Override
+    public void close() {
+        if (ended) {
+            return;
+        }
+        ended = true;
+        endEpochNanos = trace.toEpochNanos(System.nanoTime());
+        Tracing.restore(this, previous);
+        trace.finished(this);
+        if (trace.root == this) {
+            Tracing.export(trace, endEpochNanos - startEpochNanos);
+        }
+    }
+
+    /**
+     * @param longs count of random longs, 1 for a span id and 2 for a trace id
+     */
+    static String randomHex(int longs) {
+        StringBuilder sb = new StringBuilder(longs * 16);
+        for (int i = 0; i < longs; i++) {
+            String hex = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            for (int pad = hex.length(); pad < 16; pad++) {
+                sb.append('0');
+            }
+            sb.append(hex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Trace is shared by the spans of one request, the finished ones are collected here until the root is closed.
+     */
+    static class Trace {
+        final String traceId = randomHex(2);
+        final Queue<Span> finished = new ConcurrentLinkedQueue<>();
+        private final long epochNanos = System.currentTimeMillis() * 1_000_000L;
+        private final long nanos = System.nanoTime();
+        private volatile boolean exported;
+        Span root;
+
+        long toEpochNanos(long nanoTime) {
+            return epochNanos + (nanoTime - nanos);
+        }
+
+        void finished(Span span) {
+            //a task still running after the request ended is not part of the export anymore
+            if (!exported) {
+                finished.add(span);
+            }
+        }
+
+        void exported() {
+            exported = true;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.proxeus.trace;
+
+/**
+ * TraceConfig defines where the traces of the requests are exported to, tracing is off if neither file nor endpoint is set.
+ * These are the defaults that are set here, they are going to be overwritten by the config, if defined.
+ */
+public class TraceConfig {
+    /**
+     * file the traces are appended to, one OTLP JSON request per line. Empty to not write them to a file.
+     **/
+    public String file = "";
+    /**
+     * OTLP/HTTP endpoint of a collector the traces are posted to as JSON, like http://localhost:4318/v1/traces. Empty to not send them.
+     **/
+    public String endpoint = "";
+    /**
+     * only the requests that took at least this long are exported, like 2s to keep the outliers only.
+     **/
+    public String slowerThan = "0s";
+    /**
+     * max traces waiting to be exported, the ones above are dropped instead of slowing the requests down.
+     **/
+    public int queueSize = 1000;
+    /**
+     * service.name of the exported spans.
+     **/
+    public String serviceName = "document-service";
+}
@@ -0,0 +1,113 @@
+package com.proxeus.trace;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Tracing keeps the current span of each thread, the spans started on a thread are children of its current span.
+ * The tasks a request hands to other threads are wrapped to carry its current span along.
+ * <p>
+ * Tracing is off until it is configured with a file or an endpoint, then roots and spans are the shared no-op span
+ * and wrapping returns the task itself.
+ */
+public class Tracing {
+    private static final ThreadLocal<Span> current = new ThreadLocal<>();
+    private static volatile OtlpExporter exporter;
+
+    /**
+     * Replace the exporter, the traces queued by the previous one are still exported.
+     */
+    public static synchronized void configure(TraceConfig config) {
+        OtlpExporter previous = exporter;
+        exporter = OtlpExporter.create(config == null ? new TraceConfig() : config);
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return exporter != null;
+    }
+
+    /**
+     * Start a new trace, its spans are exported when the returned root is closed.
+     */
+    public static Span root(String name) {
+        if (exporter == null) {
+            return Span.NOOP;
+        }
+        Span.Trace trace = new Span.Trace();
+        Span span = new Span(trace, null, name, current.get());
+        trace.root = span;
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * Start a child of the current span, outside of a trace it is the no-op span.
+     */
+    public static Span start(String name) {
+        Span parent = current.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+        Span span = new Span(parent.trace, parent, name, parent);
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * @return the task running with the current span of the calling thread
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Span parent = current.get();
+        if (parent == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = current.get();
+            current.set(parent);
+            try {
+                return task.call();
+            } finally {
+                restore(parent, previous);
+            }
+        };
+    }
+
+    public static Runnable wrap(Runnable task) {
+        Span parent = current.get();
+        if (parent == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = current.get();
+            current.set(parent);
+            try {
+                task.run();
+            } finally {
+                restore(parent, previous);
+            }
+        };
+    }
+
+    static void restore(Span span, Span previous) {
+        if (current.get() != span) {
+            //closed on another thread than it was started on
+            return;
+        }
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    static void export(Span.Trace trace, long durationNanos) {
+        OtlpExporter e = exporter;
+        if (e == null) {
+            trace.exported();
+            return;
+        }
+        e.export(trace, durationNanos);
+    }
+}
@@ -0,0 +1,93 @@
+package com.proxeus.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Base64;
+
+/**
+ * Base64DecodingWriter decodes the base64 characters written to it in chunks into the output,
+ * without holding the whole encoded or decoded content in memory.
+ * Like the MIME decoder it ignores the characters outside of the base64 alphabet, such as line breaks.
+ */
+public class Base64DecodingWriter extends Writer {
+    private static final int CHUNK = 16 * 1024;
+
+    private final OutputStream out;
+    private final byte[] encoded = new byte[CHUNK];
+    private int count;
+    private boolean padded;
+
+    public Base64DecodingWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (padded) {
+            return;
+        }
+        if (c == '=') {
+            //the end of the data, the rest is ignored like by the MIME decoder
+            padded = true;
+            return;
+        }
+        if (!isBase64(c)) {
+            return;
+        }
+        encoded[count++] = (byte) c;
+        if (count == CHUNK) {
+            //CHUNK is a multiple of 4, a full chunk is decoded without padding
+            out.write(Base64.getDecoder().decode(encoded));
+            count = 0;
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        append(str, off, off + len);
+    }
+
+    /**
+     * Appends the characters without copying the sequence into a string first.
+     */
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            write(csq.charAt(i));
+        }
+        return this;
+    }
+
+    private static boolean isBase64(int c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '/';
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Decodes the remaining characters and flushes the output, it doesn't close it.
+     */
+    @Override
+    public void close() throws IOException {
+        //a single character at the end doesn't make a byte
+        count -= count % 4 == 1 ? 1 : 0;
+        if (count > 0) {
+            byte[] rest = new byte[count];
+            System.arraycopy(encoded, 0, rest, 0, count);
+            count = 0;
+            out.write(Base64.getDecoder().decode(rest));
+        }
+        out.flush();
+    }
+}
@@ -3,8 +3,11 @@ package com.proxeus.util;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Image helps us to create a container in which it places the actual image as configured with the parameters.
@@ -26,7 +29,19 @@ public class Image {
     }
 
     public static void adjustToFitToRatio(File src, File dst, int maxWidth, int maxHeight, String alignment, boolean sizeItUpIfSmaller) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(dst))) {
+            adjustToFitToRatio(src, out, maxWidth, maxHeight, alignment, sizeItUpIfSmaller);
+        }
+    }
+
+    /**
+     * Same as {@link #adjustToFitToRatio(File, File, int, int, String, boolean)} but writes the png to a stream.
+     */
+    public static void adjustToFitToRatio(File src, OutputStream dst, int maxWidth, int maxHeight, String alignment, boolean sizeItUpIfSmaller) throws IOException {
         BufferedImage image = ImageIO.read(src);
+        if (image == null) {
+            throw new IOException("Unsupported image format");
+        }
 
         int width = image.getWidth();
         int height = image.getHeight();
@@ -0,0 +1,197 @@
+package com.proxeus.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRUCache is a thread safe least recently used cache bounded by the count of entries and by the total weight of its values.
+ * What the weight means is up to the provided Weigher, usually it is an approximation of the bytes held by the value.
+ *
+ * A maxEntries or maxWeight lower or equal to 0 disables the cache, every lookup is going to be a miss.
+ */
+public class LRUCache<K, V> {
+
+    public interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    public interface Loader<V> {
+        V load() throws Exception;
+    }
+
+    /**
+     * Notified after a value was evicted, replaced or removed, outside of the lock.
+     */
+    public interface RemovalListener<K, V> {
+        void removed(K key, V value);
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Weigher<V> weigher;
+    private final RemovalListener<K, V> removalListener;
+    //access ordered, the eldest entry is the least recently used one
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LRUCache(int maxEntries, long maxWeight, Weigher<V> weigher) {
+        this(maxEntries, maxWeight, weigher, null);
+    }
+
+    public LRUCache(int maxEntries, long maxWeight, Weigher<V> weigher, RemovalListener<K, V> removalListener) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.removalListener = removalListener;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0 && maxWeight > 0;
+    }
+
+    public V get(K key) {
+        Entry<V> entry = null;
+        if (isEnabled()) {
+            synchronized (entries) {
+                entry = entries.get(key);
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Get the cached value or load and cache it on a miss.
+     * The loader is called outside of the lock, concurrent misses on the same key might load the value more than once.
+     */
+    public V get(K key, Loader<V> loader) throws Exception {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.load();
+        put(key, value);
+        return value;
+    }
+
+    /**
+     * @return true if the value was cached
+     */
+    public boolean put(K key, V value) {
+        if (!isEnabled() || value == null) {
+            return false;
+        }
+        long w = weigher.weigh(value);
+        if (w > maxWeight) {
+            //would evict everything else, don't cache it at all
+            return false;
+        }
+        List<Map.Entry<K, V>> removed = new ArrayList<>(1);
+        synchronized (entries) {
+            Entry<V> old = entries.put(key, new Entry<>(value, w));
+            if (old != null) {
+                weight -= old.weight;
+                if (old.value != value) {
+                    removed.add(new AbstractMap.SimpleImmutableEntry<>(key, old.value));
+                }
+            }
+            weight += w;
+            Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+                Map.Entry<K, Entry<V>> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                weight -= eldest.getValue().weight;
+                it.remove();
+                evictions.incrementAndGet();
+                removed.add(new AbstractMap.SimpleImmutableEntry<>(eldest.getKey(), eldest.getValue().value));
+            }
+        }
+        notifyRemoved(removed);
+        return true;
+    }
+
+    public void remove(K key) {
+        List<Map.Entry<K, V>> removed = new ArrayList<>(1);
+        synchronized (entries) {
+            Entry<V> old = entries.remove(key);
+            if (old != null) {
+                weight -= old.weight;
+                removed.add(new AbstractMap.SimpleImmutableEntry<>(key, old.value));
+            }
+        }
+        notifyRemoved(removed);
+    }
+
+    public void clear() {
+        List<Map.Entry<K, V>> removed = new ArrayList<>();
+        synchronized (entries) {
+            for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+                removed.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue().value));
+            }
+            entries.clear();
+            weight = 0;
+        }
+        notifyRemoved(removed);
+    }
+
+    private void notifyRemoved(List<Map.Entry<K, V>> removed) {
+        if (removalListener != null) {
+            for (Map.Entry<K, V> e : removed) {
+                removalListener.removed(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long weight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public String toString() {
+        return "size=" + size() + " weight=" + weight() + " hits=" + getHits() + " misses=" + getMisses() + " evictions=" + getEvictions();
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.proxeus.util.concurrent;
+
+import com.proxeus.trace.Tracing;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BoundedExecutor is a service wide pool with a fixed count of threads and a bounded queue.
+ * When the queue is full the submitting thread runs the task itself, which slows the request down
+ * instead of piling up work or creating threads.
+ */
+public class BoundedExecutor {
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    public BoundedExecutor(String name, int threads, int queueSize) {
+        this.name = name;
+        threads = Math.max(1, threads);
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), threadFactory(name),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        //idle pools don't keep their threads
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The task runs with the current span of the submitting thread.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(Tracing.wrap(task));
+    }
+
+    /**
+     * @return a new group to wait for the tasks of one request
+     */
+    public TaskGroup group() {
+        return new TaskGroup(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return count of tasks waiting for a thread
+     */
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return count of threads running a task
+     */
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Finish the submitted tasks and stop the threads.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public String toString() {
+        return name + "[threads=" + getThreads() + ", active=" + getActive() + ", queued=" + getQueued() + "]";
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package com.proxeus.util.concurrent;
+
+/**
+ * ExecutorConfig sizes the executors shared by all requests.
+ * These are the defaults that are set here, they are going to be overwritten by the config, if defined.
+ */
+public class ExecutorConfig {
+    /**
+     * threads rendering the XML entries of the documents. 0 uses twice the count of processors.
+     **/
+    public int renderThreads = 0;
+    /**
+     * max render tasks waiting for a thread, when it is full the request renders with its own thread.
+     **/
+    public int renderQueue = 256;
+    /**
+     * threads adjusting the images of the documents. 0 uses the count of processors.
+     **/
+    public int imageThreads = 0;
+    /**
+     * max image tasks waiting for a thread, when it is full the request adjusts the image with its own thread.
+     **/
+    public int imageQueue = 256;
+    /**
+     * how long a request waits for its render and image tasks, like 15s or 1m.
+     **/
+    public String timeout = "15s";
+    /**
+     * handle every request on its own virtual thread instead of the pooled Jetty threads, needs Java 21 or newer.
+     **/
+    public boolean virtualThreads = false;
+}
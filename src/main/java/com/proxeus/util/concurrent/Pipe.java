@@ -0,0 +1,147 @@
+package com.proxeus.util.concurrent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pipe connects a writing and a reading thread through a bounded buffer.
+ * <p>
+ * Unlike {@link java.io.PipedInputStream} it waits on a lock instead of a monitor, which doesn't pin the carrier of
+ * a virtual thread, and the reader is woken up as soon as there is data instead of polling every second.
+ * The writer has to close its end, the reader gets the end of the stream after the remaining bytes.
+ */
+public class Pipe {
+    private final byte[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final Condition writable = lock.newCondition();
+    private int readPos;
+    private int count;
+    private boolean writerClosed;
+    private boolean readerClosed;
+
+    private final InputStream input = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                while (count == 0) {
+                    if (readerClosed) {
+                        throw new IOException("Pipe closed");
+                    }
+                    if (writerClosed) {
+                        return -1;
+                    }
+                    readable.await();
+                }
+                int n = Math.min(len, Math.min(count, buffer.length - readPos));
+                System.arraycopy(buffer, readPos, b, off, n);
+                readPos = (readPos + n) % buffer.length;
+                count -= n;
+                writable.signal();
+                return n;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                readerClosed = true;
+                count = 0;
+                writable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    };
+
+    private final OutputStream output = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            lock.lock();
+            try {
+                while (len > 0) {
+                    if (writerClosed) {
+                        throw new IOException("Pipe closed");
+                    }
+                    if (readerClosed) {
+                        throw new IOException("Read end closed");
+                    }
+                    if (count == buffer.length) {
+                        writable.await();
+                        continue;
+                    }
+                    int writePos = (readPos + count) % buffer.length;
+                    int n = Math.min(len, Math.min(buffer.length - count, buffer.length - writePos));
+                    System.arraycopy(b, off, buffer, writePos, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                    readable.signal();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                writerClosed = true;
+                readable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    };
+
+    public Pipe(int size) {
+        buffer = new byte[Math.max(1, size)];
+    }
+
+    public InputStream input() {
+        return input;
+    }
+
+    public OutputStream output() {
+        return output;
+    }
+}
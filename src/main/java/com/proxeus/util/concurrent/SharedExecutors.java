@@ -0,0 +1,106 @@
+package com.proxeus.util.concurrent;
+
+import com.proxeus.Config;
+import org.apache.logging.log4j.LogManager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SharedExecutors holds the executors the requests submit their render and image tasks to,
+ * instead of creating and destroying thread pools for every request.
+ */
+public class SharedExecutors {
+    private static volatile SharedExecutors instance;
+
+    private final BoundedExecutor render;
+    private final BoundedExecutor images;
+    private final ExecutorService pipes;
+    private final long timeoutMillis;
+    private final boolean virtualThreads;
+
+    private SharedExecutors(ExecutorConfig config) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        render = new BoundedExecutor("render", config.renderThreads > 0 ? config.renderThreads : processors * 2, config.renderQueue);
+        images = new BoundedExecutor("image", config.imageThreads > 0 ? config.imageThreads : processors, config.imageQueue);
+        long timeout = Config.parseDurationToMillis(config.timeout);
+        timeoutMillis = timeout > 0 ? timeout : 15000;
+        virtualThreads = config.virtualThreads && VirtualThreads.isAvailable();
+        if (config.virtualThreads && !virtualThreads) {
+            LogManager.getLogger(SharedExecutors.class).warn("virtual threads need Java 21 or newer, running on "
+                    + System.getProperty("java.version") + " with platform threads");
+        }
+        //every pipe needs its own thread, they are not reused with virtual threads
+        ThreadFactory pipeThreads = virtualThreads ? VirtualThreads.factory("pipe-") : runnable -> {
+            Thread thread = new Thread(runnable, "pipe");
+            thread.setDaemon(true);
+            return thread;
+        };
+        pipes = new ThreadPoolExecutor(0, Integer.MAX_VALUE, virtualThreads ? 0L : 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), pipeThreads);
+    }
+
+    /**
+     * Replace the executors, the tasks of the previous ones are still finished.
+     */
+    public static synchronized void configure(ExecutorConfig config) {
+        SharedExecutors previous = instance;
+        instance = new SharedExecutors(config == null ? new ExecutorConfig() : config);
+        if (previous != null) {
+            previous.render.shutdown();
+            previous.images.shutdown();
+            previous.pipes.shutdown();
+        }
+    }
+
+    private static SharedExecutors get() {
+        SharedExecutors i = instance;
+        if (i == null) {
+            synchronized (SharedExecutors.class) {
+                if (instance == null) {
+                    instance = new SharedExecutors(new ExecutorConfig());
+                }
+                i = instance;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return executor for the rendering of the XML entries
+     */
+    public static BoundedExecutor render() {
+        return get().render;
+    }
+
+    /**
+     * @return executor for the image adjustments
+     */
+    public static BoundedExecutor images() {
+        return get().images;
+    }
+
+    /**
+     * @return unbounded executor for the tasks writing into a pipe another thread of the request is reading from
+     */
+    public static ExecutorService pipes() {
+        return get().pipes;
+    }
+
+    /**
+     * @return true if the requests are handled on virtual threads
+     */
+    public static boolean virtualThreads() {
+        return get().virtualThreads;
+    }
+
+    /**
+     * @return how long a request waits for its tasks
+     */
+    public static long timeoutMillis() {
+        return get().timeoutMillis;
+    }
+}
@@ -0,0 +1,72 @@
+package com.proxeus.util.concurrent;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * TaskGroup collects the tasks one request submits to a shared BoundedExecutor, to wait for exactly those.
+ */
+public class TaskGroup {
+    private final BoundedExecutor executor;
+    private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+
+    TaskGroup(BoundedExecutor executor) {
+        this.executor = executor;
+    }
+
+    public void submit(Callable<?> task) {
+        futures.add(executor.submit(task));
+    }
+
+    public void submit(Runnable task) {
+        submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Wait for all tasks of the group, the ones not done in time are cancelled.
+     *
+     * @param timeoutMillis for all of the tasks together
+     * @throws TimeoutException if the tasks didn't finish in time
+     * @throws Exception        the first exception thrown by a task, after all of them finished
+     */
+    public void await(long timeoutMillis) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Exception first = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                if (first == null) {
+                    first = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            } catch (TimeoutException e) {
+                cancel();
+                throw new TimeoutException(executor.getName() + " tasks didn't finish within " + timeoutMillis + "ms");
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+
+    /**
+     * Cancel the tasks that are not done yet.
+     */
+    public void cancel() {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    public int size() {
+        return futures.size();
+    }
+}
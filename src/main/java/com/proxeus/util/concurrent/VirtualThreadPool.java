@@ -0,0 +1,101 @@
+package com.proxeus.util.concurrent;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * VirtualThreadPool is the Jetty thread pool of the virtual thread mode. Every request is handled on its own virtual
+ * thread, so waiting for LibreOffice, uploads or downloads parks the request instead of holding a pooled thread.
+ * <p>
+ * Jetty's own loops, the acceptors and selectors, block in native calls for as long as the server runs and stay on
+ * a small pool of platform threads. The pool doesn't offer {@link org.eclipse.jetty.util.thread.TryExecutor},
+ * which makes Jetty hand every request to {@link #execute(Runnable)} instead of running it on the selector thread.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+    private final QueuedThreadPool platform;
+    private final AtomicInteger active = new AtomicInteger();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile ThreadFactory factory;
+
+    /**
+     * @param platformThreads max platform threads for the Jetty loops
+     */
+    public VirtualThreadPool(int platformThreads) {
+        platform = new QueuedThreadPool(Math.max(4, platformThreads), 2);
+        platform.setName("jetty-io");
+        platform.setDaemon(true);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        factory = VirtualThreads.factory("request-");
+        platform.start();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        platform.stop();
+        stopped.countDown();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (isJettyLoop(task)) {
+            platform.execute(task);
+            return;
+        }
+        active.incrementAndGet();
+        factory.newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        }).start();
+    }
+
+    private static boolean isJettyLoop(Runnable task) {
+        String name = task.getClass().getName();
+        return name.startsWith("org.eclipse.jetty.io.ManagedSelector") || name.startsWith("org.eclipse.jetty.server.AbstractConnector$Acceptor");
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * @return count of the running requests and Jetty loops
+     */
+    @Override
+    public int getThreads() {
+        return active.get() + platform.getThreads();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return platform.getIdleThreads();
+    }
+
+    /**
+     * A new virtual thread is always available.
+     */
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    /**
+     * @return count of the requests running on a virtual thread
+     */
+    public int getActive() {
+        return active.get();
+    }
+}
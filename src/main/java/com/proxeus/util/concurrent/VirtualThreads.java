@@ -0,0 +1,66 @@
+package com.proxeus.util.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * VirtualThreads creates virtual threads when the service runs on a JDK that has them (21+).
+ * The service is built for Java 11, that's why the builder is looked up by reflection.
+ */
+public class VirtualThreads {
+    private static final Method ofVirtual;
+    private static final Method name;
+    private static final Method factory;
+    private static final Method isVirtual;
+
+    static {
+        Method o = null, n = null, f = null, v = null;
+        try {
+            o = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            n = builder.getMethod("name", String.class, long.class);
+            f = builder.getMethod("factory");
+            v = Thread.class.getMethod("isVirtual");
+        } catch (Exception e) {
+            o = null;
+        }
+        ofVirtual = o;
+        name = n;
+        factory = f;
+        isVirtual = v;
+    }
+
+    /**
+     * @return true if the JDK supports virtual threads
+     */
+    public static boolean isAvailable() {
+        return ofVirtual != null;
+    }
+
+    /**
+     * @param prefix of the thread names, followed by a counter
+     * @return factory of virtual threads
+     * @throws UnsupportedOperationException if the JDK doesn't support virtual threads
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("virtual threads need Java 21 or newer, running on " + System.getProperty("java.version"));
+        }
+        try {
+            return (ThreadFactory) factory.invoke(name.invoke(ofVirtual.invoke(null), prefix, 0L));
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads could not be created", e);
+        }
+    }
+
+    public static boolean isVirtual(Thread thread) {
+        if (isVirtual == null) {
+            return false;
+        }
+        try {
+            return (Boolean) isVirtual.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+}
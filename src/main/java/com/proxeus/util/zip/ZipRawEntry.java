@@ -0,0 +1,66 @@
+package com.proxeus.util.zip;
+
+import java.util.zip.ZipEntry;
+
+/**
+ * ZipRawEntry is an entry of the central directory, with everything needed to copy it without recompression.
+ */
+public class ZipRawEntry {
+    final static int FLAG_DATA_DESCRIPTOR = 0x0008;
+    final static int FLAG_UTF8 = 0x0800;
+
+    final String name;
+    final int flags;
+    final int method;
+    final long dosTime;
+    final long crc;
+    final long compressedSize;
+    final long size;
+    final long localHeaderOffset;
+
+    ZipRawEntry(String name, int flags, int method, long dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+        this.name = name;
+        this.flags = flags;
+        this.method = method;
+        this.dosTime = dosTime;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.localHeaderOffset = localHeaderOffset;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return ZipEntry.STORED or ZipEntry.DEFLATED
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    public long getCrc() {
+        return crc;
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isDirectory() {
+        return name.endsWith("/");
+    }
+
+    public boolean isStored() {
+        return method == ZipEntry.STORED;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,240 @@
+package com.proxeus.util.zip;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * ZipRawReader reads the central directory of a zip file and gives access to the compressed bytes of its entries,
+ * so they can be copied with the ZipRawWriter without being inflated and deflated again.
+ * Zip64 archives are not supported, documents are far away from 4GB.
+ */
+public class ZipRawReader implements Closeable {
+    private final static int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private final static int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private final static int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private final static int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private final static int LOCAL_FILE_HEADER = 0x04034b50;
+    private final static int LOCAL_FILE_HEADER_SIZE = 30;
+    private final static Charset CP437 = Charset.forName("IBM437");
+
+    private final FileChannel channel;
+    private final List<ZipRawEntry> entries;
+    private final Map<String, ZipRawEntry> byName = new HashMap<>();
+
+    public ZipRawReader(File zip) throws IOException {
+        channel = FileChannel.open(zip.toPath(), StandardOpenOption.READ);
+        try {
+            entries = readCentralDirectory();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        for (ZipRawEntry entry : entries) {
+            byName.putIfAbsent(entry.name, entry);
+        }
+    }
+
+    /**
+     * @return the entries in the order of the central directory
+     */
+    public List<ZipRawEntry> entries() {
+        return entries;
+    }
+
+    public ZipRawEntry getEntry(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return the compressed bytes of the entry as they are stored in the zip
+     */
+    public InputStream getRawInputStream(ZipRawEntry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset, LOCAL_FILE_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_FILE_HEADER) {
+            throw new ZipException("invalid local file header of " + entry.name);
+        }
+        long dataOffset = entry.localHeaderOffset + LOCAL_FILE_HEADER_SIZE
+                + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+        return new BoundedInputStream(dataOffset, entry.compressedSize);
+    }
+
+    /**
+     * @return the inflated bytes of the entry
+     */
+    public InputStream getInputStream(ZipRawEntry entry) throws IOException {
+        InputStream raw = getRawInputStream(entry);
+        if (entry.method == ZipEntry.STORED) {
+            return raw;
+        }
+        if (entry.method != ZipEntry.DEFLATED) {
+            raw.close();
+            throw new ZipException("unsupported compression method " + entry.method + " of " + entry.name);
+        }
+        return new RawInflaterInputStream(raw);
+    }
+
+    private List<ZipRawEntry> readCentralDirectory() throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+        ByteBuffer tail = read(fileSize - tailSize, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new ZipException("end of central directory not found");
+        }
+        int count = Short.toUnsignedInt(tail.getShort(eocd + 10));
+        long cdSize = Integer.toUnsignedLong(tail.getInt(eocd + 12));
+        long cdOffset = Integer.toUnsignedLong(tail.getInt(eocd + 16));
+        if (count == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+            throw new ZipException("zip64 is not supported");
+        }
+        if (cdOffset + cdSize > fileSize) {
+            throw new ZipException("invalid central directory");
+        }
+        ByteBuffer cd = read(cdOffset, (int) cdSize);
+        List<ZipRawEntry> list = new ArrayList<>(count);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_DIRECTORY_HEADER_SIZE > cdSize || cd.getInt(pos) != CENTRAL_DIRECTORY_HEADER) {
+                throw new ZipException("invalid central directory header");
+            }
+            int flags = Short.toUnsignedInt(cd.getShort(pos + 8));
+            int method = Short.toUnsignedInt(cd.getShort(pos + 10));
+            long dosTime = Integer.toUnsignedLong(cd.getInt(pos + 12));
+            long crc = Integer.toUnsignedLong(cd.getInt(pos + 16));
+            long compressedSize = Integer.toUnsignedLong(cd.getInt(pos + 20));
+            long size = Integer.toUnsignedLong(cd.getInt(pos + 24));
+            int nameLength = Short.toUnsignedInt(cd.getShort(pos + 28));
+            int extraLength = Short.toUnsignedInt(cd.getShort(pos + 30));
+            int commentLength = Short.toUnsignedInt(cd.getShort(pos + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(cd.getInt(pos + 42));
+            byte[] name = new byte[nameLength];
+            cd.position(pos + CENTRAL_DIRECTORY_HEADER_SIZE);
+            cd.get(name);
+            list.add(new ZipRawEntry(
+                    new String(name, (flags & ZipRawEntry.FLAG_UTF8) != 0 ? UTF_8 : CP437),
+                    flags, method, dosTime, crc, compressedSize, size, localHeaderOffset
+            ));
+            pos += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads a section of the file without moving the position of the channel, so entries can be read in parallel.
+     */
+    private class BoundedInputStream extends InputStream {
+        private long position;
+        private long remaining;
+
+        BoundedInputStream(long position, long length) {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * The inflater of raw deflate data needs an extra byte at the end, like java.util.zip.ZipFile provides it.
+     */
+    private static class RawInflaterInputStream extends InflaterInputStream {
+        private boolean eof;
+
+        RawInflaterInputStream(InputStream raw) {
+            super(raw, new Inflater(true), 8192);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            inf.end();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.proxeus.util.zip;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * ZipRawWriter writes a zip archive like ZipOutputStream and additionally copies entries of a ZipRawReader as they are.
+ * The compressed bytes, the checksum and the sizes of a copied entry are moved straight from input to output,
+ * nothing is inflated or deflated again.
+ * Zip64 archives are not supported, documents are far away from 4GB.
+ */
+public class ZipRawWriter implements Closeable {
+    private final static int LOCAL_FILE_HEADER = 0x04034b50;
+    private final static int DATA_DESCRIPTOR = 0x08074b50;
+    private final static int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private final static int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private final static int VERSION = 20;
+    private final static long MAX_SIZE = 0xFFFFFFFFL;
+
+    private final CountingOutput out;
+    private final List<Entry> written = new ArrayList<>();
+    private boolean entryOpen;
+    private boolean closed;
+
+    public ZipRawWriter(OutputStream output) {
+        this.out = new CountingOutput(new BufferedOutputStream(output, 8192));
+    }
+
+    /**
+     * Copy the entry of the reader without recompressing it.
+     */
+    public void copy(ZipRawReader reader, ZipRawEntry entry) throws IOException {
+        checkIdle();
+        Entry e = new Entry(entry.name, entry.method, entry.dosTime, entry.flags & ~ZipRawEntry.FLAG_DATA_DESCRIPTOR);
+        e.crc = entry.crc;
+        e.compressedSize = entry.compressedSize;
+        e.size = entry.size;
+        writeLocalHeader(e);
+        try (InputStream raw = reader.getRawInputStream(entry)) {
+            if (IOUtils.copyLarge(raw, out) != entry.compressedSize) {
+                throw new ZipException("unexpected size of " + entry.name);
+            }
+        }
+        written.add(e);
+    }
+
+    /**
+     * Write the content uncompressed.
+     */
+    public void putStored(String name, byte[] content) throws IOException {
+        checkIdle();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        Entry e = new Entry(name, ZipEntry.STORED, dosTime(), 0);
+        e.crc = crc.getValue();
+        e.compressedSize = content.length;
+        e.size = content.length;
+        writeLocalHeader(e);
+        out.write(content);
+        written.add(e);
+    }
+
+    /**
+     * Write the file uncompressed, it is read twice as the checksum is part of the header.
+     */
+    public void putStored(String name, File file) throws IOException {
+        checkIdle();
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        try (InputStream input = new FileInputStream(file)) {
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        Entry e = new Entry(name, ZipEntry.STORED, dosTime(), 0);
+        e.crc = crc.getValue();
+        e.compressedSize = file.length();
+        e.size = file.length();
+        writeLocalHeader(e);
+        try (InputStream input = new FileInputStream(file)) {
+            if (IOUtils.copyLarge(input, out) != e.size) {
+                throw new ZipException("file changed while writing " + name);
+            }
+        }
+        written.add(e);
+    }
+
+    /**
+     * @return the stream to write the content of a deflated entry to, closing it finishes the entry
+     */
+    public OutputStream putDeflated(String name) throws IOException {
+        checkIdle();
+        Entry e = new Entry(name, ZipEntry.DEFLATED, dosTime(), ZipRawEntry.FLAG_DATA_DESCRIPTOR);
+        writeLocalHeader(e);
+        entryOpen = true;
+        long start = out.count;
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        DeflaterOutputStream deflating = new DeflaterOutputStream(CloseShieldOutputStream.wrap(out), deflater, 8192);
+        return new FilterOutputStream(deflating) {
+            private long size;
+            private boolean finished;
+
+            @Override
+            public void write(int b) throws IOException {
+                deflating.write(b);
+                crc.update(b);
+                size++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                deflating.write(b, off, len);
+                crc.update(b, off, len);
+                size += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                try {
+                    deflating.finish();
+                } finally {
+                    deflater.end();
+                }
+                e.crc = crc.getValue();
+                e.size = size;
+                e.compressedSize = ZipRawWriter.this.out.count - start;
+                ByteBuffer descriptor = buffer(16);
+                descriptor.putInt(DATA_DESCRIPTOR);
+                descriptor.putInt((int) e.crc);
+                descriptor.putInt((int) checkSize(e.compressedSize));
+                descriptor.putInt((int) checkSize(e.size));
+                ZipRawWriter.this.out.write(descriptor.array());
+                written.add(e);
+                entryOpen = false;
+            }
+        };
+    }
+
+    /**
+     * Write the central directory and close the output.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (entryOpen) {
+                throw new ZipException("entry not closed");
+            }
+            if (written.size() >= 0xFFFF) {
+                throw new ZipException("too many entries, zip64 is not supported");
+            }
+            long cdOffset = checkSize(out.count);
+            for (Entry e : written) {
+                ByteBuffer header = buffer(46);
+                header.putInt(CENTRAL_DIRECTORY_HEADER);
+                header.putShort((short) VERSION);
+                header.putShort((short) VERSION);
+                header.putShort((short) e.flags);
+                header.putShort((short) e.method);
+                header.putInt((int) e.dosTime);
+                header.putInt((int) e.crc);
+                header.putInt((int) checkSize(e.compressedSize));
+                header.putInt((int) checkSize(e.size));
+                header.putShort((short) e.name.length);
+                header.putShort((short) 0);
+                header.putShort((short) 0);
+                header.putShort((short) 0);
+                header.putShort((short) 0);
+                header.putInt(0);
+                header.putInt((int) checkSize(e.localHeaderOffset));
+                out.write(header.array());
+                out.write(e.name);
+            }
+            long cdSize = checkSize(out.count - cdOffset);
+            ByteBuffer end = buffer(22);
+            end.putInt(END_OF_CENTRAL_DIRECTORY);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) written.size());
+            end.putShort((short) written.size());
+            end.putInt((int) cdSize);
+            end.putInt((int) cdOffset);
+            end.putShort((short) 0);
+            out.write(end.array());
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeLocalHeader(Entry e) throws IOException {
+        e.localHeaderOffset = out.count;
+        boolean descriptor = (e.flags & ZipRawEntry.FLAG_DATA_DESCRIPTOR) != 0;
+        ByteBuffer header = buffer(30);
+        header.putInt(LOCAL_FILE_HEADER);
+        header.putShort((short) VERSION);
+        header.putShort((short) e.flags);
+        header.putShort((short) e.method);
+        header.putInt((int) e.dosTime);
+        header.putInt(descriptor ? 0 : (int) e.crc);
+        header.putInt(descriptor ? 0 : (int) checkSize(e.compressedSize));
+        header.putInt(descriptor ? 0 : (int) checkSize(e.size));
+        header.putShort((short) e.name.length);
+        header.putShort((short) 0);
+        out.write(header.array());
+        out.write(e.name);
+    }
+
+    private void checkIdle() throws ZipException {
+        if (closed) {
+            throw new ZipException("zip already closed");
+        }
+        if (entryOpen) {
+            throw new ZipException("the previous entry is not closed");
+        }
+    }
+
+    private static long checkSize(long size) throws ZipException {
+        if (size > MAX_SIZE) {
+            throw new ZipException("entry too large, zip64 is not supported");
+        }
+        return size;
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the current time in the MS-DOS format of the zip headers
+     */
+    private static long dosTime() {
+        LocalDateTime d = LocalDateTime.now();
+        if (d.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (d.getYear() - 1980) << 25) | (d.getMonthValue() << 21) | (d.getDayOfMonth() << 16)
+                | (d.getHour() << 11) | (d.getMinute() << 5) | (d.getSecond() >> 1);
+    }
+
+    private static class Entry {
+        final byte[] name;
+        final int method;
+        final long dosTime;
+        final int flags;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+
+        Entry(String name, int method, long dosTime, int flags) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.method = method;
+            this.dosTime = dosTime;
+            //the names are written as UTF-8, flagged only if needed to keep entries like the ODF mimetype plain
+            if (name.length() == this.name.length) {
+                this.flags = flags & ~ZipRawEntry.FLAG_UTF8;
+            } else {
+                this.flags = flags | ZipRawEntry.FLAG_UTF8;
+            }
+        }
+    }
+
+    private static class CountingOutput extends FilterOutputStream {
+        long count;
+
+        CountingOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.proxeus.xml;
+
+/**
+ * XMLConfig selects the StAX implementation used to read and write the template XML.
+ * These are the defaults that are set here, they are going to be overwritten by the config, if defined.
+ */
+public class XMLConfig {
+    /**
+     * jdk, woodstox, aalto or default. default uses the lookup of javax.xml.stream, woodstox and aalto need their jar on the classpath.
+     **/
+    public String implementation = XMLFactories.JDK;
+}
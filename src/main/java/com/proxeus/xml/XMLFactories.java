@@ -0,0 +1,123 @@
+package com.proxeus.xml;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+/**
+ * XMLFactories holds the StAX factories shared by all requests.
+ * The lookup and configuration of a factory is expensive compared to creating a reader or writer with it.
+ * Once configured, the factories are only used to create readers, writers and events, which is thread safe.
+ */
+public class XMLFactories {
+    public final static String JDK = "jdk";
+    public final static String WOODSTOX = "woodstox";
+    public final static String AALTO = "aalto";
+    public final static String DEFAULT = "default";
+
+    //template code in the characters like {% if a < b %} must reach the template engine unescaped
+    private final static String ESCAPE_CHARACTERS = "escapeCharacters";
+
+    private static Logger log = LogManager.getLogger(XMLFactories.class);
+    private static volatile XMLFactories instance;
+
+    private final String implementation;
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory;
+    private final XMLEventFactory eventFactory;
+
+    private XMLFactories(String implementation) throws Exception {
+        this.implementation = implementation;
+        switch (implementation) {
+            case JDK:
+                inputFactory = XMLInputFactory.newDefaultFactory();
+                outputFactory = XMLOutputFactory.newDefaultFactory();
+                eventFactory = XMLEventFactory.newDefaultFactory();
+                break;
+            case WOODSTOX:
+                inputFactory = newInstance("com.ctc.wstx.stax.WstxInputFactory");
+                outputFactory = newInstance("com.ctc.wstx.stax.WstxOutputFactory");
+                eventFactory = newInstance("com.ctc.wstx.stax.WstxEventFactory");
+                break;
+            case AALTO:
+                inputFactory = newInstance("com.fasterxml.aalto.stax.InputFactoryImpl");
+                outputFactory = newInstance("com.fasterxml.aalto.stax.OutputFactoryImpl");
+                eventFactory = newInstance("com.fasterxml.aalto.stax.EventFactoryImpl");
+                break;
+            case DEFAULT:
+                inputFactory = XMLInputFactory.newInstance();
+                outputFactory = XMLOutputFactory.newInstance();
+                eventFactory = XMLEventFactory.newInstance();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown StAX implementation " + implementation);
+        }
+        if (outputFactory.isPropertySupported(ESCAPE_CHARACTERS)) {
+            outputFactory.setProperty(ESCAPE_CHARACTERS, false);
+        } else {
+            log.warn("{} doesn't support {}, the characters of the template are going to be escaped", outputFactory.getClass().getName(), ESCAPE_CHARACTERS);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T newInstance(String className) throws Exception {
+        return (T) Class.forName(className).getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Switch the implementation of the shared factories. Falls back to the JDK on an unknown or unavailable implementation.
+     */
+    public static void configure(XMLConfig config) {
+        String implementation = config == null || config.implementation == null ? JDK : config.implementation.trim().toLowerCase();
+        try {
+            instance = new XMLFactories(implementation);
+        } catch (Exception e) {
+            log.error("couldn't load the StAX implementation " + implementation + ", falling back to " + JDK, e);
+            instance = jdk();
+        }
+        log.info("StAX implementation: {}", instance.implementation);
+    }
+
+    private static XMLFactories get() {
+        XMLFactories factories = instance;
+        if (factories == null) {
+            synchronized (XMLFactories.class) {
+                if (instance == null) {
+                    instance = jdk();
+                }
+                factories = instance;
+            }
+        }
+        return factories;
+    }
+
+    private static XMLFactories jdk() {
+        try {
+            return new XMLFactories(JDK);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static XMLInputFactory input() {
+        return get().inputFactory;
+    }
+
+    /**
+     * @return output factory not escaping the characters
+     */
+    public static XMLOutputFactory output() {
+        return get().outputFactory;
+    }
+
+    public static XMLEventFactory events() {
+        return get().eventFactory;
+    }
+
+    public static String implementation() {
+        return get().implementation;
+    }
+}
@@ -3,8 +3,9 @@ package com.proxeus.xml.processor;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
 
-public class NoOpEventProcessor implements XMLEventProcessor {
+public class NoOpEventProcessor implements XMLEventStreamProcessor {
     @Override
     public void process(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
         if(reader == null || writer == null){
@@ -14,4 +15,9 @@ public class NoOpEventProcessor implements XMLEventProcessor {
             writer.add(reader.nextEvent());
         }
     }
+
+    @Override
+    public void process(XMLEvent event, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
+        writer.add(event);
+    }
 }
@@ -0,0 +1,72 @@
+package com.proxeus.xml.processor;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * XMLEventListReader reads the events of a list without modifying it.
+ * Unlike XMLEventBuffer, the same list can be read by multiple readers at the same time.
+ */
+public class XMLEventListReader implements XMLEventReader {
+    private List<XMLEvent> events;
+    private int index = 0;
+
+    public XMLEventListReader(List<XMLEvent> events) {
+        this.events = events;
+    }
+
+    @Override
+    public XMLEvent nextEvent() throws XMLStreamException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return events.get(index++);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < events.size();
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return events.get(index++);
+    }
+
+    @Override
+    public XMLEvent peek() throws XMLStreamException {
+        if (!hasNext()) {
+            return null;
+        }
+        return events.get(index);
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        // Not implemented
+        return "";
+    }
+
+    @Override
+    public XMLEvent nextTag() throws XMLStreamException {
+        // Not implemented
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) throws IllegalArgumentException {
+        // Not implemented
+        return null;
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        events = null;
+    }
+}
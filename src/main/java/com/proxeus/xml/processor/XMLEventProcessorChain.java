@@ -3,13 +3,18 @@ package com.proxeus.xml.processor;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * XMLEventProcessorChain passes the events through its processors in the given order.
+ * Stream processors are pulled lazily by the next one, the last processor writes directly to the output.
+ * The output of any other processor is buffered completely before the next one starts.
+ */
 public class XMLEventProcessorChain implements XMLEventProcessor {
 
-    private List<XMLEventProcessor> processors = new LinkedList<>();
+    private List<XMLEventProcessor> processors = new ArrayList<>();
 
     public XMLEventProcessorChain(XMLEventProcessor... processors) {
         this.processors.addAll(Arrays.asList(processors));
@@ -25,20 +30,19 @@ public class XMLEventProcessorChain implements XMLEventProcessor {
     @Override
     public void process(XMLEventReader input, XMLEventWriter output) throws XMLStreamException, IllegalStateException {
         try {
-
-            XMLEventReadWriter in = new XMLEventBuffer(input);
-            XMLEventReadWriter out = null;
-
-            for (XMLEventProcessor processor : processors) {
-                out = new XMLEventBuffer();
-                processor.process(in, out);
-                in = out;
+            XMLEventReader in = input;
+            int last = processors.size() - 1;
+            for (int i = 0; i < last; i++) {
+                XMLEventProcessor processor = processors.get(i);
+                if (processor instanceof XMLEventStreamProcessor) {
+                    in = new XMLEventProcessorReader(in, (XMLEventStreamProcessor) processor);
+                } else {
+                    XMLEventBuffer out = new XMLEventBuffer();
+                    processor.process(in, out);
+                    in = out;
+                }
             }
-
-            while (out.hasNext()) {
-                output.add(out.nextEvent());
-            }
-
+            processors.get(last).process(in, output);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -0,0 +1,91 @@
+package com.proxeus.xml.processor;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import java.util.NoSuchElementException;
+
+/**
+ * XMLEventProcessorReader reads the output of a processor on demand.
+ * An event of the source is only read and processed when the output of the previous one has been consumed,
+ * it holds no more events than the processor writes for a single one.
+ */
+public class XMLEventProcessorReader implements XMLEventReader {
+    private XMLEventReader source;
+    private XMLEventStreamProcessor processor;
+    private XMLEventBuffer output = new XMLEventBuffer();
+    private boolean finished = false;
+
+    public XMLEventProcessorReader(XMLEventReader source, XMLEventStreamProcessor processor) {
+        this.source = source;
+        this.processor = processor;
+    }
+
+    private boolean fill() {
+        try {
+            while (!output.hasNext() && !finished) {
+                if (source.hasNext()) {
+                    processor.process(source.nextEvent(), output);
+                } else {
+                    finished = true;
+                    processor.finish(output);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+        return output.hasNext();
+    }
+
+    @Override
+    public XMLEvent nextEvent() throws XMLStreamException {
+        if (!fill()) {
+            throw new NoSuchElementException();
+        }
+        return output.nextEvent();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return fill();
+    }
+
+    @Override
+    public Object next() {
+        if (!fill()) {
+            throw new NoSuchElementException();
+        }
+        return output.next();
+    }
+
+    @Override
+    public XMLEvent peek() throws XMLStreamException {
+        if (!fill()) {
+            return null;
+        }
+        return output.peek();
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        // Not implemented
+        return "";
+    }
+
+    @Override
+    public XMLEvent nextTag() throws XMLStreamException {
+        // Not implemented
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) throws IllegalArgumentException {
+        // Not implemented
+        return null;
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        output.close();
+    }
+}
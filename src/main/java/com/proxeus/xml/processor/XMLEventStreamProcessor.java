@@ -0,0 +1,30 @@
+package com.proxeus.xml.processor;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * XMLEventStreamProcessor processes one event at a time. This allows XMLEventProcessorChain to pull the events through
+ * its processors lazily instead of materializing the whole document between them.
+ * Processors that need to look ahead keep only the events they need and write them when they are done with them.
+ */
+public interface XMLEventStreamProcessor extends XMLEventProcessor {
+
+    void process(XMLEvent event, XMLEventWriter writer) throws XMLStreamException, IllegalStateException;
+
+    /**
+     * Called once after the last event to write what is still held back.
+     */
+    default void finish(XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
+    }
+
+    @Override
+    default void process(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
+        while (reader.hasNext()) {
+            process(reader.nextEvent(), writer);
+        }
+        finish(writer);
+    }
+}
@@ -1,38 +1,34 @@
 package com.proxeus.xml.template;
 
-import com.proxeus.xml.processor.XMLEventProcessor;
+import com.proxeus.xml.XMLFactories;
+import com.proxeus.xml.processor.XMLEventStreamProcessor;
 
 import javax.xml.stream.XMLEventFactory;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 
-public class CleanTemplateExtractorMarkProcessor implements XMLEventProcessor {
-    private XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+public class CleanTemplateExtractorMarkProcessor implements XMLEventStreamProcessor {
+    private XMLEventFactory eventFactory = XMLFactories.events();
 
     @Override
-    public void process(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
-        nextEvent:
-        while (reader.hasNext()) {
-            XMLEvent event = reader.nextEvent();
-            switch (event.getEventType()) {
-                case XMLEvent.START_DOCUMENT:
-                    // writer.add(event);
-                    writer.add(eventFactory.createStartDocument("UTF-8", "1.0"));
-                    writer.add(eventFactory.createCharacters(System.lineSeparator()));
-                    break;
-                case XMLEvent.START_ELEMENT:
-                    StartElement s = event.asStartElement();
-                    if (TemplateExtractor.IsMarked(s)){
-                        s = TemplateExtractor.removeMark(s);
-                    }
-                    writer.add(s);
-                    break;
-                default:
-                    writer.add(event);
-            }
+    public void process(XMLEvent event, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
+        switch (event.getEventType()) {
+            case XMLEvent.START_DOCUMENT:
+                // writer.add(event);
+                writer.add(eventFactory.createStartDocument("UTF-8", "1.0"));
+                writer.add(eventFactory.createCharacters(System.lineSeparator()));
+                break;
+            case XMLEvent.START_ELEMENT:
+                StartElement s = event.asStartElement();
+                if (TemplateExtractor.IsMarked(s)){
+                    s = TemplateExtractor.removeMark(s);
+                }
+                writer.add(s);
+                break;
+            default:
+                writer.add(event);
         }
     }
 
@@ -1,6 +1,13 @@
 package com.proxeus.xml.template;
 
+import com.proxeus.util.concurrent.Pipe;
+import com.proxeus.util.concurrent.SharedExecutors;
+import com.proxeus.xml.XMLFactories;
+import com.proxeus.xml.processor.NoOpEventProcessor;
 import com.proxeus.xml.processor.XMLEventProcessor;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
@@ -10,10 +17,13 @@ import javax.xml.stream.events.StartDocument;
 import javax.xml.stream.events.XMLEvent;
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -21,15 +31,28 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 public class DefaultTemplateHandler implements TemplateHandler {
 
     private Logger log = LogManager.getLogger(this.getClass());
+    private final static int RENDER_PIPE_SIZE = 64 * 1024;
     private TemplateXMLEventWriter events;
+    private XMLEventProcessor extractor;
     private XMLEventProcessor preProcessor;
     private XMLEventProcessor postProcessor;
     private TemplateRenderer renderer;
 
-    private XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+    private XMLEventFactory eventFactory = XMLFactories.events();
 
     public DefaultTemplateHandler(XMLEventProcessor preProcessor, TemplateRenderer renderer, XMLEventProcessor postProcessor) {
+        this(new NoOpEventProcessor(), preProcessor, renderer, postProcessor);
+    }
+
+    /**
+     * @param extractor     data independent processing, its result is what {@link #prepare(InputStream)} returns
+     * @param preProcessor  request specific processing of the prepared events before rendering
+     * @param renderer      template engine
+     * @param postProcessor processing of the rendered XML
+     */
+    public DefaultTemplateHandler(XMLEventProcessor extractor, XMLEventProcessor preProcessor, TemplateRenderer renderer, XMLEventProcessor postProcessor) {
         this.events = new TemplateXMLEventWriter();
+        this.extractor = extractor;
         this.preProcessor = preProcessor;
         this.renderer = renderer;
         this.postProcessor = postProcessor;
@@ -37,75 +60,112 @@ public class DefaultTemplateHandler implements TemplateHandler {
 
     @Override
     public void process(InputStream input) throws Exception {
-        // First, create a new XMLInputFactory
-        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-        // Setup a new eventReader
+        process(prepare(input));
+    }
+
+    @Override
+    public PreparedTemplate prepare(InputStream input) throws Exception {
+        CountingInputStream countingInput = new CountingInputStream(input);
+        TemplateXMLEventWriter extracted = new TemplateXMLEventWriter();
         try {
-            XMLEventReader reader = inputFactory.createXMLEventReader(input);
-            this.preProcessor.process(reader, events);
+            XMLEventReader reader = XMLFactories.input().createXMLEventReader(countingInput);
+            this.extractor.process(reader, extracted);
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return new PreparedTemplate(extracted.getEvents(), countingInput.getByteCount());
     }
 
     @Override
-    public void render(OutputStream output, Map<String, Object> data) throws Exception {
-        ByteArrayOutputStream xmlOutput = new ByteArrayOutputStream();
+    public void process(PreparedTemplate prepared) throws Exception {
+        try {
+            this.preProcessor.process(prepared.reader(), events);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-        XMLOutputFactory outputXMLFactory = XMLOutputFactory.newInstance();
-        outputXMLFactory.setProperty("escapeCharacters", false);
+    @Override
+    public void render(OutputStream output, Map<String, Object> data) throws Exception {
+        SourceOutputStream xmlOutput = new SourceOutputStream();
 
-        XMLEventWriter writer = outputXMLFactory.createXMLEventWriter(xmlOutput);
-        Charset charset = UTF_8;
+        //written in the charset it declares, the renderer decodes it with that one, whatever the default charset is
+        Charset charset = declaredCharset();
+        XMLEventWriter writer = XMLFactories.output().createXMLEventWriter(xmlOutput, charset.name());
         Iterator<XMLEvent> it = events.interator();
         while (it.hasNext()) {
             XMLEvent e = it.next();
             if (e.isStartDocument()) {
-                StartDocument sd = (StartDocument) e;
-                String strCharset = sd.getCharacterEncodingScheme();
-                charset = Charset.forName(strCharset);
-                XMLEvent event_out = eventFactory.createStartDocument(strCharset, "1.0");
+                XMLEvent event_out = eventFactory.createStartDocument(charset.name(), "1.0");
                 writer.add(event_out);
             } else {
                 writer.add(e);
             }
         }
+        writer.flush();
 
         if (data == null) {
             data = Collections.emptyMap();
         }
-        InputStream renderInput = new ByteArrayInputStream(xmlOutput.toByteArray());
-        ByteArrayOutputStream renderOutput = new ByteArrayOutputStream();
-        this.renderer.render(renderInput, renderOutput, data, charset);
+        Map<String, Object> renderData = data;
+        Charset renderCharset = charset;
+        InputStream renderInput = xmlOutput.toInputStream();
+
+        //the rendered XML is post processed while it is being rendered instead of buffering all of it
+        Pipe pipe = new Pipe(RENDER_PIPE_SIZE);
+        InputStream renderOutput = pipe.input();
+        Future<?> rendering = SharedExecutors.pipes().submit(() -> {
+            try (OutputStream out = pipe.output()) {
+                this.renderer.render(renderInput, out, renderData, renderCharset);
+            }
+            return null;
+        });
 
-        InputStream input = new ByteArrayInputStream(renderOutput.toByteArray());
-        postProcess(input,output);
+        Exception postProcessException = null;
+        try {
+            //the parser closes its input at the end of the document, the rest is consumed below
+            postProcess(CloseShieldInputStream.wrap(renderOutput), output);
+        } catch (Exception e) {
+            postProcessException = e;
+        } finally {
+            //let the renderer finish even if the post processing stopped early
+            IOUtils.consume(renderOutput);
+            renderOutput.close();
+        }
+        try {
+            rendering.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        if (postProcessException != null) {
+            throw postProcessException;
+        }
     }
 
-    private void postProcess(InputStream input, OutputStream output) throws Exception {
-        TemplateXMLEventWriter eventWriter = new TemplateXMLEventWriter();
-        // First, create a new XMLInputFactory
-        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-        // Setup a new eventReader
-        XMLEventReader reader = inputFactory.createXMLEventReader(input);
-        this.postProcessor.process(reader, eventWriter);
-
-        XMLOutputFactory outputXMLFactory = XMLOutputFactory.newInstance();
-        outputXMLFactory.setProperty("escapeCharacters", false);
-
-        XMLEventWriter writer = outputXMLFactory.createXMLEventWriter(output);
-
-        Iterator<XMLEvent> it = eventWriter.interator();
+    /**
+     * @return the encoding of the start document, UTF-8 if there is none
+     */
+    private Charset declaredCharset() {
+        Iterator<XMLEvent> it = events.interator();
         while (it.hasNext()) {
             XMLEvent e = it.next();
             if (e.isStartDocument()) {
-                XMLEvent event_out = eventFactory.createStartDocument("UTF-8", "1.0");
-                writer.add(event_out);
-                writer.add(eventFactory.createCharacters(System.lineSeparator()));
-            } else {
-                writer.add(e);
+                String encoding = ((StartDocument) e).getCharacterEncodingScheme();
+                return encoding == null ? UTF_8 : Charset.forName(encoding);
             }
         }
+        return UTF_8;
+    }
+
+    private void postProcess(InputStream input, OutputStream output) throws Exception {
+        XMLEventReader reader = XMLFactories.input().createXMLEventReader(input);
+        //OutputXMLEventWriter declares UTF-8
+        XMLEventWriter writer = XMLFactories.output().createXMLEventWriter(output, UTF_8.name());
+        this.postProcessor.process(reader, new OutputXMLEventWriter(writer));
+        writer.flush();
     }
 
     @Override
@@ -123,13 +183,93 @@ public class DefaultTemplateHandler implements TemplateHandler {
 
     }
 
+    /**
+     * Exposes the written bytes as input without copying them.
+     */
+    private static class SourceOutputStream extends ByteArrayOutputStream {
+        SourceOutputStream() {
+            super(8192);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * Writes the post processed events directly to the output with a fixed UTF-8 declaration.
+     */
+    private class OutputXMLEventWriter implements XMLEventWriter {
+        private XMLEventWriter writer;
+
+        OutputXMLEventWriter(XMLEventWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void add(XMLEvent event) throws XMLStreamException {
+            if (event.isStartDocument()) {
+                writer.add(eventFactory.createStartDocument("UTF-8", "1.0"));
+                writer.add(eventFactory.createCharacters(System.lineSeparator()));
+            } else {
+                writer.add(event);
+            }
+        }
+
+        @Override
+        public void add(XMLEventReader reader) throws XMLStreamException {
+            while (reader.hasNext()) {
+                add(reader.nextEvent());
+            }
+        }
+
+        @Override
+        public void flush() throws XMLStreamException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws XMLStreamException {
+            writer.close();
+        }
+
+        @Override
+        public String getPrefix(String uri) throws XMLStreamException {
+            return writer.getPrefix(uri);
+        }
+
+        @Override
+        public void setPrefix(String prefix, String uri) throws XMLStreamException {
+            writer.setPrefix(prefix, uri);
+        }
+
+        @Override
+        public void setDefaultNamespace(String uri) throws XMLStreamException {
+            writer.setDefaultNamespace(uri);
+        }
+
+        @Override
+        public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+            writer.setNamespaceContext(context);
+        }
+
+        @Override
+        public NamespaceContext getNamespaceContext() {
+            return writer.getNamespaceContext();
+        }
+    }
+
     private class TemplateXMLEventWriter implements XMLEventWriter {
-        private LinkedList<XMLEvent> events = new LinkedList<>();
+        private List<XMLEvent> events = new ArrayList<>();
 
         public Iterator<XMLEvent> interator() {
             return events.iterator();
         }
 
+        public List<XMLEvent> getEvents() {
+            return events;
+        }
+
         @Override
         public void flush() throws XMLStreamException {
 
@@ -0,0 +1,33 @@
+package com.proxeus.xml.template;
+
+import com.proxeus.xml.processor.XMLEventListReader;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.XMLEvent;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PreparedTemplate holds the events of an XML entry after the template extraction and before any data dependent processing.
+ * It is read only and therefore safe to be shared between requests rendering the same template.
+ */
+public class PreparedTemplate {
+    private final List<XMLEvent> events;
+    private final long size;
+
+    public PreparedTemplate(List<XMLEvent> events, long size) {
+        this.events = Collections.unmodifiableList(events);
+        this.size = size;
+    }
+
+    public XMLEventReader reader() {
+        return new XMLEventListReader(events);
+    }
+
+    /**
+     * @return size in bytes of the XML this template was prepared from
+     */
+    public long getSize() {
+        return size;
+    }
+}
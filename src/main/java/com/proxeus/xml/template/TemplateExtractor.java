@@ -1,6 +1,7 @@
 package com.proxeus.xml.template;
 
-import com.proxeus.xml.processor.XMLEventProcessor;
+import com.proxeus.xml.XMLFactories;
+import com.proxeus.xml.processor.XMLEventStreamProcessor;
 import com.proxeus.xml.template.parser.ParserState;
 import com.proxeus.xml.template.parser.TagType;
 import com.proxeus.xml.template.parser.TemplateParser;
@@ -9,7 +10,6 @@ import org.apache.logging.log4j.LogManager;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventFactory;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.*;
@@ -74,7 +74,7 @@ import static com.proxeus.xml.template.parser.TagType.NONE;
  * Any element that is added or moved around is tagged with a "_proxeus" attribute.  This is useful for downstream
  * clean up processing.
  */
-public class TemplateExtractor implements XMLEventProcessor {
+public class TemplateExtractor implements XMLEventStreamProcessor {
 
     static public final QName PROXEUS_MARKER_ATTRIBUTE_NAME = new QName("_proxeus");
     static private final String PROXEUS_MARKER_ATTRIBUTE_VALUE = "template";
@@ -87,7 +87,7 @@ public class TemplateExtractor implements XMLEventProcessor {
     private LinkedList<ExtractorXMLEvent> resultQueue;
 
 
-    static private XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+    static private XMLEventFactory eventFactory = XMLFactories.events();
 
     public TemplateExtractor(TemplateParser parser) {
         this.parser = parser;
@@ -101,16 +101,20 @@ public class TemplateExtractor implements XMLEventProcessor {
     }
 
     @Override
-    @SuppressWarnings({"unchecked", "null"})
-    public void process(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
-        while (reader.hasNext()) {
-            XMLEvent event = reader.nextEvent();
-            processEvent(event);
-        }
+    public void process(XMLEvent event, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
+        processEvent(event);
+    }
 
+    /**
+     * Start elements already in the result can be marked or split until the end of the document,
+     * that's why the result is only written when all events have been processed.
+     */
+    @Override
+    public void finish(XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
         for (ExtractorXMLEvent event : resultQueue) {
             writer.add(event.getEvent());
         }
+        resultQueue.clear();
     }
 
     public static boolean IsMarked(StartElement s) {
@@ -10,6 +10,13 @@ import java.util.Map;
 public interface TemplateHandler {
     void process(InputStream input) throws Exception;
 
+    /**
+     * Run the data independent template extraction only, the result can be shared with other handlers of the same template.
+     */
+    PreparedTemplate prepare(InputStream input) throws Exception;
+
+    void process(PreparedTemplate prepared) throws Exception;
+
     void render(OutputStream output, Map<String,Object> data) throws Exception;
 
     Charset getCharset();
@@ -2,4 +2,11 @@ package com.proxeus.xml.template;
 
 public interface TemplateVarParserFactory {
     TemplateVarParser newInstance();
+
+    /**
+     * @return a scanner feeding the var parser or null if there is none, the vars are found by the XML event processors then
+     */
+    default TemplateVarScanner newScanner(TemplateVarParser varParser) {
+        return null;
+    }
 }
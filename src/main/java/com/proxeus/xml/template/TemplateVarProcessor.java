@@ -1,16 +1,15 @@
 package com.proxeus.xml.template;
 
-import com.proxeus.xml.processor.XMLEventProcessor;
+import com.proxeus.xml.processor.XMLEventStreamProcessor;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.XMLEvent;
 
-public class TemplateVarProcessor implements XMLEventProcessor {
+public class TemplateVarProcessor implements XMLEventStreamProcessor {
 
     private Logger log = LogManager.getLogger(this.getClass());
     private TemplateVarParser varParser;
@@ -20,18 +19,14 @@ public class TemplateVarProcessor implements XMLEventProcessor {
     }
 
     @Override
-    public void process(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
-        while (reader.hasNext()) {
-            XMLEvent event = reader.nextEvent();
+    public void process(XMLEvent event, XMLEventWriter writer) throws XMLStreamException, IllegalStateException {
+        writer.add(event);
 
-            writer.add(event);
-
-            if(!event.isCharacters()){
-                continue;
-            }
-
-            Characters c = event.asCharacters();
-            varParser.parse(c.getData());
+        if(!event.isCharacters()){
+            return;
         }
+
+        Characters c = event.asCharacters();
+        varParser.parse(c.getData());
     }
 }
@@ -0,0 +1,22 @@
+package com.proxeus.xml.template;
+
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * TemplateVarScanner finds the vars of a template straight in the XML bytes, without the XML event pipeline.
+ * The code islands are reassembled across the XML elements they are split by, like the extractor does, and passed to the var parser.
+ */
+public interface TemplateVarScanner {
+    /**
+     * @param element   qualified name of the element like draw:frame
+     * @param attribute qualified name of the attribute like draw:name
+     * @param handler   called with the value of the attribute for every element of this name
+     */
+    void onAttribute(String element, String attribute, Consumer<String> handler);
+
+    /**
+     * @param xml UTF-8 encoded, it is not closed
+     */
+    void scan(InputStream xml) throws Exception;
+}
@@ -239,7 +239,7 @@ public class JTwigParser implements TemplateParser, TemplateParserFactory {
         }
     }
 
-    private char cleanQuote(char c) {
+    static char cleanQuote(char c) {
         if ((int) c == 8216 || (int) c == 8217 || (int) c == 8218) {
             c = '\'';
         }
@@ -13,7 +13,15 @@ import java.util.Map;
 public class JTwigRenderer implements TemplateRenderer {
     private Logger log = LogManager.getLogger(this.getClass());
 
-    private MyJTwigCompiler compiler = new MyJTwigCompiler();
+    private MyJTwigCompiler compiler;
+
+    public JTwigRenderer() {
+        this(new MyJTwigCompiler());
+    }
+
+    public JTwigRenderer(MyJTwigCompiler compiler) {
+        this.compiler = compiler;
+    }
 
     @Override
     public void render(InputStream input, OutputStream output, Map<String, Object> data, Charset charset) throws Exception {
@@ -6,13 +6,23 @@ import com.proxeus.xml.processor.XMLEventProcessorChain;
 import com.proxeus.xml.template.*;
 
 public class JTwigTemplateHandlerFactory implements TemplateHandlerFactory {
+    //shared by all handlers, it is thread safe and holds the cache of the parsed templates
+    private MyJTwigCompiler compiler;
+
+    public JTwigTemplateHandlerFactory() {
+        this(new MyJTwigCompiler());
+    }
+
+    public JTwigTemplateHandlerFactory(MyJTwigCompiler compiler) {
+        this.compiler = compiler;
+    }
 
     @Override
     public TemplateHandler newInstance(XMLEventProcessor preRendering, XMLEventProcessor postRendering){
-        XMLEventProcessorChain pre = new XMLEventProcessorChain(new TemplateExtractor(new JTwigParser()));
-        pre.addProcessor(preRendering);
+        XMLEventProcessorChain extractor = new XMLEventProcessorChain(new TemplateExtractor(new JTwigParser()));
+        XMLEventProcessorChain pre = new XMLEventProcessorChain(preRendering);
 
         XMLEventProcessorChain post = new XMLEventProcessorChain(postRendering, new CleanTemplateExtractorMarkProcessor());
-        return new DefaultTemplateHandler(pre, new JTwigRenderer(), post);
+        return new DefaultTemplateHandler(extractor, pre, new JTwigRenderer(compiler), post);
     }
 }
@@ -2,10 +2,16 @@ package com.proxeus.xml.template.jtwig;
 
 import com.proxeus.xml.template.TemplateVarParser;
 import com.proxeus.xml.template.TemplateVarParserFactory;
+import com.proxeus.xml.template.TemplateVarScanner;
 
 public class JTwigTemplateVarParserFactory implements TemplateVarParserFactory {
     @Override
     public TemplateVarParser newInstance() {
         return new JTwigVarParser("");
     }
+
+    @Override
+    public TemplateVarScanner newScanner(TemplateVarParser varParser) {
+        return new JTwigVarScanner(varParser);
+    }
 }
@@ -0,0 +1,551 @@
+package com.proxeus.xml.template.jtwig;
+
+import com.proxeus.xml.template.TemplateVarParser;
+import com.proxeus.xml.template.TemplateVarScanner;
+import com.proxeus.xml.template.parser.ParserState;
+import com.proxeus.xml.template.parser.TagType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.proxeus.xml.template.parser.ParserState.*;
+import static com.proxeus.xml.template.parser.TagType.*;
+
+/**
+ * JTwigVarScanner finds the vars on the raw UTF-8 bytes of an XML entry, no XML events or strings are created for the markup and the text.
+ * The characters of the text nodes go through the same states as in {@link JTwigParser}. The markup between them is dropped,
+ * so an island split into several text:span elements reaches the var parser as one string like the extractor delivers it.
+ * <p>
+ * Outside of an island the bytes are skipped until the next '{', '&amp;' or '&lt;'. CDATA sections are text like the XML reader
+ * delivers them, comments, processing instructions and the DOCTYPE are ignored. The XML is not validated.
+ */
+public class JTwigVarScanner implements TemplateVarScanner {
+    private static final int BUFFER = 64 * 1024;
+    //the last bytes of a comment, a processing instruction and a CDATA section
+    private static final int COMMENT_END = '-' << 16 | '-' << 8 | '>';
+    private static final int PI_END = '?' << 8 | '>';
+    private static final int CDATA_END = ']' << 16 | ']' << 8 | '>';
+
+    private final TemplateVarParser varParser;
+    private final List<AttributeHandler> attributeHandlers = new ArrayList<>();
+
+    private InputStream in;
+    private final byte[] buf = new byte[BUFFER];
+    private int pos;
+    private int len;
+    private byte[] name = new byte[64];
+    private byte[] value = new byte[256];
+    //\r\n and a single \r are read as \n like the XML reader does
+    private boolean skipNewLine;
+
+    private ParserState state;
+    private TagType tagType;
+    private boolean ignoreSpace;
+    private char stringDelimiter;
+    private final StringBuilder island = new StringBuilder();
+
+    public JTwigVarScanner(TemplateVarParser varParser) {
+        this.varParser = varParser;
+    }
+
+    @Override
+    public void onAttribute(String element, String attribute, Consumer<String> handler) {
+        attributeHandlers.add(new AttributeHandler(element, attribute, handler));
+    }
+
+    @Override
+    public void scan(InputStream xml) throws Exception {
+        in = xml;
+        pos = 0;
+        len = 0;
+        skipNewLine = false;
+        state = XML;
+        tagType = NONE;
+        ignoreSpace = false;
+        island.setLength(0);
+        try {
+            int b;
+            while ((b = next()) != -1) {
+                if (b == '<') {
+                    skipNewLine = false;
+                    markup();
+                } else if (b == '&') {
+                    skipNewLine = false;
+                    String s = entity();
+                    for (int i = 0; i < s.length(); i++) {
+                        process(s.charAt(i));
+                    }
+                } else {
+                    character(b);
+                }
+            }
+        } finally {
+            in = null;
+        }
+        if (state != XML) {
+            throw new IllegalStateException("Template code island not terminated");
+        }
+    }
+
+    /**
+     * @return the next byte, outside of an island the text up to the next byte that matters is skipped
+     */
+    private int next() throws IOException {
+        if (state == XML) {
+            int i = pos;
+            byte[] b = buf;
+            int l = len;
+            while (i < l) {
+                byte c = b[i];
+                if (c == '<' || c == '&' || c == '{') {
+                    break;
+                }
+                ++i;
+            }
+            pos = i;
+        }
+        return read();
+    }
+
+    private int read() throws IOException {
+        if (pos == len) {
+            len = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (len <= 0) {
+                len = 0;
+                return -1;
+            }
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private void character(int b) throws IOException {
+        int c = codePoint(b);
+        if (skipNewLine) {
+            skipNewLine = false;
+            if (c == '\n') {
+                return;
+            }
+        }
+        if (c == '\r') {
+            skipNewLine = true;
+            c = '\n';
+        }
+        if (Character.isBmpCodePoint(c)) {
+            process((char) c);
+        } else {
+            process(Character.highSurrogate(c));
+            process(Character.lowSurrogate(c));
+        }
+    }
+
+    private int codePoint(int b) throws IOException {
+        if (b < 0x80) {
+            return b;
+        }
+        int count;
+        int c;
+        if ((b & 0xE0) == 0xC0) {
+            count = 1;
+            c = b & 0x1F;
+        } else if ((b & 0xF0) == 0xE0) {
+            count = 2;
+            c = b & 0x0F;
+        } else if ((b & 0xF8) == 0xF0) {
+            count = 3;
+            c = b & 0x07;
+        } else {
+            return 0xFFFD;
+        }
+        while (count-- > 0) {
+            int next = read();
+            if (next == -1) {
+                return 0xFFFD;
+            }
+            if ((next & 0xC0) != 0x80) {
+                //not a continuation byte, it starts the next character
+                --pos;
+                return 0xFFFD;
+            }
+            c = c << 6 | (next & 0x3F);
+        }
+        return Character.isValidCodePoint(c) ? c : 0xFFFD;
+    }
+
+    /**
+     * The same transitions as {@link JTwigParser}, the islands are passed to the var parser instead of being flushed as characters.
+     */
+    private void process(char c) {
+        switch (state) {
+            case XML:
+                if (c == '{') {
+                    island.setLength(0);
+                    island.append(c);
+                    state = MAYBE_START_DELIMITER;
+                    tagType = NONE;
+                }
+                break;
+            case MAYBE_START_DELIMITER:
+                if (Character.isWhitespace(c)) {
+                    break;
+                }
+                switch (c) {
+                    case '%':
+                        startIsland(CODE, c);
+                        break;
+                    case '{':
+                        startIsland(OUTPUT, c);
+                        break;
+                    case '#':
+                        startIsland(COMMENT, c);
+                        break;
+                    default:
+                        state = XML;
+                        tagType = NONE;
+                }
+                break;
+            case TEMPLATE:
+                if (Character.isWhitespace(c) && c != ' ') {
+                    ignoreSpace = true;
+                    break;
+                }
+                if (c == ' ' && ignoreSpace) {
+                    break;
+                }
+                ignoreSpace = false;
+
+                if (c == ' ' && island.length() > 0 && island.charAt(island.length() - 1) == ' ') {
+                    break;
+                }
+
+                c = JTwigParser.cleanQuote(c);
+                island.append(c);
+
+                switch (c) {
+                    case '%':
+                        if (tagType == CODE) {
+                            state = MAYBE_END_DELIMITER;
+                        }
+                        break;
+                    case '}':
+                        if (tagType == OUTPUT) {
+                            state = MAYBE_END_DELIMITER;
+                        }
+                        break;
+                    case '#':
+                        if (tagType == COMMENT) {
+                            state = MAYBE_END_DELIMITER;
+                        }
+                        break;
+                    case '"':
+                    case '\'':
+                        state = STRING;
+                        stringDelimiter = c;
+                        ignoreSpace = false;
+                }
+                break;
+            case STRING:
+                if (Character.isWhitespace(c) && c != ' ') {
+                    ignoreSpace = true;
+                    break;
+                }
+                if (c == ' ' && ignoreSpace) {
+                    break;
+                }
+                ignoreSpace = false;
+
+                c = JTwigParser.cleanQuote(c);
+                island.append(c);
+
+                if (c == stringDelimiter) {
+                    state = TEMPLATE;
+                }
+                break;
+            case MAYBE_END_DELIMITER:
+                state = TEMPLATE;
+                island.append(c);
+                if (c == '}') {
+                    varParser.parse(island.toString());
+                    island.setLength(0);
+                    state = XML;
+                    tagType = NONE;
+                }
+        }
+    }
+
+    private void startIsland(TagType type, char c) {
+        state = TEMPLATE;
+        tagType = type;
+        island.append(c);
+    }
+
+    private void markup() throws IOException {
+        int b = read();
+        switch (b) {
+            case -1:
+                return;
+            case '!':
+                declaration();
+                return;
+            case '?':
+                skipUntil(PI_END, 0xFFFF);
+                return;
+            case '/':
+                skipTag();
+                return;
+            default:
+                startTag(b);
+        }
+    }
+
+    private void declaration() throws IOException {
+        int b = read();
+        if (b == '-') {
+            read();
+            skipUntil(COMMENT_END, 0xFFFFFF);
+        } else if (b == '[') {
+            cdata();
+        } else {
+            //DOCTYPE with an optional internal subset
+            int depth = 0;
+            while (b != -1 && (b != '>' || depth > 0)) {
+                if (b == '[') {
+                    ++depth;
+                } else if (b == ']') {
+                    --depth;
+                }
+                b = read();
+            }
+        }
+    }
+
+    /**
+     * The XML reader delivers a CDATA section as characters, its content is text like any other.
+     */
+    private void cdata() throws IOException {
+        int b;
+        while ((b = read()) != -1 && b != '[') {
+        }
+        int window = 0;
+        int length = 0;
+        while ((b = read()) != -1) {
+            window = (window << 8 | b) & 0xFFFFFF;
+            if (window == CDATA_END) {
+                //without the ]] read before the >
+                length -= 2;
+                break;
+            }
+            value = put(value, length++, b);
+        }
+        String text = new String(value, 0, Math.max(length, 0), StandardCharsets.UTF_8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                if (i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    continue;
+                }
+                c = '\n';
+            }
+            process(c);
+        }
+    }
+
+    private void skipUntil(int end, int mask) throws IOException {
+        int window = 0;
+        int b;
+        while ((b = read()) != -1) {
+            window = (window << 8 | b) & mask;
+            if (window == end) {
+                return;
+            }
+        }
+    }
+
+    private void skipTag() throws IOException {
+        int b;
+        while ((b = read()) != -1) {
+            if (b == '>') {
+                return;
+            }
+            if (b == '"' || b == '\'') {
+                skipQuoted(b);
+            }
+        }
+    }
+
+    private void skipQuoted(int quote) throws IOException {
+        int b;
+        while ((b = read()) != -1 && b != quote) {
+        }
+    }
+
+    private void startTag(int b) throws IOException {
+        if (attributeHandlers.isEmpty()) {
+            skipTag();
+            return;
+        }
+        int length = 0;
+        while (b != -1 && b != '>' && b != '/' && !isSpace(b)) {
+            name = put(name, length++, b);
+            b = read();
+        }
+        List<AttributeHandler> handlers = null;
+        for (AttributeHandler handler : attributeHandlers) {
+            if (handler.isElement(name, length)) {
+                if (handlers == null) {
+                    handlers = new ArrayList<>(1);
+                }
+                handlers.add(handler);
+            }
+        }
+        if (b == '>') {
+            return;
+        }
+        if (handlers == null) {
+            skipTag();
+            return;
+        }
+        attributes(handlers);
+    }
+
+    private void attributes(List<AttributeHandler> handlers) throws IOException {
+        int b = read();
+        while (true) {
+            while (isSpace(b) || b == '/') {
+                b = read();
+            }
+            if (b == '>' || b == -1) {
+                return;
+            }
+            int nameLength = 0;
+            while (b != -1 && b != '=' && b != '>' && !isSpace(b)) {
+                name = put(name, nameLength++, b);
+                b = read();
+            }
+            while (isSpace(b)) {
+                b = read();
+            }
+            if (b != '=') {
+                //no value, not well formed
+                continue;
+            }
+            b = read();
+            while (isSpace(b)) {
+                b = read();
+            }
+            if (b != '"' && b != '\'') {
+                continue;
+            }
+            int quote = b;
+            int valueLength = 0;
+            while ((b = read()) != -1 && b != quote) {
+                value = put(value, valueLength++, b);
+            }
+            for (AttributeHandler handler : handlers) {
+                if (handler.isAttribute(name, nameLength)) {
+                    handler.handler.accept(attributeValue(value, valueLength));
+                }
+            }
+            b = read();
+        }
+    }
+
+    /**
+     * Resolves the references and normalizes the white space like the XML reader does for an attribute value.
+     */
+    private static String attributeValue(byte[] bytes, int length) {
+        String raw = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '&') {
+                int end = raw.indexOf(';', i);
+                if (end > i) {
+                    sb.append(resolve(raw.substring(i + 1, end)));
+                    i = end;
+                    continue;
+                }
+            }
+            if (c == '\r' && i + 1 < raw.length() && raw.charAt(i + 1) == '\n') {
+                continue;
+            }
+            sb.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the replacement of the reference following the '&amp;'
+     */
+    private String entity() throws IOException {
+        StringBuilder ref = new StringBuilder(8);
+        int b;
+        while ((b = read()) != -1 && b != ';' && ref.length() < 16) {
+            ref.append((char) b);
+        }
+        return resolve(ref.toString());
+    }
+
+    private static String resolve(String ref) {
+        switch (ref) {
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "amp":
+                return "&";
+            case "quot":
+                return "\"";
+            case "apos":
+                return "'";
+        }
+        if (ref.startsWith("#")) {
+            try {
+                int c = ref.startsWith("#x") ? Integer.parseInt(ref.substring(2), 16) : Integer.parseInt(ref.substring(1));
+                if (Character.isValidCodePoint(c)) {
+                    return new String(Character.toChars(c));
+                }
+            } catch (NumberFormatException e) {
+                //not a character reference
+            }
+        }
+        return "";
+    }
+
+    private static boolean isSpace(int b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    private static byte[] put(byte[] bytes, int index, int b) {
+        if (index == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        bytes[index] = (byte) b;
+        return bytes;
+    }
+
+    private static class AttributeHandler {
+        private final byte[] element;
+        private final byte[] attribute;
+        private final Consumer<String> handler;
+
+        AttributeHandler(String element, String attribute, Consumer<String> handler) {
+            this.element = element.getBytes(StandardCharsets.UTF_8);
+            this.attribute = attribute.getBytes(StandardCharsets.UTF_8);
+            this.handler = handler;
+        }
+
+        boolean isElement(byte[] name, int length) {
+            return Arrays.equals(element, 0, element.length, name, 0, length);
+        }
+
+        boolean isAttribute(byte[] name, int length) {
+            return Arrays.equals(attribute, 0, attribute.length, name, 0, length);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.proxeus.admission;
+
+import com.proxeus.error.BadRequestException;
+import com.proxeus.error.UnavailableException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void requestsShouldBeRejectedIfTheyWouldMissTheirDeadline() throws Exception {
+        AdmissionController controller = new AdmissionController(new AdmissionConfig(), () -> 2, () -> 1000);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Request-Deadline", "2500");
+        AdmissionController.Admission first = controller.admit(headers::get);
+        for (int i = 0; i < 3; i++) {
+            //the third and fourth wait for one round of conversions
+            controller.admit(headers::get);
+        }
+        try {
+            controller.admit(headers::get);
+            Assert.fail("two rounds of conversions don't fit into the deadline");
+        } catch (UnavailableException e) {
+            Assert.assertEquals(2, e.getRetryAfterSeconds());
+        }
+        Assert.assertEquals(4, controller.getInFlight());
+
+        first.close();
+        first.close();
+        Assert.assertEquals(3, controller.getInFlight());
+        controller.admit(headers::get);
+
+        //without a deadline it is admitted anyway
+        controller.admit(new HashMap<String, String>()::get);
+        Assert.assertEquals(5, controller.getInFlight());
+    }
+
+    @Test
+    public void batchesShouldCountByTheirWeight() throws Exception {
+        AdmissionController controller = new AdmissionController(new AdmissionConfig(), () -> 4, () -> 1000);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Request-Deadline", "1500");
+        AdmissionController.Admission batch = controller.admit(headers::get, 4);
+        Assert.assertEquals(4, controller.getInFlight());
+        try {
+            controller.admit(headers::get);
+            Assert.fail("the batch occupies all executables");
+        } catch (UnavailableException e) {
+            Assert.assertEquals(1, e.getRetryAfterSeconds());
+        }
+        batch.close();
+        batch.close();
+        Assert.assertEquals(0, controller.getInFlight());
+        controller.admit(headers::get);
+    }
+
+    @Test
+    public void tenantsShouldBeLimited() throws Exception {
+        AdmissionConfig config = new AdmissionConfig();
+        config.tenantLimit = 1;
+        AdmissionController controller = new AdmissionController(config, () -> 10, () -> 1000);
+        Map<String, String> a = new HashMap<>();
+        a.put("X-Tenant", "a");
+        Map<String, String> b = new HashMap<>();
+        b.put("X-Tenant", "b");
+
+        AdmissionController.Admission admission = controller.admit(a::get);
+        try {
+            controller.admit(a::get);
+            Assert.fail("tenant a is at its limit");
+        } catch (UnavailableException e) {
+            Assert.assertEquals(1, e.getRetryAfterSeconds());
+        }
+        controller.admit(b::get);
+        admission.close();
+        controller.admit(a::get);
+        Assert.assertEquals(2, controller.getInFlight());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void malformedDeadlineShouldBeABadRequest() throws Exception {
+        AdmissionController controller = new AdmissionController(new AdmissionConfig(), () -> 2, () -> 1000);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Request-Deadline", "soon");
+        controller.admit(headers::get);
+    }
+}
@@ -0,0 +1,58 @@
+package com.proxeus.compiler.jtwig;
+
+import com.proxeus.error.CompilationException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class MyJTwigCompilerTest {
+
+    private String compile(MyJTwigCompiler compiler, String source, String name) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        compiler.Compile(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)),
+                Collections.singletonMap("name", name), output, StandardCharsets.UTF_8);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void compile_shouldReuseTheParsedTemplateForTheSameSource() throws Exception {
+        MyJTwigCompiler compiler = new MyJTwigCompiler(10, 1);
+        String source = "<text:p>Hello {{ name }}</text:p>";
+
+        assertEquals("<text:p>Hello A</text:p>", compile(compiler, source, "A"));
+        assertEquals("<text:p>Hello B</text:p>", compile(compiler, source, "B"));
+        assertEquals("<text:p>Bye B</text:p>", compile(compiler, "<text:p>Bye {{ name }}</text:p>", "B"));
+
+        assertEquals(1, compiler.getTemplateCache().getHits());
+        assertEquals(2, compiler.getTemplateCache().getMisses());
+    }
+
+    @Test
+    public void compile_shouldNotCacheInvalidTemplates() throws Exception {
+        MyJTwigCompiler compiler = new MyJTwigCompiler(10, 1);
+        for (int i = 0; i < 2; i++) {
+            try {
+                compile(compiler, "<text:p>{% if name %}</text:p>", "A");
+                fail("expected a compilation exception");
+            } catch (CompilationException e) {
+                //expected
+            }
+        }
+        assertEquals(0, compiler.getTemplateCache().getHits());
+    }
+
+    @Test
+    public void compile_shouldWorkWithoutCache() throws Exception {
+        MyJTwigCompiler compiler = new MyJTwigCompiler();
+        String source = "<text:p>Hello {{ name }}</text:p>";
+
+        assertEquals("<text:p>Hello A</text:p>", compile(compiler, source, "A"));
+        assertEquals("<text:p>Hello B</text:p>", compile(compiler, source, "B"));
+        assertEquals(0, compiler.getTemplateCache().getHits());
+    }
+}
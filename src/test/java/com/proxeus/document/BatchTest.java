@@ -0,0 +1,112 @@
+package com.proxeus.document;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.proxeus.error.BadRequestException;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class BatchTest {
+
+    @Test
+    public void dataSets_shouldReadArray() throws Exception {
+        Batch batch = Batch.fromZip(zip("data.json", "[{\"a\":1},{\"a\":2},{\"a\":3}]"), null);
+        try {
+            Assert.assertEquals("pdf", batch.getFormat());
+            Assert.assertEquals(3, count(batch));
+        } finally {
+            batch.release();
+        }
+    }
+
+    @Test
+    public void dataSets_shouldReadNewlineDelimited() throws Exception {
+        Batch batch = Batch.fromZip(zip("data.ndjson", "{\"a\":1}\n{\"a\":2}\n"), "odt");
+        try {
+            Assert.assertEquals("odt", batch.getFormat());
+            Assert.assertEquals(2, count(batch));
+        } finally {
+            batch.release();
+        }
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void fromZip_shouldRequireData() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("tmpl.odt"));
+            zip.write(template());
+            zip.closeEntry();
+        }
+        Batch.fromZip(new ByteArrayInputStream(bytes.toByteArray()), null);
+    }
+
+    @Test
+    public void newTemplate_shouldCopySourceAndAssets() throws Exception {
+        Batch batch = Batch.fromZip(zip("data.json", "[{\"a\":1}]"), null);
+        Template template = null;
+        try {
+            try (MappingIterator<Map<String, Object>> dataSets = batch.dataSets()) {
+                template = batch.newTemplate(dataSets.nextValue());
+            }
+            Assert.assertEquals(1, template.getData().get("a"));
+            Assert.assertEquals("pdf", template.getFormat());
+            Assert.assertNotEquals(batch.getTemplate().getTmpDir(), template.getTmpDir());
+            Assert.assertEquals(template.getTmpDir(), template.getSrc().getParentFile());
+            Assert.assertEquals(batch.getTemplate().getSrcDigest(), template.getSrcDigest());
+            Assert.assertTrue(FileUtils.contentEquals(batch.getTemplate().getSrc(), template.getSrc()));
+            Assert.assertEquals("asset", FileUtils.readFileToString(new File(template.getTmpDir(), "img/asset.txt"), StandardCharsets.UTF_8));
+        } finally {
+            if (template != null) {
+                template.release();
+            }
+            batch.release();
+        }
+    }
+
+    private int count(Batch batch) throws Exception {
+        List<Map<String, Object>> dataSets = new ArrayList<>();
+        try (MappingIterator<Map<String, Object>> it = batch.dataSets()) {
+            while (it.hasNextValue()) {
+                dataSets.add(it.nextValue());
+            }
+        }
+        for (int i = 0; i < dataSets.size(); i++) {
+            Assert.assertEquals(i + 1, dataSets.get(i).get("a"));
+        }
+        return dataSets.size();
+    }
+
+    private InputStream zip(String dataName, String data) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("tmpl.odt"));
+            zip.write(template());
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry(dataName));
+            zip.write(data.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("img/asset.txt"));
+            zip.write("asset".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    private byte[] template() throws Exception {
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("hr0101.odt")) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.proxeus.document;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OutputCacheTest {
+    private File dir;
+    private OutputCache cache;
+    private final List<Template> templates = new ArrayList<>();
+    private final AtomicInteger compiled = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("output-cache").toFile();
+        CacheConfig config = new CacheConfig();
+        config.outputMB = 16;
+        cache = new OutputCache(config, dir);
+    }
+
+    @After
+    public void tearDown() {
+        for (Template template : templates) {
+            template.release();
+        }
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void keyShouldOnlyDependOnTheContent() throws Exception {
+        Template a = template("pdf", "a", 1, "logo");
+        Template b = template("pdf", "a", 1, "logo");
+        //the same data in another order
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("list", Arrays.asList(1, "two"));
+        data.put("count", 1);
+        data.put("name", "a");
+        b.setData(data);
+        Assert.assertEquals(OutputCache.key(a), OutputCache.key(b));
+        Assert.assertNotEquals(OutputCache.key(a), OutputCache.key(template("odt", "a", 1, "logo")));
+        Assert.assertNotEquals(OutputCache.key(a), OutputCache.key(template("pdf", "b", 1, "logo")));
+        Assert.assertNotEquals(OutputCache.key(a), OutputCache.key(template("pdf", "a", 1, "other logo")));
+    }
+
+    @Test
+    public void identicalRequestsShouldBeCompiledOnce() throws Exception {
+        FileResult first = cache.get(template("pdf", "a", 1, "logo"), () -> compile(templates.get(0)));
+        FileResult second = cache.get(template("pdf", "a", 1, "logo"), () -> compile(templates.get(1)));
+        Assert.assertEquals(1, compiled.get());
+        Assert.assertEquals("application/pdf", second.contentType);
+        Assert.assertArrayEquals(Files.readAllBytes(first.target.toPath()), Files.readAllBytes(second.target.toPath()));
+
+        Template bypass = template("pdf", "a", 1, "logo");
+        bypass.setCacheOutput(false);
+        cache.get(bypass, () -> compile(bypass));
+        Assert.assertEquals(2, compiled.get());
+    }
+
+    @Test
+    public void streamedResultsShouldBeCached() throws Exception {
+        Template t1 = template("pdf", "a", 1, "logo");
+        FileResult first = cache.get(t1, () -> {
+            compiled.incrementAndGet();
+            FileResult result = new FileResult(t1);
+            result.contentType = "application/pdf";
+            result.stream = output -> output.write("streamed".getBytes(StandardCharsets.UTF_8));
+            return result;
+        });
+        Assert.assertFalse(first.isStreamed());
+        Assert.assertEquals("streamed", new String(Files.readAllBytes(first.target.toPath()), StandardCharsets.UTF_8));
+        FileResult second = cache.get(template("pdf", "a", 1, "logo"), () -> compile(templates.get(1)));
+        Assert.assertEquals(1, compiled.get());
+        Assert.assertEquals("streamed", new String(Files.readAllBytes(second.target.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void resultShouldBeDeliveredWhenItCanNotBeCached() throws Exception {
+        //the cache dir is taken by a file, nothing can be stored
+        Assert.assertTrue(dir.delete());
+        Files.write(dir.toPath(), "not a dir".getBytes(StandardCharsets.UTF_8));
+        try {
+            FileResult first = cache.get(template("pdf", "a", 1, "logo"), () -> compile(templates.get(0)));
+            Assert.assertTrue(first.target.exists());
+            cache.get(template("pdf", "a", 1, "logo"), () -> compile(templates.get(1)));
+            Assert.assertEquals(2, compiled.get());
+        } finally {
+            dir.delete();
+            dir.mkdirs();
+        }
+    }
+
+    @Test
+    public void streamedResultShouldBeReleasedWhenTheConversionFails() throws Exception {
+        Template t1 = template("pdf", "a", 1, "logo");
+        File tmpDir = t1.getTmpDir();
+        try {
+            cache.get(t1, () -> {
+                FileResult result = new FileResult(t1);
+                result.stream = output -> {
+                    throw new IllegalStateException("conversion failed");
+                };
+                return result;
+            });
+            Assert.fail("expected the exception of the conversion");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("conversion failed", e.getMessage());
+        }
+        Assert.assertFalse(tmpDir.exists());
+        //released by the cache already
+        templates.remove(t1);
+    }
+
+    @Test
+    public void concurrentIdenticalRequestsShouldWaitForTheFirstOne() throws Exception {
+        Template t1 = template("pdf", "a", 1, "logo");
+        Template t2 = template("pdf", "a", 1, "logo");
+        CountDownLatch compiling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<FileResult> first = executor.submit(() -> cache.get(t1, () -> {
+                compiling.countDown();
+                release.await();
+                return compile(t1);
+            }));
+            compiling.await();
+            Future<FileResult> second = executor.submit(() -> cache.get(t2, () -> compile(t2)));
+            Thread.sleep(100);
+            Assert.assertFalse(second.isDone());
+            release.countDown();
+            Assert.assertArrayEquals(Files.readAllBytes(first.get().target.toPath()), Files.readAllBytes(second.get().target.toPath()));
+            Assert.assertEquals(1, compiled.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Template template(String format, String name, int count, String asset) throws Exception {
+        Template template = new Template();
+        templates.add(template);
+        File src = new File(template.getTmpDir(), "tmpl.odt");
+        Files.write(src.toPath(), "template".getBytes(StandardCharsets.UTF_8));
+        template.setSrc(src);
+        Files.write(new File(template.getTmpDir(), "logo.png").toPath(), asset.getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("name", name);
+        data.put("count", count);
+        data.put("list", Arrays.asList(1, "two"));
+        template.setData(data);
+        template.setFormat(format);
+        return template;
+    }
+
+    private FileResult compile(Template template) throws Exception {
+        compiled.incrementAndGet();
+        FileResult result = new FileResult(template);
+        result.target = new File(template.getTmpDir(), "final");
+        Files.write(result.target.toPath(), ("compiled " + template.getData()).getBytes(StandardCharsets.UTF_8));
+        result.contentType = "application/pdf";
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+package com.proxeus.document;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RemoteAssetCacheTest {
+    private static final byte[] LOGO = "logo".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private AtomicInteger ok = new AtomicInteger();
+    private AtomicInteger notModified = new AtomicInteger();
+    private volatile long delayMillis = 0;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/logo.png", exchange -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                ok.incrementAndGet();
+                exchange.sendResponseHeaders(200, LOGO.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(LOGO);
+                }
+            }
+            exchange.close();
+        });
+        server.createContext("/missing.png", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private RemoteAssetCache cache(String fresh) throws IOException {
+        AssetConfig config = new AssetConfig();
+        config.fresh = fresh;
+        return new RemoteAssetCache(config, tmp.newFolder("assets"));
+    }
+
+    @Test
+    public void copyTo_shouldDownloadAFreshAssetOnce() throws Exception {
+        RemoteAssetCache cache = cache("5m");
+        for (int i = 0; i < 3; i++) {
+            File dst = tmp.newFile();
+            cache.copyTo(url("/logo.png"), dst);
+            assertArrayEquals(LOGO, Files.readAllBytes(dst.toPath()));
+        }
+        assertEquals(1, ok.get());
+        assertEquals(1, cache.getDownloaded());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void copyTo_shouldRevalidateWithTheETag() throws Exception {
+        RemoteAssetCache cache = cache("0s");
+        cache.copyTo(url("/logo.png"), tmp.newFile());
+        File dst = tmp.newFile();
+        cache.copyTo(url("/logo.png"), dst);
+        assertArrayEquals(LOGO, Files.readAllBytes(dst.toPath()));
+        assertEquals(1, ok.get());
+        assertEquals(1, notModified.get());
+        assertEquals(1, cache.getNotModified());
+    }
+
+    @Test
+    public void copyTo_shouldCoalesceConcurrentDownloads() throws Exception {
+        delayMillis = 300;
+        RemoteAssetCache cache = cache("5m");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<File>> copies = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                File dst = tmp.newFile();
+                copies.add(executor.submit(() -> {
+                    cache.copyTo(url("/logo.png"), dst);
+                    return dst;
+                }));
+            }
+            for (Future<File> copy : copies) {
+                assertArrayEquals(LOGO, Files.readAllBytes(copy.get().toPath()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, ok.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void copyTo_shouldFailIfTheServerDoesNotRespondWithOK() throws Exception {
+        cache("5m").copyTo(url("/missing.png"), tmp.newFile());
+    }
+}
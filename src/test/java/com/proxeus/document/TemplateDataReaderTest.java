@@ -0,0 +1,73 @@
+package com.proxeus.document;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TemplateDataReaderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        TemplateDataReader.configure(new AssetConfig());
+    }
+
+    private Map<String, Object> read(String json) throws Exception {
+        return TemplateDataReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), tmp.getRoot());
+    }
+
+    @Test
+    public void read_shouldReadLikeJackson() throws Exception {
+        Map<String, Object> data = read("{\"s\":\"text\",\"i\":1,\"l\":12345678901,\"d\":1.5,\"b\":true,\"n\":null,\"a\":[1,{\"x\":\"y\"}],\"o\":{}}");
+        assertEquals("text", data.get("s"));
+        assertEquals(1, data.get("i"));
+        assertEquals(12345678901L, data.get("l"));
+        assertEquals(1.5, data.get("d"));
+        assertEquals(true, data.get("b"));
+        assertTrue(data.containsKey("n"));
+        assertNull(data.get("n"));
+        List<?> a = (List<?>) data.get("a");
+        assertEquals(1, a.get(0));
+        assertEquals("y", ((Map<?, ?>) a.get(1)).get("x"));
+        assertTrue(((Map<?, ?>) data.get("o")).isEmpty());
+    }
+
+    @Test
+    public void read_shouldDecodeBigImagesIntoFiles() throws Exception {
+        AssetConfig config = new AssetConfig();
+        config.spillKB = 1;
+        TemplateDataReader.configure(config);
+        byte[] image = new byte[10000];
+        new Random(1).nextBytes(image);
+        String big = "data:image/png;base64," + Base64.getMimeEncoder().encodeToString(image).replace("\r\n", "\\n");
+        char[] notAnImage = new char[5000];
+        Arrays.fill(notAnImage, 'x');
+        Map<String, Object> data = read("{\"photos\":[\"" + big + "\"],\"small\":\"data:image/png;base64,AAAA\",\"text\":\"" + new String(notAnImage) + "\"}");
+
+        EmbeddedFile photo = (EmbeddedFile) ((List<?>) data.get("photos")).get(0);
+        assertEquals("image/png", photo.getMediaType());
+        assertArrayEquals(image, Files.readAllBytes(photo.getFile().toPath()));
+        assertEquals(photo.getFile(), AssetFile.find(data.get("photos"), tmp.getRoot()).src);
+        assertEquals("data:image/png;base64,AAAA", data.get("small"));
+        assertEquals(new String(notAnImage), data.get("text"));
+    }
+
+    @Test
+    public void read_shouldReturnNullIfItIsNotAnObject() throws Exception {
+        assertNull(read("[1,2]"));
+    }
+}
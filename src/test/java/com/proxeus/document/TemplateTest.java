@@ -0,0 +1,66 @@
+package com.proxeus.document;
+
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.RequestContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class TemplateTest {
+    private static final String BOUNDARY = "----boundary";
+
+    @Test
+    public void fromFormData_shouldWriteThePartsWhereTheyBelong() throws Exception {
+        byte[] odt = new byte[100_000];
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        part(body, "template", "my.odt", odt);
+        part(body, "data", "data.json", "{\"name\":\"test\"}".getBytes(StandardCharsets.UTF_8));
+        part(body, "asset1", "logo.png", new byte[]{1, 2, 3});
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        Template template = Template.fromFormData(new FileUpload().getItemIterator(request(body.toByteArray())), null);
+        try {
+            Assert.assertEquals("pdf", template.getFormat());
+            Assert.assertEquals(new File(template.getTmpDir(), "tmpl.odt"), template.getSrc());
+            Assert.assertArrayEquals(odt, Files.readAllBytes(template.getSrc().toPath()));
+            Assert.assertEquals("test", template.getData().get("name"));
+            Assert.assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(new File(template.getTmpDir(), "logo.png").toPath()));
+        } finally {
+            template.release();
+        }
+    }
+
+    private static void part(ByteArrayOutputStream body, String name, String filename, byte[] content) throws Exception {
+        body.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"; filename=\"" + filename
+                + "\"\r\nContent-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static RequestContext request(byte[] body) {
+        return new RequestContext() {
+            public String getCharacterEncoding() {
+                return "UTF-8";
+            }
+
+            public String getContentType() {
+                return "multipart/form-data; boundary=" + BOUNDARY;
+            }
+
+            @Deprecated
+            public int getContentLength() {
+                return body.length;
+            }
+
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream(body);
+            }
+        };
+    }
+}
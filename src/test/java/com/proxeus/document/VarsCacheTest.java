@@ -0,0 +1,68 @@
+package com.proxeus.document;
+
+import com.proxeus.document.odt.ODTCompiler;
+import com.proxeus.xml.template.jtwig.JTwigTemplateHandlerFactory;
+import com.proxeus.xml.template.jtwig.JTwigTemplateVarParserFactory;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class VarsCacheTest {
+
+    @Test
+    public void withPrefix_shouldSelectTheRangeCaseSensitive() {
+        NavigableSet<String> vars = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        vars.addAll(Arrays.asList("input.Name", "input.city", "Input.zip", "inputs.x", "output.sum", "in"));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("input.Name", "input.city", "inputs.x")), VarsCache.withPrefix(vars, "input"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("input.Name", "input.city")), VarsCache.withPrefix(vars, "input."));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("Input.zip")), VarsCache.withPrefix(vars, "Input"));
+        Assert.assertTrue(VarsCache.withPrefix(vars, "none").isEmpty());
+        Assert.assertEquals(vars, VarsCache.withPrefix(vars, ""));
+        Assert.assertEquals(vars, VarsCache.withPrefix(vars, null));
+    }
+
+    @Test
+    public void vars_shouldBeFoundOnceForTheSameTemplate() throws Exception {
+        File dir = Files.createTempDirectory("vars-cache").toFile();
+        ODTCompiler compiler = new ODTCompiler(dir.getAbsolutePath(), null,
+                new JTwigTemplateHandlerFactory(), new JTwigTemplateVarParserFactory());
+        VarsCache varsCache = compiler.getVarsCache();
+        long misses = varsCache.getMisses();
+
+        Template first = template();
+        Template second = template();
+        try {
+            Set<String> all = compiler.Vars(first, null);
+            Assert.assertTrue(all.contains("input.ethAddress"));
+            Assert.assertTrue(all.contains("input.USD_ETH"));
+
+            Set<String> usd = compiler.Vars(second, "input.USD_");
+            Assert.assertFalse(usd.isEmpty());
+            for (String var : usd) {
+                Assert.assertTrue(var.startsWith("input.USD_"));
+            }
+            Assert.assertFalse(usd.contains("input.ethAddress"));
+            Assert.assertEquals(misses + 1, varsCache.getMisses());
+        } finally {
+            first.release();
+            second.release();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private Template template() throws Exception {
+        try (InputStream odt = getClass().getClassLoader().getResourceAsStream("crypto_asset_report.odt")) {
+            return Template.fromODT(odt);
+        }
+    }
+}
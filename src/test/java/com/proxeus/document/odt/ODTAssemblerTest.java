@@ -0,0 +1,112 @@
+package com.proxeus.document.odt;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class ODTAssemblerTest {
+    private File dir;
+    private File template;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("odt_assembler").toFile();
+        template = new File(dir, "tmpl.odt");
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream("hr0101.odt")) {
+            FileUtils.copyToFile(input, template);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void assemble_shouldWriteTheMimetypeFirstAndStored() throws Exception {
+        File assembled = assemble(new ODTAssembler());
+        try (ZipFile zip = new ZipFile(assembled)) {
+            ZipEntry first = zip.entries().nextElement();
+            assertEquals("mimetype", first.getName());
+            assertEquals(ZipEntry.STORED, first.getMethod());
+            assertEquals("application/vnd.oasis.opendocument.text", IOUtils.toString(zip.getInputStream(first), UTF_8));
+        }
+    }
+
+    @Test
+    public void assemble_shouldCopyTheUnchangedEntries() throws Exception {
+        File assembled = assemble(new ODTAssembler());
+        try (ZipFile original = new ZipFile(template); ZipFile zip = new ZipFile(assembled)) {
+            assertEquals(names(original).size(), names(zip).size());
+            for (String name : names(original)) {
+                ZipEntry entry = zip.getEntry(name);
+                assertNotNull(name, entry);
+                assertEquals(name, original.getEntry(name).getCrc(), entry.getCrc());
+                assertEquals(name, original.getEntry(name).getMethod(), entry.getMethod());
+            }
+        }
+    }
+
+    @Test
+    public void assemble_shouldReplaceRemoveAndAdd() throws Exception {
+        File asset = new File(dir, "asset");
+        FileUtils.writeStringToFile(asset, "png", UTF_8);
+
+        ODTAssembler assembler = new ODTAssembler();
+        assembler.put("/content.xml", output -> output.write("<rendered/>".getBytes(UTF_8)));
+        assembler.remove("settings.xml");
+        assembler.putAsset("/Pictures/new.png", asset);
+        File assembled = assemble(assembler);
+
+        try (ZipFile zip = new ZipFile(assembled)) {
+            assertEquals("<rendered/>", IOUtils.toString(zip.getInputStream(zip.getEntry("content.xml")), UTF_8));
+            assertNull(zip.getEntry("settings.xml"));
+            ZipEntry added = zip.getEntry("Pictures/new.png");
+            assertEquals(ZipEntry.STORED, added.getMethod());
+            assertEquals("png", IOUtils.toString(zip.getInputStream(added), UTF_8));
+            assertEquals(1, names(zip).stream().filter("content.xml"::equals).count());
+        }
+    }
+
+    @Test
+    public void assemble_shouldWriteToMemory() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ODTAssembler().assemble(template, output);
+        assertEquals('P', output.toByteArray()[0]);
+        assertEquals('K', output.toByteArray()[1]);
+    }
+
+    private File assemble(ODTAssembler assembler) throws Exception {
+        File assembled = new File(dir, "assembled.odt");
+        try (OutputStream output = new FileOutputStream(assembled)) {
+            assembler.assemble(template, output);
+        }
+        return assembled;
+    }
+
+    private List<String> names(ZipFile zip) {
+        List<String> names = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        return names;
+    }
+}
@@ -81,6 +81,58 @@ public class TemplateCompilerTest {
         Assert.assertEquals(convert(expected, Charset.defaultCharset()), content.toString());
     }
 
+    @Test
+    public void testCompileFromTemplateCache() throws Exception {
+
+        String[] filenames = test.split(":");
+
+        Config config = Application.init();
+        TemplateCompiler templateCompiler = new TemplateCompiler(config.getTmpFolder(), new TestTemplateFormatter(), new JTwigTemplateHandlerFactory(), new JTwigTemplateVarParserFactory());
+
+        String expected = convert(getClass().getClassLoader().getResourceAsStream(filenames[2]), Charset.defaultCharset());
+        for (int i = 0; i < 2; i++) {
+            InputStream inputStream = new ByteArrayInputStream(createZip(filenames[0], filenames[1]));
+            FileResult result = templateCompiler.compile(Template.fromZip(inputStream, "pdf"), false);
+            Assert.assertEquals(expected, contentXml(result.target));
+            result.release();
+        }
+    }
+
+    @Test
+    public void testCompileStreamOutput() throws Exception {
+
+        String[] filenames = test.split(":");
+
+        Config config = Application.init();
+        TemplateCompiler templateCompiler = new TemplateCompiler(config.getTmpFolder(), new TestTemplateFormatter(), new JTwigTemplateHandlerFactory(), new JTwigTemplateVarParserFactory());
+
+        InputStream inputStream = new ByteArrayInputStream(createZip(filenames[0], filenames[1]));
+        Template template = Template.fromZip(inputStream, "pdf");
+        template.setStreamOutput(true);
+        FileResult result = templateCompiler.compile(template, false);
+        Assert.assertTrue(result.isStreamed());
+        Assert.assertNull(result.target);
+        Assert.assertEquals("application/pdf", result.contentType);
+
+        File odt = new File(template.getTmpDir(), "streamed");
+        try (OutputStream output = new FileOutputStream(odt)) {
+            result.writeTo(output);
+        }
+        String expected = convert(getClass().getClassLoader().getResourceAsStream(filenames[2]), Charset.defaultCharset());
+        Assert.assertEquals(expected, contentXml(odt));
+        result.release();
+    }
+
+    private String contentXml(File odt) throws Exception {
+        OutputStream content = new ByteArrayOutputStream();
+        Zip.extract(odt, (entry, zf) -> {
+            if (entry.getName().startsWith("content.xml")) {
+                IOUtils.copy(zf.getInputStream(entry), content);
+            }
+        });
+        return content.toString();
+    }
+
 
     private byte[] createZip(String odt, String json) throws Exception {
         List<String> srcFiles = Arrays.asList(odt, json);
@@ -123,5 +175,13 @@ public class TemplateCompilerTest {
             Files.copy(src.toPath(), dst.toPath());
             return "test";
         }
+
+        @Override
+        public String Convert(InputStream src, OutputStream dst, String format, boolean restart) throws Exception {
+            Assert.assertEquals(false, restart);
+            Assert.assertEquals("pdf", format);
+            IOUtils.copy(src, dst);
+            return "test";
+        }
     }
 }
@@ -0,0 +1,144 @@
+package com.proxeus.job;
+
+import com.proxeus.document.FileResult;
+import com.proxeus.error.UnavailableException;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JobQueueTest {
+
+    private JobConfig config(int queueSize, String ttl) {
+        JobConfig config = new JobConfig();
+        config.workers = 1;
+        config.queueSize = queueSize;
+        config.ttl = ttl;
+        return config;
+    }
+
+    private FileResult result() throws Exception {
+        FileResult result = new FileResult(null);
+        result.target = File.createTempFile("job", ".pdf");
+        result.contentType = "application/pdf";
+        return result;
+    }
+
+    @Test
+    public void submit_shouldRunHigherPrioritiesFirst() throws Exception {
+        JobQueue queue = new JobQueue(config(10, "1m"));
+        CountDownLatch blocking = new CountDownLatch(1);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        queue.submit(0, () -> {
+            blocking.await();
+            return result();
+        });
+        Job low = queue.submit(1, () -> {
+            order.add(1);
+            return result();
+        });
+        Job high = queue.submit(5, () -> {
+            order.add(5);
+            return result();
+        });
+        assertEquals(Job.Status.QUEUED, high.getStatus());
+        blocking.countDown();
+
+        waitFor(low);
+        waitFor(high);
+        assertEquals(5, (int) order.get(0));
+        assertEquals(1, (int) order.get(1));
+        assertEquals(Job.Status.DONE, high.getStatus());
+        assertNotNull(queue.get(high.getId()).getResult());
+        queue.shutdown();
+    }
+
+    @Test
+    public void submit_shouldRejectWhenTheQueueIsFull() throws Exception {
+        JobQueue queue = new JobQueue(config(1, "1m"));
+        CountDownLatch blocking = new CountDownLatch(1);
+        Job running = queue.submit(0, () -> {
+            blocking.await();
+            return result();
+        });
+        while (running.getStatus() == Job.Status.QUEUED) {
+            Thread.sleep(10);
+        }
+        queue.submit(0, this::result);
+        try {
+            queue.submit(0, this::result);
+            fail("expected the queue to be full");
+        } catch (UnavailableException e) {
+            //expected
+        }
+        blocking.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    public void openResult_shouldStayReadableWhenReleased() throws Exception {
+        JobQueue queue = new JobQueue(config(10, "1m"));
+        Job job = queue.submit(0, () -> {
+            FileResult result = result();
+            Files.write(result.target.toPath(), "pdf".getBytes(StandardCharsets.UTF_8));
+            return result;
+        });
+        waitFor(job);
+        assertTrue(job.isExpired(Long.MAX_VALUE, 0));
+        assertFalse(new Job("unfinished", 0, 0, this::result).isExpired(Long.MAX_VALUE, 0));
+
+        Job.Download download = job.openResult();
+        assertEquals("application/pdf", download.contentType);
+        assertEquals(3, download.length);
+        job.release();
+        try (InputStream input = download.input) {
+            assertEquals("pdf", new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertNull(job.openResult());
+        queue.shutdown();
+    }
+
+    @Test
+    public void get_shouldForgetExpiredJobs() throws Exception {
+        JobQueue queue = new JobQueue(config(10, "1ms"));
+        Job failed = queue.submit(0, () -> {
+            throw new IllegalStateException("broken");
+        });
+        waitFor(failed);
+        assertEquals(Job.Status.FAILED, failed.getStatus());
+        assertEquals("broken", failed.getError().getMessage());
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (queue.get(failed.getId()) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertNull(queue.get(failed.getId()));
+        queue.shutdown();
+    }
+
+    @Test
+    public void run_shouldFailTheJobOnAnError() {
+        Job job = new Job("error", 0, 0, () -> {
+            throw new StackOverflowError();
+        });
+        job.run();
+        assertEquals(Job.Status.FAILED, job.getStatus());
+        assertTrue(job.getError().getCause() instanceof StackOverflowError);
+        assertTrue(job.isExpired(Long.MAX_VALUE, 0));
+    }
+
+    private void waitFor(Job job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
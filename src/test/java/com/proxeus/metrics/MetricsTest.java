@@ -0,0 +1,58 @@
+package com.proxeus.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsTest {
+
+    @Test
+    public void histogramShouldCountIntoTheInclusiveBucket() {
+        Histogram histogram = new Histogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.MINUTES.toNanos(5));
+        long[] counts = histogram.getCounts();
+        Assert.assertEquals(1, counts[0]);
+        Assert.assertEquals(0, counts[1]);
+        Assert.assertEquals(1, counts[2]);
+        Assert.assertEquals(1, counts[counts.length - 1]);
+        Assert.assertEquals(3, histogram.getCount());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(4) + TimeUnit.MINUTES.toNanos(5), histogram.getSumNanos());
+    }
+
+    @Test
+    public void writeShouldProduceThePrometheusTextFormat() throws Exception {
+        Counter counter = Metrics.counter("test_total", "A test counter.");
+        counter.inc();
+        counter.inc();
+        Assert.assertSame(counter, Metrics.counter("test_total", "A test counter."));
+        Metrics.gauge("test_gauge", "A test gauge.", () -> 7);
+        //the stages are shared with the other tests, only the difference is checked
+        String before = write();
+        Stage.ASSEMBLE.getHistogram().record(TimeUnit.MILLISECONDS.toNanos(20));
+        String text = write();
+        Assert.assertTrue(text.contains("# TYPE document_stage_seconds histogram\n"));
+        Assert.assertEquals(0, value(text, "document_stage_seconds_bucket{stage=\"assemble\",le=\"0.01\"}") - value(before, "document_stage_seconds_bucket{stage=\"assemble\",le=\"0.01\"}"));
+        Assert.assertEquals(1, value(text, "document_stage_seconds_bucket{stage=\"assemble\",le=\"0.025\"}") - value(before, "document_stage_seconds_bucket{stage=\"assemble\",le=\"0.025\"}"));
+        Assert.assertEquals(1, value(text, "document_stage_seconds_bucket{stage=\"assemble\",le=\"+Inf\"}") - value(before, "document_stage_seconds_bucket{stage=\"assemble\",le=\"+Inf\"}"));
+        Assert.assertEquals(1, value(text, "document_stage_seconds_count{stage=\"assemble\"}") - value(before, "document_stage_seconds_count{stage=\"assemble\"}"));
+        Assert.assertTrue(text.contains("# TYPE test_total counter\ntest_total 2\n"));
+        Assert.assertTrue(text.contains("# HELP test_gauge A test gauge.\n# TYPE test_gauge gauge\ntest_gauge 7\n"));
+    }
+
+    private static String write() throws Exception {
+        StringWriter w = new StringWriter();
+        Metrics.write(w);
+        return w.toString();
+    }
+
+    private static long value(String text, String series) {
+        int start = text.indexOf(series + " ");
+        Assert.assertTrue(series, start >= 0);
+        start += series.length() + 1;
+        return Long.parseLong(text.substring(start, text.indexOf('\n', start)));
+    }
+}
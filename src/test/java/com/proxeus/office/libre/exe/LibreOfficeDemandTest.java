@@ -0,0 +1,55 @@
+package com.proxeus.office.libre.exe;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LibreOfficeDemandTest {
+
+    @Test
+    public void update_shouldStayAtMinWithoutRequests() {
+        LibreOfficeDemand demand = new LibreOfficeDemand(2, 10, 50, 1000, 0);
+        assertEquals(2, demand.update(500, 0));
+        assertEquals(2, demand.update(1000, 0));
+    }
+
+    @Test
+    public void update_shouldFollowRateTimesConversionTime() {
+        LibreOfficeDemand demand = new LibreOfficeDemand(1, 40, 50, 1000, 0);
+        demand.converted(1000);
+        //10 requests per second of 1 second each are 10 in flight, at 50% load 20 are needed
+        for (int i = 0; i < 5; i++) {
+            demand.arrived();
+        }
+        assertEquals(20, demand.update(500, 0));
+    }
+
+    @Test
+    public void update_shouldNotFallBehindTheExecutablesInUse() {
+        LibreOfficeDemand demand = new LibreOfficeDemand(1, 40, 50, 1000, 0);
+        assertEquals(6, demand.update(500, 3));
+    }
+
+    @Test
+    public void update_shouldBeLimitedByMax() {
+        LibreOfficeDemand demand = new LibreOfficeDemand(1, 4, 50, 1000, 0);
+        for (int i = 0; i < 100; i++) {
+            demand.arrived();
+        }
+        assertEquals(4, demand.update(500, 0));
+    }
+
+    @Test
+    public void update_shouldShrinkOneByOneAfterTheDelay() {
+        LibreOfficeDemand demand = new LibreOfficeDemand(1, 40, 50, 1000, 0);
+        assertEquals(6, demand.update(100, 3));
+        //the demand is gone but not for long enough
+        assertEquals(6, demand.update(200, 0));
+        assertEquals(6, demand.update(1100, 0));
+        assertEquals(5, demand.update(1200, 0));
+        assertEquals(5, demand.update(2100, 0));
+        assertEquals(4, demand.update(2200, 0));
+        //a new burst stops the shrinking right away
+        assertEquals(8, demand.update(2300, 4));
+    }
+}
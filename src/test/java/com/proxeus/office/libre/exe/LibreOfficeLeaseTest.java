@@ -0,0 +1,29 @@
+package com.proxeus.office.libre.exe;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class LibreOfficeLeaseTest {
+
+    @Test
+    public void close_shouldGiveBackOnce() {
+        LibreOfficePool pool = mock(LibreOfficePool.class);
+        LibreOffice lo = mock(LibreOffice.class);
+        LibreOfficeLease lease = new LibreOfficeLease(pool, lo);
+        assertSame(lo, lease.get());
+
+        lease.close();
+        lease.close();
+
+        verify(pool, times(1)).giveBack(lo);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void get_shouldFailAfterClose() {
+        LibreOfficeLease lease = new LibreOfficeLease(mock(LibreOfficePool.class), mock(LibreOffice.class));
+        lease.close();
+        lease.get();
+    }
+}
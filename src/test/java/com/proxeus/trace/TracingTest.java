@@ -0,0 +1,89 @@
+package com.proxeus.trace;
+
+import com.proxeus.util.Json;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TracingTest {
+
+    @After
+    public void disable() {
+        Tracing.configure(new TraceConfig());
+    }
+
+    @Test
+    public void disabledTracingShouldNotRecord() {
+        Tracing.configure(new TraceConfig());
+        Callable<Object> task = () -> null;
+        try (Span root = Tracing.root("request")) {
+            Assert.assertFalse(root.isRecording());
+            Assert.assertFalse(Tracing.start("child").isRecording());
+            Assert.assertSame(task, Tracing.wrap(task));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void spansShouldFollowTheTasksAndBeExportedWithTheRoot() throws Exception {
+        File file = File.createTempFile("traces", ".json");
+        file.delete();
+        TraceConfig config = new TraceConfig();
+        config.file = file.getAbsolutePath();
+        Tracing.configure(config);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Span root = Tracing.root("request")) {
+            root.setAttribute("format", "pdf");
+            executor.submit(Tracing.wrap(() -> {
+                try (Span render = Tracing.start("render")) {
+                    render.setAttribute("entry", "content.xml");
+                }
+                return null;
+            })).get();
+            try (Span convert = Tracing.start("convert")) {
+                convert.setAttribute("libreoffice.id", 3);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        //nothing is current anymore after the root is closed
+        Assert.assertFalse(Tracing.start("after").isRecording());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        file.delete();
+        Assert.assertEquals(1, lines.size());
+        Map<String, Object> request = Json.fromJson(lines.get(0), Map.class);
+        Map<String, Object> resourceSpans = ((List<Map<String, Object>>) request.get("resourceSpans")).get(0);
+        Map<String, Object> scopeSpans = ((List<Map<String, Object>>) resourceSpans.get("scopeSpans")).get(0);
+        List<Map<String, Object>> spans = (List<Map<String, Object>>) scopeSpans.get("spans");
+        Assert.assertEquals(3, spans.size());
+
+        Map<String, Map<String, Object>> byName = new HashMap<>();
+        for (Map<String, Object> span : spans) {
+            byName.put((String) span.get("name"), span);
+            Assert.assertEquals(spans.get(0).get("traceId"), span.get("traceId"));
+            Assert.assertTrue(Long.parseLong((String) span.get("endTimeUnixNano")) >= Long.parseLong((String) span.get("startTimeUnixNano")));
+        }
+        Map<String, Object> root = byName.get("request");
+        Assert.assertNull(root.get("parentSpanId"));
+        Assert.assertEquals(root.get("spanId"), byName.get("render").get("parentSpanId"));
+        Assert.assertEquals(root.get("spanId"), byName.get("convert").get("parentSpanId"));
+        Assert.assertEquals("[{key=entry, value={stringValue=content.xml}}]", byName.get("render").get("attributes").toString());
+        Assert.assertEquals("[{key=libreoffice.id, value={intValue=3}}]", byName.get("convert").get("attributes").toString());
+    }
+}
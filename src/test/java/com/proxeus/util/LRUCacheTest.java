@@ -0,0 +1,69 @@
+package com.proxeus.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LRUCacheTest {
+
+    @Test
+    public void get_shouldEvictTheLeastRecentlyUsedEntryWhenFull() {
+        LRUCache<String, String> cache = new LRUCache<>(2, 100, String::length);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void put_shouldRespectTheMaxWeight() {
+        LRUCache<String, String> cache = new LRUCache<>(10, 5, String::length);
+        cache.put("a", "123");
+        cache.put("b", "123");
+        assertNull(cache.get("a"));
+        assertEquals("123", cache.get("b"));
+        assertEquals(3, cache.weight());
+
+        cache.put("c", "123456");
+        assertNull(cache.get("c"));
+        assertEquals("123", cache.get("b"));
+    }
+
+    @Test
+    public void put_shouldNotifyTheRemovedValues() {
+        List<String> removed = new ArrayList<>();
+        LRUCache<String, String> cache = new LRUCache<>(2, 100, String::length, (k, v) -> removed.add(k + "=" + v));
+        cache.put("a", "1");
+        cache.put("a", "2");
+        cache.put("b", "3");
+        cache.put("c", "4");
+        cache.remove("b");
+        assertEquals(Arrays.asList("a=1", "a=2", "b=3"), removed);
+    }
+
+    @Test
+    public void get_shouldCountHitsAndMisses() throws Exception {
+        LRUCache<String, String> cache = new LRUCache<>(10, 100, String::length);
+        assertEquals("v", cache.get("k", () -> "v"));
+        assertEquals("v", cache.get("k", () -> "other"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void get_shouldAlwaysLoadWhenDisabled() throws Exception {
+        LRUCache<String, String> cache = new LRUCache<>(0, 100, String::length);
+        assertEquals("v", cache.get("k", () -> "v"));
+        assertEquals("other", cache.get("k", () -> "other"));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,58 @@
+package com.proxeus.util.concurrent;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class PipeTest {
+
+    @Test
+    public void read_shouldGetAllBytesWrittenThroughASmallBuffer() throws Exception {
+        byte[] data = new byte[100_000];
+        new Random(1).nextBytes(data);
+        Pipe pipe = new Pipe(1000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writing = executor.submit(() -> {
+                try (OutputStream out = pipe.output()) {
+                    for (int i = 0; i < data.length; i += 777) {
+                        out.write(data, i, Math.min(777, data.length - i));
+                    }
+                }
+                return null;
+            });
+            assertArrayEquals(data, IOUtils.toByteArray(pipe.input()));
+            writing.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void read_shouldReturnTheEndAfterTheRemainingBytes() throws Exception {
+        Pipe pipe = new Pipe(16);
+        pipe.output().write(new byte[]{1, 2, 3});
+        pipe.output().close();
+        InputStream in = pipe.input();
+        assertEquals(1, in.read());
+        assertEquals(2, in.available());
+        assertEquals(2, in.read(new byte[10], 0, 10));
+        assertEquals(-1, in.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void write_shouldFailWhenTheReaderIsClosed() throws Exception {
+        Pipe pipe = new Pipe(16);
+        pipe.input().close();
+        pipe.output().write(new byte[32]);
+    }
+}
@@ -0,0 +1,95 @@
+package com.proxeus.util.concurrent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TaskGroupTest {
+    private BoundedExecutor executor = new BoundedExecutor("test", 2, 2);
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void await_shouldWaitForAllTasks() throws Exception {
+        AtomicInteger done = new AtomicInteger();
+        TaskGroup group = executor.group();
+        for (int i = 0; i < 10; i++) {
+            group.submit(() -> {
+                Thread.sleep(10);
+                done.incrementAndGet();
+                return null;
+            });
+        }
+        group.await(5000);
+        assertEquals(10, done.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void await_shouldThrowTheExceptionOfATask() throws Exception {
+        TaskGroup group = executor.group();
+        group.submit(() -> {
+            throw new IOException("broken");
+        });
+        group.submit(() -> null);
+        group.await(5000);
+    }
+
+    @Test
+    public void await_shouldCancelOnTimeout() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        TaskGroup group = executor.group();
+        group.submit(() -> {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        try {
+            group.await(50);
+            fail("timeout expected");
+        } catch (TimeoutException e) {
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void submit_shouldRunInTheCallerWhenTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TaskGroup group = executor.group();
+        //two threads busy and two tasks queued
+        for (int i = 0; i < 4; i++) {
+            group.submit(() -> {
+                release.await();
+                return null;
+            });
+        }
+        Thread caller = Thread.currentThread();
+        AtomicInteger ranInCaller = new AtomicInteger();
+        group.submit(() -> {
+            if (Thread.currentThread() == caller) {
+                ranInCaller.incrementAndGet();
+            }
+            return null;
+        });
+        assertEquals(1, ranInCaller.get());
+        for (int i = 0; i < 100 && executor.getActive() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, executor.getActive());
+        assertEquals(2, executor.getQueued());
+        release.countDown();
+        group.await(5000);
+    }
+}
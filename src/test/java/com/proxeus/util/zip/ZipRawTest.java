@@ -0,0 +1,148 @@
+package com.proxeus.util.zip;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class ZipRawTest {
+    private File dir;
+    private File src;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("zip_raw").toFile();
+        src = new File(dir, "src.odt");
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream("hr0101.odt")) {
+            FileUtils.copyToFile(input, src);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void reader_shouldListTheEntriesOfTheCentralDirectory() throws Exception {
+        try (ZipRawReader reader = new ZipRawReader(src); ZipFile zip = new ZipFile(src)) {
+            assertEquals(zip.size(), reader.entries().size());
+            for (ZipRawEntry entry : reader.entries()) {
+                ZipEntry expected = zip.getEntry(entry.getName());
+                assertEquals(expected.getCrc(), entry.getCrc());
+                assertEquals(expected.getSize(), entry.getSize());
+                assertEquals(expected.getCompressedSize(), entry.getCompressedSize());
+                assertEquals(expected.getMethod(), entry.getMethod());
+                try (InputStream inflated = reader.getInputStream(entry)) {
+                    assertArrayEquals(IOUtils.toByteArray(zip.getInputStream(expected)), IOUtils.toByteArray(inflated));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void copy_shouldKeepTheCompressedBytes() throws Exception {
+        File dst = new File(dir, "dst.zip");
+        try (ZipRawReader reader = new ZipRawReader(src); ZipRawWriter writer = new ZipRawWriter(new FileOutputStream(dst))) {
+            for (ZipRawEntry entry : reader.entries()) {
+                writer.copy(reader, entry);
+            }
+        }
+        try (ZipRawReader original = new ZipRawReader(src); ZipRawReader copy = new ZipRawReader(dst)) {
+            for (ZipRawEntry entry : original.entries()) {
+                ZipRawEntry copied = copy.getEntry(entry.getName());
+                assertEquals(entry.getCompressedSize(), copied.getCompressedSize());
+                assertArrayEquals(IOUtils.toByteArray(original.getRawInputStream(entry)), IOUtils.toByteArray(copy.getRawInputStream(copied)));
+            }
+        }
+        assertEquals(contents(src), contents(dst));
+    }
+
+    @Test
+    public void writer_shouldBeReadableByTheJdk() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ZipRawWriter writer = new ZipRawWriter(output)) {
+            writer.putStored("mimetype", "application/vnd.oasis.opendocument.text".getBytes(UTF_8));
+            try (OutputStream entry = writer.putDeflated("content.xml")) {
+                for (int i = 0; i < 1000; i++) {
+                    entry.write("<text:p>äöü</text:p>".getBytes(UTF_8));
+                }
+            }
+            try (OutputStream entry = writer.putDeflated("Pictures/bild_ä.png")) {
+                entry.write(1);
+            }
+        }
+        byte[] zip = output.toByteArray();
+        //the ODF mimetype must be readable at a fixed offset
+        assertEquals("mimetype", new String(zip, 30, 8, UTF_8));
+        assertEquals("application/vnd.oasis.opendocument.text", new String(zip, 38, 39, UTF_8));
+
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                entries.put(entry.getName(), IOUtils.toByteArray(input));
+            }
+        }
+        assertEquals(3, entries.size());
+        assertEquals(1000 * "<text:p>äöü</text:p>".getBytes(UTF_8).length, entries.get("content.xml").length);
+        assertArrayEquals(new byte[]{1}, entries.get("Pictures/bild_ä.png"));
+
+        File file = new File(dir, "written.zip");
+        FileUtils.writeByteArrayToFile(file, zip);
+        try (ZipFile zipFile = new ZipFile(file)) {
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("mimetype").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("content.xml").getMethod());
+        }
+    }
+
+    @Test
+    public void reader_shouldReadEntriesWithDataDescriptors() throws Exception {
+        File zip = new File(dir, "jdk.zip");
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+            output.putNextEntry(new ZipEntry("a.txt"));
+            output.write("hello".getBytes(UTF_8));
+            output.closeEntry();
+        }
+        File copy = new File(dir, "copy.zip");
+        try (ZipRawReader reader = new ZipRawReader(zip); ZipRawWriter writer = new ZipRawWriter(new FileOutputStream(copy))) {
+            writer.copy(reader, reader.getEntry("a.txt"));
+        }
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(copy))) {
+            assertEquals("a.txt", input.getNextEntry().getName());
+            assertEquals("hello", IOUtils.toString(input, UTF_8));
+        }
+    }
+
+    private Map<String, String> contents(File file) throws Exception {
+        Map<String, String> contents = new HashMap<>();
+        try (ZipFile zip = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                contents.put(entry.getName(), entry.getCrc() + ":" + IOUtils.toString(zip.getInputStream(entry), UTF_8).hashCode());
+            }
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,35 @@
+package com.proxeus.xml;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.xml.stream.XMLEventWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class XMLFactoriesTest {
+
+    @After
+    public void reset() {
+        XMLFactories.configure(new XMLConfig());
+    }
+
+    @Test
+    public void output_shouldNotEscapeTheCharacters() throws Exception {
+        StringWriter output = new StringWriter();
+        XMLEventWriter writer = XMLFactories.output().createXMLEventWriter(output);
+        writer.add(XMLFactories.events().createCharacters("{% if a < b %}"));
+        writer.flush();
+        assertEquals("{% if a < b %}", output.toString());
+    }
+
+    @Test
+    public void configure_shouldFallBackToTheJDK() {
+        XMLConfig config = new XMLConfig();
+        config.implementation = "not-on-the-classpath";
+        XMLFactories.configure(config);
+        assertEquals(XMLFactories.JDK, XMLFactories.implementation());
+        assertSame(XMLFactories.input(), XMLFactories.input());
+    }
+}
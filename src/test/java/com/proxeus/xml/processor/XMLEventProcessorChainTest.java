@@ -6,6 +6,9 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -105,4 +108,48 @@ public class XMLEventProcessorChainTest {
         }
 
     }
+
+    @Test
+    public void testStreaming() {
+        try {
+            XMLEventBuffer in = new XMLEventBuffer();
+            XMLEventBuffer out = new XMLEventBuffer();
+
+            List<String> expected = new ArrayList<>();
+            for (String s : test) {
+                in.add(eventFactory.createCharacters(s));
+                expected.add("1" + s);
+                expected.add("2" + s);
+            }
+
+            List<String> order = new ArrayList<>();
+            XMLEventProcessorChain p = new XMLEventProcessorChain(
+                    new RecordingProcessor("1", order),
+                    new RecordingProcessor("2", order)
+            );
+
+            p.process(in, out);
+
+            // every event passes the whole chain before the next one is read
+            Assert.assertArrayEquals(expected.toArray(), order.toArray());
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    private static class RecordingProcessor implements XMLEventStreamProcessor {
+        private String name;
+        private List<String> order;
+
+        RecordingProcessor(String name, List<String> order) {
+            this.name = name;
+            this.order = order;
+        }
+
+        @Override
+        public void process(XMLEvent event, XMLEventWriter writer) throws XMLStreamException {
+            order.add(name + event.asCharacters().getData());
+            writer.add(event);
+        }
+    }
 }
@@ -0,0 +1,28 @@
+package com.proxeus.xml.template;
+
+import com.proxeus.xml.processor.NoOpEventProcessor;
+import com.proxeus.xml.template.jtwig.JTwigParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class DefaultTemplateHandlerEncodingTest {
+
+    @Test
+    public void render_shouldKeepNonAsciiTextInUtf8() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><a>Größe: {{ größe }} € ✓</a>";
+        DefaultTemplateHandler handler = new DefaultTemplateHandler(new TemplateExtractor(new JTwigParser()), new NoOpTemplateRenderer(), new NoOpEventProcessor());
+        handler.process(new ByteArrayInputStream(xml.getBytes(UTF_8)));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        handler.render(output, null);
+
+        String rendered = new String(output.toByteArray(), UTF_8);
+        Assert.assertTrue(rendered, rendered.contains("encoding=\"UTF-8\""));
+        Assert.assertTrue(rendered, rendered.contains("Größe: {{ größe }} € ✓"));
+    }
+}
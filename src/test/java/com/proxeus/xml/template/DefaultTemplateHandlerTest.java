@@ -52,6 +52,22 @@ public class DefaultTemplateHandlerTest {
         }
     }
 
+    @Test
+    public void render_shouldThrowTheRendererException() throws Exception {
+        InputStream input = getClass().getClassLoader().getResourceAsStream(test + ".xml");
+        DefaultTemplateHandler handler = new DefaultTemplateHandler(new TemplateExtractor(new JTwigParser()), (in, out, data, charset) -> {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?><a>".getBytes(charset));
+            throw new IllegalStateException("render failed");
+        }, new NoOpEventProcessor());
+        handler.process(input);
+        try {
+            handler.render(new ByteArrayOutputStream(), null);
+            Assert.fail("expected the exception of the renderer");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("render failed", e.getMessage());
+        }
+    }
+
     private String convert(InputStream inputStream, Charset charset) throws IOException {
         try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, charset))) {
             return br.lines().collect(Collectors.joining(System.lineSeparator()));
@@ -0,0 +1,120 @@
+package com.proxeus.xml.template.jtwig;
+
+import com.proxeus.document.odt.img.ImageVarProcessor;
+import com.proxeus.xml.processor.NoOpEventProcessor;
+import com.proxeus.xml.processor.XMLEventProcessorChain;
+import com.proxeus.xml.processor.XMLEventSink;
+import com.proxeus.xml.template.PreparedTemplate;
+import com.proxeus.xml.template.TemplateVarParser;
+import com.proxeus.xml.template.TemplateVarProcessor;
+import com.proxeus.xml.template.TemplateVarScanner;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class JTwigVarScannerTest {
+
+    /**
+     * The scanner has to find the same vars as the extractor and the var processors do, on every XML of the test resources.
+     */
+    @Test
+    public void scan_shouldFindTheVarsOfTheXMLEventProcessors() throws Exception {
+        File[] files = new File(getClass().getClassLoader().getResource("simple.odt").toURI()).getParentFile().listFiles();
+        Arrays.sort(files);
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(".odt")) {
+                try (ZipFile zip = new ZipFile(file)) {
+                    Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        if (entry.getName().endsWith("content.xml") || entry.getName().endsWith("styles.xml")) {
+                            try (InputStream input = zip.getInputStream(entry)) {
+                                assertSameVars(file.getName() + ":" + entry.getName(), IOUtils.toByteArray(input));
+                            }
+                            count++;
+                        }
+                    }
+                }
+            } else if (file.getName().endsWith(".xml")) {
+                assertSameVars(file.getName(), Files.readAllBytes(file.toPath()));
+                count++;
+            }
+        }
+        Assert.assertTrue(count > 10);
+    }
+
+    @Test
+    public void scan_shouldReassembleIslandsSplitByMarkup() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><!-- {{ comment }} --><root xmlns:draw=\"d\">"
+                + "<p>{<span a=\"{{ attr }}\">{</span> input.<b>First</b>Name }}</p>"
+                + "<p>{%\r\nif input.Age &gt; 18 and input.Ünïcode %}adult{% endif %}</p>"
+                + "<p>{<![CDATA[{ input.Data ]]>}}&#123;{ input.Ref }}</p>"
+                + "<draw:frame draw:name=\"{{input.Image[align]}}\"/>"
+                + "</root>";
+        Assert.assertEquals("[input.Age, input.Data, input.FirstName, input.Ref, input.Ünïcode]", scan(xml.getBytes(StandardCharsets.UTF_8)));
+        assertSameVars("inline", xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void scan_shouldPassTheAttributesAsRead() throws Exception {
+        List<String> names = new ArrayList<>();
+        TemplateVarScanner scanner = new JTwigVarScanner(new JTwigVarParser(null));
+        scanner.onAttribute(ImageVarProcessor.FRAME, ImageVarProcessor.NAME, names::add);
+        scanner.scan(new ByteArrayInputStream(("<root><draw:frame draw:style=\"a>b\" draw:name=\"{{input.Image\n[&apos;align&apos;]}}\"/>"
+                + "<draw:frames draw:name=\"other\"/><draw:frame draw:name='second'></draw:frame></root>").getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(Arrays.asList("{{input.Image ['align']}}", "second"), names);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void scan_shouldFailOnAnIslandNotTerminated() throws Exception {
+        scan("<root>{{ input.Name </root>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertSameVars(String name, byte[] xml) {
+        String expected;
+        try {
+            expected = process(xml);
+        } catch (Exception e) {
+            expected = "error";
+        }
+        String actual;
+        try {
+            actual = scan(xml);
+        } catch (Exception e) {
+            actual = "error";
+        }
+        Assert.assertEquals(name, expected, actual);
+    }
+
+    private static String scan(byte[] xml) throws Exception {
+        TemplateVarParser varParser = new JTwigVarParser(null);
+        TemplateVarScanner scanner = new JTwigVarScanner(varParser);
+        scanner.onAttribute(ImageVarProcessor.FRAME, ImageVarProcessor.NAME, name -> ImageVarProcessor.parse(name, varParser));
+        scanner.scan(new ByteArrayInputStream(xml));
+        return varParser.getVars().toString();
+    }
+
+    private static String process(byte[] xml) throws Exception {
+        TemplateVarParser varParser = new JTwigVarParser(null);
+        PreparedTemplate prepared = new JTwigTemplateHandlerFactory().newInstance(new NoOpEventProcessor(), new NoOpEventProcessor())
+                .prepare(new ByteArrayInputStream(xml));
+        new XMLEventProcessorChain(
+                new ImageVarProcessor(varParser),
+                new TemplateVarProcessor(varParser)
+        ).process(prepared.reader(), new XMLEventSink());
+        return varParser.getVars().toString();
+    }
+}